@@ -9,9 +9,9 @@ package tilemaster.editor.paintingtools;
 
 import asktools.Requester;
 import asktools.ValueChangeInterface;
-import java.awt.Cursor;
 import java.awt.Graphics;
 import java.awt.image.BufferedImage;
+import tilemaster.editor.CanvasOperation;
 import tilemaster.editor.TilesetEditor;
 
 /**
@@ -79,35 +79,47 @@ public class AdjustGamma extends YUVPaintingToolBase implements ValueChangeInter
                 0, 200, 100, this);
     }
     
+    /**
+     * Applies the gamma to the opaque pixels, in the background.
+     */
     private void doAdjustment()
     {
-        Cursor oldCursor = editor.getCursor();
-        editor.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        final BufferedImage source = src;
+        final double exponent = gamma;
 
-        final double [] yuv = new double[3];
-        
-        for(int y=0; y<canvas.getHeight(); y++)
+        editor.runOperation(new CanvasOperation(getToolName())
         {
-            for(int x=0; x<canvas.getWidth(); x++)
+            @Override
+            public BufferedImage run(BufferedImage image, Progress progress)
             {
-                int rgb = src.getRGB(x, y);
-                if((rgb & 0xFF000000) == 0xFF000000)
+                final double [] yuv = new double[3];
+
+                for(int y=0; y<image.getHeight(); y++)
                 {
-                    rgbToYuv(yuv, rgb);
-                    
-                    // Y in [0.0 .. 1.0] 
-
-                    final double Y = Math.pow(yuv[0] / 255.0, gamma);
-                    yuv[0] = 255.0 * Y;
-                    
-                    rgb = yuvToRGB(yuv);
-                    
-                    canvas.setRGB(x, y, 0xFF000000 | rgb);
+                    progress.update(y, image.getHeight());
+
+                    for(int x=0; x<image.getWidth(); x++)
+                    {
+                        int rgb = source.getRGB(x, y);
+                        if((rgb & 0xFF000000) == 0xFF000000)
+                        {
+                            rgbToYuv(yuv, rgb);
+
+                            // Y in [0.0 .. 1.0] 
+
+                            final double Y = Math.pow(yuv[0] / 255.0, exponent);
+                            yuv[0] = 255.0 * Y;
+
+                            rgb = yuvToRGB(yuv);
+
+                            image.setRGB(x, y, 0xFF000000 | rgb);
+                        }
+                    }
                 }
-            }
-        }
 
-        editor.setCursor(oldCursor);
+                return image;
+            }
+        });
     }
 
     /**
@@ -154,6 +166,5 @@ public class AdjustGamma extends YUVPaintingToolBase implements ValueChangeInter
         gamma = 1.0 - ((values[0] - 100) / 100.0);
         
         doAdjustment();
-        editor.repaint(100);
     }
 }
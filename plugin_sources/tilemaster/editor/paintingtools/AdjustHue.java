@@ -9,9 +9,9 @@ package tilemaster.editor.paintingtools;
 
 import asktools.Requester;
 import asktools.ValueChangeInterface;
-import java.awt.Cursor;
 import java.awt.Graphics;
 import java.awt.image.BufferedImage;
+import tilemaster.editor.CanvasOperation;
 import tilemaster.editor.TilesetEditor;
 
 /**
@@ -80,32 +80,46 @@ public class AdjustHue extends YUVPaintingToolBase implements ValueChangeInterfa
                 0, 100, 50, this);
     }
     
+    /**
+     * Adjusts the opaque pixels of the canvas, in the background.
+     * Slider moves cancel the adjustment which is still running.
+     */
     private void doAdjustment()
     {
-        Cursor oldCursor = editor.getCursor();
-        editor.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        final BufferedImage source = src;
+        final double shift = 3.6*angle;
+        final double factor = 1.0+saturation/50.0;
 
-        final double [] yuv = new double[3];
-        
-        for(int y=0; y<canvas.getHeight(); y++)
+        editor.runOperation(new CanvasOperation(getToolName())
         {
-            for(int x=0; x<canvas.getWidth(); x++)
+            @Override
+            public BufferedImage run(BufferedImage image, Progress progress)
             {
-                int rgb = src.getRGB(x, y);
-                if((rgb & 0xFF000000) == 0xFF000000)
+                final double [] yuv = new double[3];
+
+                for(int y=0; y<image.getHeight(); y++)
                 {
-                    rgbToYuv(yuv, rgb);
-                    
-                    yuvRotate(yuv, 3.6*angle, 1.0+saturation/50.0);
-                                        
-                    rgb = yuvToRGB(yuv);
-                    
-                    canvas.setRGB(x, y, 0xFF000000 | rgb);
+                    progress.update(y, image.getHeight());
+
+                    for(int x=0; x<image.getWidth(); x++)
+                    {
+                        int rgb = source.getRGB(x, y);
+                        if((rgb & 0xFF000000) == 0xFF000000)
+                        {
+                            rgbToYuv(yuv, rgb);
+
+                            yuvRotate(yuv, shift, factor);
+
+                            rgb = yuvToRGB(yuv);
+
+                            image.setRGB(x, y, 0xFF000000 | rgb);
+                        }
+                    }
                 }
-            }
-        }
 
-        editor.setCursor(oldCursor);
+                return image;
+            }
+        });
     }
 
     /**
@@ -150,6 +164,5 @@ public class AdjustHue extends YUVPaintingToolBase implements ValueChangeInterfa
         // System.err.println("Angle=" + angle + " saturation=" + saturation);
         
         doAdjustment();
-        editor.repaint(100);
     }
 }
@@ -9,9 +9,9 @@ package tilemaster.editor.paintingtools;
 
 import asktools.Requester;
 import asktools.ValueChangeInterface;
-import java.awt.Cursor;
 import java.awt.Graphics;
 import java.awt.image.BufferedImage;
+import tilemaster.editor.CanvasOperation;
 import tilemaster.editor.TilesetEditor;
 
 /**
@@ -80,38 +80,49 @@ public class AdjustLight extends YUVPaintingToolBase implements ValueChangeInter
                 0, 100, 50, this);
     }
     
+    /**
+     * Moves white and black point of the opaque pixels, in the
+     * background. A newer slider value cancels the older one.
+     */
     private void doAdjustment()
     {
-        Cursor oldCursor = editor.getCursor();
-        editor.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        final BufferedImage source = src;
+        final double newWhite = 1.0 + (white/50.0);
+        final double newBlack = 0.0 + (black/50.0);
 
-        final double [] yuv = new double[3];
-        
-        for(int y=0; y<canvas.getHeight(); y++)
+        editor.runOperation(new CanvasOperation(getToolName())
         {
-            for(int x=0; x<canvas.getWidth(); x++)
+            @Override
+            public BufferedImage run(BufferedImage image, Progress progress)
             {
-                int rgb = src.getRGB(x, y);
-                if((rgb & 0xFF000000) == 0xFF000000)
+                final double [] yuv = new double[3];
+
+                for(int y=0; y<image.getHeight(); y++)
                 {
-                    rgbToYuv(yuv, rgb);
-                    
-                    final double newWhite = 1.0 + (white/50.0);
-                    final double newBlack = 0.0 + (black/50.0);
-                    
-                    // Y in [0.0 .. 1.0] 
-
-                    final double Y = yuv[0] / 255.0;
-                    yuv[0] = 255.0 * (newBlack + Y * (newWhite - newBlack));
-                    
-                    rgb = yuvToRGB(yuv);
-                    
-                    canvas.setRGB(x, y, 0xFF000000 | rgb);
+                    progress.update(y, image.getHeight());
+
+                    for(int x=0; x<image.getWidth(); x++)
+                    {
+                        int rgb = source.getRGB(x, y);
+                        if((rgb & 0xFF000000) == 0xFF000000)
+                        {
+                            rgbToYuv(yuv, rgb);
+
+                            // Y in [0.0 .. 1.0] 
+
+                            final double Y = yuv[0] / 255.0;
+                            yuv[0] = 255.0 * (newBlack + Y * (newWhite - newBlack));
+
+                            rgb = yuvToRGB(yuv);
+
+                            image.setRGB(x, y, 0xFF000000 | rgb);
+                        }
+                    }
                 }
-            }
-        }
 
-        editor.setCursor(oldCursor);
+                return image;
+            }
+        });
     }
 
     /**
@@ -156,6 +167,5 @@ public class AdjustLight extends YUVPaintingToolBase implements ValueChangeInter
         // System.err.println("White=" + white + " black=" + black);
         
         doAdjustment();
-        editor.repaint(100);
     }
 }
@@ -9,9 +9,9 @@ package tilemaster.editor.paintingtools;
 
 import asktools.Requester;
 import java.awt.Color;
-import java.awt.Cursor;
 import java.awt.Graphics;
 import java.awt.image.BufferedImage;
+import tilemaster.editor.CanvasOperation;
 import tilemaster.editor.TilesetEditor;
 
 /**
@@ -22,7 +22,6 @@ import tilemaster.editor.TilesetEditor;
 public class AntiAlias extends PaintingToolBase 
 {
     private TilesetEditor editor;
-    private BufferedImage canvas;
     private int weight;
     
     /**
@@ -51,13 +50,10 @@ public class AntiAlias extends PaintingToolBase
     @Override
     public void setCanvas(BufferedImage canvas)
     {
-        this.canvas = canvas;
-
         Requester requester = new Requester();
         weight = requester.askNumber(editor, "Please enter the midpoint weight:", weight);
         
         firstClick(null, 0, 0);
-        editor.repaint();
     }
 
     /**
@@ -66,68 +62,71 @@ public class AntiAlias extends PaintingToolBase
     @Override
     public void firstClick(Graphics g, int dummy1, int dummy2) 
     {
-        BufferedImage aaImg = new BufferedImage(canvas.getWidth(), canvas.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        final int midpointWeight = weight;
 
-        aaImg.getGraphics().drawImage(canvas, 0, 0, null);
-        
-        Cursor oldCursor = editor.getCursor();
-        editor.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        editor.runOperation(new CanvasOperation(getToolName())
+        {
+            @Override
+            public BufferedImage run(BufferedImage image, Progress progress)
+            {
+                antiAlias(image, midpointWeight, progress);
+                return image;
+            }
+        });
+    }
+
+    /**
+     * Runs on the worker thread of the editor.
+     */
+    private void antiAlias(BufferedImage canvas, int midpointWeight, CanvasOperation.Progress progress)
+    {
+        // read the pixels from a copy, the canvas gets the results
+        BufferedImage src = new BufferedImage(canvas.getWidth(), canvas.getHeight(), BufferedImage.TYPE_INT_ARGB);
 
+        src.getGraphics().drawImage(canvas, 0, 0, null);
+        
         Graphics gr = canvas.getGraphics();
         Color color = gr.getColor();
         final int argb = color.getRGB();
-        final int oldWeight = weight;
         
-        for(int y=0; y<canvas.getHeight(); y++)
+        for(int y=0; y<src.getHeight(); y++)
         {
-            for(int x=0; x<canvas.getWidth(); x++)
+            progress.update(y, src.getHeight());
+
+            for(int x=0; x<src.getWidth(); x++)
             {
-                int c = canvas.getRGB(x, y);
-                weight = oldWeight;
+                int c = src.getRGB(x, y);
+                int pixelWeight = midpointWeight;
                 
                 if(c == argb)
                 {
                     // vertical line?
-                    if(getRGB(x, y-1) == argb && getRGB(x, y+1) == argb)
+                    if(getRGB(src, x, y-1) == argb && getRGB(src, x, y+1) == argb)
                     {
-                        weight = weight * 2;
-                        if(getRGB(x, y-2) == argb && getRGB(x, y+2) == argb)
+                        pixelWeight = pixelWeight * 2;
+                        if(getRGB(src, x, y-2) == argb && getRGB(src, x, y+2) == argb)
                         {
                             continue;
                         }
                     }
                     // horizontal line?
-                    if(getRGB(x-1, y) == argb && getRGB(x+1, y) == argb)
+                    if(getRGB(src, x-1, y) == argb && getRGB(src, x+1, y) == argb)
                     {
-                        weight = weight * 2;
-                        if(getRGB(x-2, y) == argb && getRGB(x+2, y) == argb)
+                        pixelWeight = pixelWeight * 2;
+                        if(getRGB(src, x-2, y) == argb && getRGB(src, x+2, y) == argb)
                         {
                             continue;
                         }
                     }
                     
-                    aaImg.setRGB(x, y, aa(x, y, argb));
+                    canvas.setRGB(x, y, aa(src, x, y, argb, pixelWeight));
                 }
             }
             
         }
-        
-        
-        for(int y=0; y<canvas.getHeight(); y++)
-        {
-            for(int x=0; x<canvas.getWidth(); x++)
-            {
-                int c = aaImg.getRGB(x, y);
-                canvas.setRGB(x, y, c);
-            }
-            
-        }
-
-        weight = oldWeight;
-        editor.setCursor(oldCursor);
     }
     
-    private int getRGB(int x, int y)
+    private int getRGB(BufferedImage canvas, int x, int y)
     {
         if(x>=0 && x<canvas.getWidth() && y>=0 && y<canvas.getHeight())
         {
@@ -140,7 +139,7 @@ public class AntiAlias extends PaintingToolBase
     /**
      * Create an interpolated pixel.
      */
-    private int aa(int x, int y, int argb)
+    private int aa(BufferedImage canvas, int x, int y, int argb, int weight)
     {
         int R = 0;
         int G = 0;
@@ -150,7 +149,7 @@ public class AntiAlias extends PaintingToolBase
         {
             for(int i=x-1; i<=x+1; i++)
             {
-                final int rgb = getRGB(i, j);
+                final int rgb = getRGB(canvas, i, j);
                 
                 R += (rgb >> 16) & 0xFF;
                 G += (rgb >> 8) & 0xFF;
@@ -0,0 +1,497 @@
+/*
+ * File: AtlasIO.java
+ * Creation: 2026_10_17
+ * Author: agent <agent@local>
+ * License: See license.txt
+ */
+
+package tilemaster.io;
+
+import itemizer.editor.ui.SimpleMessageBox;
+import itemizer.item.ItemConfiguration;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import javax.imageio.ImageIO;
+import tilemaster.tile.TileDescriptor;
+import tilemaster.tile.TileSet;
+
+
+/**
+ * Texture atlas file IO. Unlike tile sheets, atlas pages don't use
+ * a fixed raster. Transparent borders are trimmed from the tiles and
+ * the trimmed images are packed densely into one or more pages with
+ * power of two sizes. The atlas file holds the tile index and the
+ * tile catalog, the pages are stored as name_0.png, name_1.png ...
+ * <p>
+ * Index lines, one per tile:
+ * <pre>
+ * page x y width height trimX trimY tileWidth tileHeight offX offY footX footY
+ * </pre>
+ * x, y, width and height are the trimmed image rectangle on the page,
+ * trimX and trimY the position of the trimmed image in the original
+ * tile. Fully transparent tiles have page -1 and an empty rectangle.
+ *
+ * @author agent
+ */
+public class AtlasIO implements FileTypeIO
+{
+    static
+    {
+        IOPluginBroker.registerHandler(".atlas", new AtlasIO());
+    }
+
+    /** max page size, padding, extrusion */
+    private String options = "2048,1,1";
+
+    /**
+     * Reads a tile set from an atlas file and its pages.
+     *
+     * @param filename The name of the atlas file.
+     * @return The created tile set.
+     * @throws IOException In case of IO errors.
+     */
+    @Override
+    public TileSet read(String filename) throws IOException
+    {
+        final BufferedReader reader = new BufferedReader(new FileReader(filename));
+
+        String line = reader.readLine();
+        if(!"Atlas Header Start".equals(line))
+        {
+            reader.close();
+            throw new IOException("Wrong atlas header start: " + line);
+        }
+
+        line = reader.readLine();
+        if(!"v.1".equals(line))
+        {
+            reader.close();
+            throw new IOException("Unsupported atlas version: " + line);
+        }
+
+        final int pageCount = Integer.parseInt(reader.readLine());
+        final int tileCount = Integer.parseInt(reader.readLine());
+        final int extrude = Integer.parseInt(reader.readLine());
+
+        // padding is only needed for writing
+        reader.readLine();
+
+        line = reader.readLine();
+        if(!"Atlas Header End".equals(line))
+        {
+            reader.close();
+            throw new IOException("Wrong atlas header end: " + line);
+        }
+
+        final int [][] index = new int [tileCount][];
+        for(int i=0; i<tileCount; i++)
+        {
+            index[i] = parseIndexLine(reader.readLine());
+        }
+
+        final TileSet result = new TileSet(new ItemConfiguration(), 0);
+        result.read(reader); // this call closes the reader.
+
+        if(result.size() != tileCount)
+        {
+            throw new IOException("Atlas index has " + tileCount +
+                                  " tiles, catalog has " + result.size());
+        }
+
+        final BufferedImage [] pages = new BufferedImage [pageCount];
+        for(int p=0; p<pageCount; p++)
+        {
+            pages[p] = ImageIO.read(new File(makePageName(filename, p)));
+            if(pages[p] == null)
+            {
+                throw new IOException("Can't read atlas page " + makePageName(filename, p));
+            }
+        }
+
+        for(int i=0; i<tileCount; i++)
+        {
+            final int [] entry = index[i];
+            final int page = entry[0];
+            final int width = entry[3];
+            final int height = entry[4];
+
+            final BufferedImage img =
+                    new BufferedImage(Math.max(entry[7], 1), Math.max(entry[8], 1),
+                                      BufferedImage.TYPE_INT_ARGB);
+
+            if(page >= 0)
+            {
+                final int [] argb = pages[page].getRGB(entry[1] + extrude, entry[2] + extrude,
+                                                       width, height, null, 0, width);
+                img.setRGB(entry[5], entry[6], width, height, argb, 0, width);
+            }
+
+            final TileDescriptor tld = result.get(i);
+            tld.img = img;
+            tld.offX = entry[9];
+            tld.offY = entry[10];
+            tld.footX = entry[11];
+            tld.footY = entry[12];
+            tld.markClean();
+
+            if(page < 0)
+            {
+                result.setEmptyIfBlank(i);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Writes a tile set as atlas file and atlas pages.
+     *
+     * @param filename The name of the atlas file.
+     * @param tileSet The tiles to write.
+     * @throws IOException In case of IO errors.
+     */
+    @Override
+    public void write(String filename, TileSet tileSet) throws IOException
+    {
+        String input = IOPluginBroker.getOption("atlas.options");
+
+        if(input == null)
+        {
+            final SimpleMessageBox box = new SimpleMessageBox(null,
+                    "Atlas Options",
+                    "Please enter the atlas options<br>"
+                    + "in format S,P,E (S=max. page size, P=padding, E=extrusion):",
+                    options);
+
+            box.setVisible(true);
+            box.dispose();
+
+            input = box.getInput();
+        }
+
+        if(input == null)
+        {
+            return;
+        }
+
+        final String [] parts = input.split(",");
+        if(parts.length != 3)
+        {
+            throw new IOException("Atlas options must be S,P,E but were: " + input);
+        }
+
+        options = input;
+
+        write(filename, tileSet,
+              Integer.parseInt(parts[0].trim()),
+              Integer.parseInt(parts[1].trim()),
+              Integer.parseInt(parts[2].trim()));
+    }
+
+    /**
+     * Writes a tile set as atlas file and atlas pages.
+     *
+     * @param filename The name of the atlas file.
+     * @param tileSet The tiles to write.
+     * @param maxSize The maximum page width and height, will be rounded
+     *                up to a power of two.
+     * @param padding Number of empty pixels between two tile images.
+     * @param extrude Number of pixels to repeat the tile border.
+     * @throws IOException In case of IO errors.
+     */
+    public void write(String filename, TileSet tileSet,
+                      int maxSize, int padding, int extrude) throws IOException
+    {
+        final long start = System.nanoTime();
+
+        maxSize = powerOfTwo(maxSize);
+        final int tileCount = tileSet.size();
+
+        // per tile: page x y width height trimX trimY tileWidth tileHeight
+        final int [][] index = new int [tileCount][];
+        final BufferedImage [] images = new BufferedImage [tileCount];
+
+        for(int i=0; i<tileCount; i++)
+        {
+            if(tileSet.isEmpty(i))
+            {
+                // nothing to pack, and no need to load an image
+                index[i] = new int [] {-1, 0, 0, 0, 0, 0, 0, 1, 1};
+            }
+            else
+            {
+                images[i] = tileSet.get(i).getImage();
+                index[i] = trim(images[i]);
+            }
+        }
+
+        final Integer [] order = new Integer [tileCount];
+        for(int i=0; i<tileCount; i++)
+        {
+            order[i] = i;
+        }
+
+        // skyline packing works best with tall images first
+        Arrays.sort(order, new Comparator<Integer>()
+        {
+            @Override
+            public int compare(Integer a, Integer b)
+            {
+                final int [] ra = index[a];
+                final int [] rb = index[b];
+
+                if(ra[4] != rb[4])
+                {
+                    return rb[4] - ra[4];
+                }
+                return rb[3] - ra[3];
+            }
+        });
+
+        final List <SkylinePacker> packers = new ArrayList<SkylinePacker>();
+        final Point pos = new Point();
+        final int border = 2 * extrude + padding;
+
+        for(int i=0; i<tileCount; i++)
+        {
+            final int [] entry = index[order[i]];
+            if(entry[3] == 0)
+            {
+                continue;
+            }
+
+            final int width = entry[3] + border;
+            final int height = entry[4] + border;
+
+            if(width - padding > maxSize || height - padding > maxSize)
+            {
+                throw new IOException("Tile " + order[i] + " is larger than the atlas page size " + maxSize);
+            }
+
+            int page = 0;
+            while(page < packers.size() && !packers.get(page).insert(width, height, pos))
+            {
+                page ++;
+            }
+
+            if(page == packers.size())
+            {
+                // padding is only needed between images, so the pages
+                // are one padding wider than the usable area
+                final SkylinePacker packer = new SkylinePacker(maxSize + padding, maxSize + padding);
+                packer.insert(width, height, pos);
+                packers.add(packer);
+            }
+
+            entry[0] = page;
+            entry[1] = pos.x;
+            entry[2] = pos.y;
+        }
+
+        final BufferedImage [] pages = new BufferedImage [packers.size()];
+        for(int p=0; p<pages.length; p++)
+        {
+            final SkylinePacker packer = packers.get(p);
+            pages[p] = new BufferedImage(powerOfTwo(packer.getUsedWidth() - padding),
+                                         powerOfTwo(packer.getUsedHeight() - padding),
+                                         BufferedImage.TYPE_INT_ARGB);
+        }
+
+        for(int i=0; i<tileCount; i++)
+        {
+            final int [] entry = index[i];
+            if(entry[0] >= 0)
+            {
+                blit(images[i], entry, pages[entry[0]], extrude);
+            }
+        }
+
+        final Writer writer = new BufferedWriter(new FileWriter(filename));
+
+        try
+        {
+            writer.write("Atlas Header Start\n");
+            writer.write("v.1\n");
+            writer.write("" + pages.length + "\n");
+            writer.write("" + tileCount + "\n");
+            writer.write("" + extrude + "\n");
+            writer.write("" + padding + "\n");
+            writer.write("Atlas Header End\n");
+
+            for(int i=0; i<tileCount; i++)
+            {
+                final int [] entry = index[i];
+                final TileDescriptor tld = tileSet.get(i);
+
+                for(int n=0; n<entry.length; n++)
+                {
+                    writer.write("" + entry[n] + " ");
+                }
+
+                writer.write("" + tld.offX + " " + tld.offY + " " +
+                             tld.footX + " " + tld.footY + "\n");
+            }
+
+            tileSet.write(writer);
+        }
+        finally
+        {
+            writer.close();
+        }
+
+        long area = 0;
+        for(int p=0; p<pages.length; p++)
+        {
+            ImageIO.write(pages[p], "PNG", new File(makePageName(filename, p)));
+            area += (long)pages[p].getWidth() * pages[p].getHeight();
+        }
+
+        System.err.println("Packed " + tileCount + " tiles into " + pages.length +
+                           " atlas pages with " + area + " pixels in " +
+                           (System.nanoTime() - start) / 1000000L + " ms");
+    }
+
+    /**
+     * Finds the bounds of the non transparent pixels of an image.
+     *
+     * @return The index entry with the trimmed bounds, page -1 and
+     *         an empty rectangle if the image is fully transparent.
+     */
+    private static int [] trim(BufferedImage img)
+    {
+        final int width = img.getWidth();
+        final int height = img.getHeight();
+        final int [] argb = img.getRGB(0, 0, width, height, null, 0, width);
+
+        int minX = width;
+        int minY = height;
+        int maxX = -1;
+        int maxY = -1;
+
+        for(int y=0; y<height; y++)
+        {
+            final int row = y * width;
+
+            for(int x=0; x<width; x++)
+            {
+                if((argb[row + x] >>> 24) != 0)
+                {
+                    if(x < minX) minX = x;
+                    if(x > maxX) maxX = x;
+                    if(y < minY) minY = y;
+                    maxY = y;
+                }
+            }
+        }
+
+        if(maxX < 0)
+        {
+            return new int [] {-1, 0, 0, 0, 0, 0, 0, width, height};
+        }
+
+        return new int [] {-1, 0, 0, maxX - minX + 1, maxY - minY + 1, minX, minY, width, height};
+    }
+
+    /**
+     * Draws the trimmed image onto the page and repeats the border
+     * pixels into the extrusion area.
+     */
+    private static void blit(BufferedImage img, int [] entry, BufferedImage page, int extrude)
+    {
+        final int width = entry[3];
+        final int height = entry[4];
+        final int x = entry[1] + extrude;
+        final int y = entry[2] + extrude;
+
+        final int [] argb = img.getRGB(entry[5], entry[6], width, height, null, 0, width);
+        page.setRGB(x, y, width, height, argb, 0, width);
+
+        for(int e=1; e<=extrude; e++)
+        {
+            page.setRGB(x, y - e, width, 1, argb, 0, width);
+            page.setRGB(x, y + height - 1 + e, width, 1, argb, (height - 1) * width, width);
+        }
+
+        if(extrude > 0)
+        {
+            // columns include the already extruded rows, so corners get filled too
+            final int top = y - extrude;
+            final int total = height + 2 * extrude;
+            final int [] column = new int [total];
+
+            page.getRGB(x, top, 1, total, column, 0, 1);
+            for(int e=1; e<=extrude; e++)
+            {
+                page.setRGB(x - e, top, 1, total, column, 0, 1);
+            }
+
+            page.getRGB(x + width - 1, top, 1, total, column, 0, 1);
+            for(int e=1; e<=extrude; e++)
+            {
+                page.setRGB(x + width - 1 + e, top, 1, total, column, 0, 1);
+            }
+        }
+    }
+
+    private static int [] parseIndexLine(String line) throws IOException
+    {
+        if(line == null)
+        {
+            throw new IOException("Atlas index is truncated.");
+        }
+
+        final String [] parts = line.trim().split(" ");
+        if(parts.length != 13)
+        {
+            throw new IOException("Wrong atlas index line: " + line);
+        }
+
+        final int [] entry = new int [parts.length];
+        for(int n=0; n<parts.length; n++)
+        {
+            entry[n] = Integer.parseInt(parts[n]);
+        }
+
+        return entry;
+    }
+
+    private static int powerOfTwo(int size)
+    {
+        int result = 1;
+        while(result < size)
+        {
+            result <<= 1;
+        }
+        return result;
+    }
+
+    /**
+     * Creates the name of an atlas page image file.
+     *
+     * @param filename The atlas file name.
+     * @param page The page number.
+     * @return The page image file name.
+     */
+    private String makePageName(String filename, int page)
+    {
+        return filename.substring(0, filename.lastIndexOf('.')) + "_" + page + ".png";
+    }
+
+    /**
+     * Creates a new instance of AtlasIO
+     */
+    private AtlasIO()
+    {
+    }
+}
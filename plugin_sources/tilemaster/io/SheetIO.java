@@ -69,16 +69,8 @@ public class SheetIO implements FileTypeIO {
             // this must be an old sheet file without header?
             hasHeader = false;
             
-            SimpleMessageBox box = new SimpleMessageBox(null,
-                    "Tile Raster",
-                    "Please enter the tile raster used in this image<br>"
-                    + "in format WxHxN (N=tiles per row):",
-                    raster);
-            
-            box.setVisible(true);
-            box.dispose();
-
-            String input = box.getInput();
+            String input = askRaster("Please enter the tile raster used in this image<br>"
+                                     + "in format WxHxN (N=tiles per row):");
             String [] parts = input.split("x");
             if(parts.length >= 2) 
             {
@@ -129,13 +121,29 @@ public class SheetIO implements FileTypeIO {
         result = new TileSet(new ItemConfiguration(), 0);
         result.read(reader); // this call closes the reader.
 
-        BufferedImage sheet = ImageIO.read(new File(makeSheetName(filename)));
+        // cut the cells without decoding the whole sheet at once
+        SheetSlicer slicer = new SheetSlicer(new File(makeSheetName(filename)));
+        slicer.setCrop(true);
 
-        for(int i=0; i<result.size(); i++) 
+        try
         {
-            int x = (i % stride) * rasterW;
-            int y = (i / stride) * rasterH;
-            result.get(i).img = crop(sheet.getSubimage(x, y, rasterW, rasterH));
+            BufferedImage [] cells = slicer.sliceGrid(rasterW, rasterH, stride, result.size());
+
+            for(int i=0; i<result.size(); i++) 
+            {
+                result.get(i).img = cells[i];
+
+                // blank cells crop to one transparent pixel
+                if(cells[i].getWidth() == 1 && cells[i].getHeight() == 1 &&
+                   (cells[i].getRGB(0, 0) >>> 24) == 0)
+                {
+                    result.setEmptyIfBlank(i);
+                }
+            }
+        }
+        finally
+        {
+            slicer.close();
         }
 
         raster = "" + rasterW + "x" + rasterH + "x" + stride;
@@ -152,16 +160,8 @@ public class SheetIO implements FileTypeIO {
     @Override
     public void write(String filename, TileSet tileSet) throws IOException
     {
-        SimpleMessageBox box = new SimpleMessageBox(null,
-                "Tile Raster",
-                "Please enter the tile raster to use for this set<br"
-                + "in format WxHxN (N=tiles per row):",
-                raster);
-        
-        box.setVisible(true);
-        box.dispose();
-
-        String input = box.getInput();
+        String input = askRaster("Please enter the tile raster to use for this set<br>"
+                                 + "in format WxHxN (N=tiles per row):");
         String [] parts = input.split("x");
         if(parts.length == 3) 
         {		
@@ -199,7 +199,11 @@ public class SheetIO implements FileTypeIO {
                 int x = (i % stride) * rasterW;
                 int y = (i / stride) * rasterH;
 
-                gr.drawImage(tileSet.get(i).img, x, y, null);
+                // empty slots stay transparent
+                if(!tileSet.isEmpty(i))
+                {
+                    gr.drawImage(tileSet.get(i).getImage(), x, y, null);
+                }
             }
 
 
@@ -212,67 +216,42 @@ public class SheetIO implements FileTypeIO {
     }
 
 
-    /** 
-     * Creates a new instance of SheetIO
-     */
-    private SheetIO()
-    {
-    }
-
-
     /**
-     * Semi-crop (right, bottom) real image from a larger image with
-     * empty borders.
+     * Asks the user for the tile raster, unless the "sheet.raster"
+     * option is set.
      *
-     * @param canvas The orginal image
-     * @return the semi-cropped image
+     * @param message The question to show.
+     * @return The raster in format WxHxN.
      */
-    private BufferedImage crop(final BufferedImage canvas)
+    private String askRaster(String message)
     {
-        int maxX = 0;
-        int maxY = 0;
+        String input = IOPluginBroker.getOption("sheet.raster");
 
-        // Hajo: Scan for bounds
-        for(int y=0; y<canvas.getHeight(); y++) 
+        if(input == null)
         {
-            for(int x=0; x<canvas.getWidth(); x++) 
-            {
-                final int argb = canvas.getRGB(x, y);
-                final int a = (argb >>> 24) & 255;
-
-                if(a > 127) {
-                    if(x > maxX) maxX = x;
-                    if(y > maxY) maxY = y;
-                }
-            }
-        }
+            SimpleMessageBox box = new SimpleMessageBox(null,
+                    "Tile Raster",
+                    message,
+                    raster);
 
-        final int width = maxX + 1;
-        final int height = maxY + 1;
+            box.setVisible(true);
+            box.dispose();
 
-        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            input = box.getInput();
+        }
 
-        for(int y=0; y<height; y++) 
-        {
-            for(int x=0; x<width; x++) 
-            {
-                final int argb = canvas.getRGB(x, y);
-                final int a = (argb >>> 24) & 255;
+        return input;
+    }
 
-                if(a > 127) 
-                {
-                    img.setRGB(x, y, argb);
-                }
-                else
-                {
-                    img.setRGB(x, y, 0);
-                }
-            }
-        }
 
-        return img;
+    /** 
+     * Creates a new instance of SheetIO
+     */
+    private SheetIO()
+    {
     }
 
+
     /**
      * Creates the name of the tile sheet image file.
      * 
@@ -1,6 +1,7 @@
 package tilemaster.editor;
 
 import java.awt.Graphics;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 
 /**
@@ -38,4 +39,20 @@ public class Brush
             gr.drawImage(brush, x - brush.getWidth()/2, y - brush.getHeight()/2, null);
         }     
     }
+
+    /**
+     * @return The area which draw() changes at the given position.
+     */
+    public Rectangle getArea(int x, int y)
+    {
+        if(mode == Mode.PLAIN)
+        {
+            return new Rectangle(x, y, 1, 1);
+        }
+        else
+        {
+            return new Rectangle(x - brush.getWidth()/2, y - brush.getHeight()/2,
+                                 brush.getWidth(), brush.getHeight());
+        }
+    }
 }
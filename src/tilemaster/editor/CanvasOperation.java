@@ -0,0 +1,64 @@
+/*
+ * File: CanvasOperation.java
+ * Creation: 2026_10_17
+ * Author: agent <agent@local>
+ * License: See license.txt
+ */
+
+package tilemaster.editor;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * A long running change of the canvas, like a flood fill or a
+ * color adjustment. The editor runs operations in the background,
+ * on a copy of the canvas, see TilesetEditor.runOperation().
+ *
+ * @author agent
+ */
+public abstract class CanvasOperation
+{
+    /**
+     * Operations tell how far they got through this interface.
+     */
+    public interface Progress
+    {
+        /**
+         * Reports progress. Should be called often, at least once
+         * per row of pixels.
+         *
+         * @param done The work done so far.
+         * @param total The whole work.
+         * @throws java.util.concurrent.CancellationException if the
+         * user cancelled the operation. Operations don't need to catch
+         * this, the editor just drops the result.
+         */
+        public void update(long done, long total);
+    }
+
+    private final String name;
+
+    /**
+     * @param name The name to show while the operation runs.
+     */
+    public CanvasOperation(String name)
+    {
+        this.name = name;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Does the work. Called on a worker thread, so this must not
+     * touch the editor or any other Swing component.
+     *
+     * @param image A private copy of the canvas, TYPE_INT_ARGB.
+     * @param progress To report progress.
+     * @return The image, if it was changed in place, or a new image
+     * which replaces the tile image.
+     */
+    public abstract BufferedImage run(BufferedImage image, Progress progress);
+}
@@ -0,0 +1,246 @@
+/*
+ * File: CanvasOperationRunner.java
+ * Creation: 2026_10_17
+ * Author: agent <agent@local>
+ * License: See license.txt
+ */
+
+package tilemaster.editor;
+
+import java.awt.Component;
+import java.awt.Cursor;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * Runs canvas operations one after the other on a worker thread,
+ * shows their progress and lets the user cancel them. Results are
+ * handed back on the event dispatch thread.
+ * <p>
+ * Must be used from the event dispatch thread only.
+ *
+ * @author agent
+ */
+public class CanvasOperationRunner
+{
+    private static final Logger LOGGER = Logger.getLogger(CanvasOperationRunner.class.getName());
+
+    /**
+     * The flood fill recurses deeply on big canvases, it needs a
+     * bigger stack than threads get by default.
+     */
+    private static final long STACK_SIZE = 64L * 1024 * 1024;
+
+    /** Milliseconds between two updates of the progress display */
+    private static final int UPDATE_INTERVAL = 200;
+
+    /**
+     * Receives the results of operations.
+     */
+    public interface Listener
+    {
+        /**
+         * Called on the event dispatch thread if an operation
+         * completed and was not cancelled.
+         *
+         * @param result The result of CanvasOperation.run()
+         */
+        public void operationDone(BufferedImage result);
+    }
+
+    private class Task implements CanvasOperation.Progress, Runnable
+    {
+        final CanvasOperation operation;
+        final BufferedImage image;
+        final Listener listener;
+
+        volatile boolean cancelled;
+        volatile int percent;
+
+        Task(CanvasOperation operation, BufferedImage image, Listener listener)
+        {
+            this.operation = operation;
+            this.image = image;
+            this.listener = listener;
+        }
+
+        @Override
+        public void update(long done, long total)
+        {
+            if(cancelled)
+            {
+                throw new CancellationException();
+            }
+
+            // 100 would close the progress monitor
+            percent = total > 0 ? (int)Math.min(99, done * 100 / total) : 0;
+        }
+
+        @Override
+        public void run()
+        {
+            BufferedImage result = null;
+
+            try
+            {
+                if(!cancelled)
+                {
+                    result = operation.run(image, this);
+                }
+            }
+            catch(CancellationException ex)
+            {
+                // the user doesn't want the result
+            }
+            catch(RuntimeException ex)
+            {
+                LOGGER.log(Level.SEVERE, operation.getName() + " failed", ex);
+            }
+            catch(StackOverflowError ex)
+            {
+                LOGGER.log(Level.SEVERE, operation.getName() + " failed", ex);
+            }
+
+            final BufferedImage done = result;
+
+            SwingUtilities.invokeLater(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    finished(Task.this, done);
+                }
+            });
+        }
+    }
+
+    private final Component parent;
+    private final ExecutorService executor;
+    private final Timer timer;
+
+    private Task current;
+    private ProgressMonitor monitor;
+    private Cursor cursor;
+
+    /**
+     * @param parent The component to show the progress for.
+     */
+    public CanvasOperationRunner(Component parent)
+    {
+        this.parent = parent;
+
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread thread = new Thread(null, r, "CanvasOperation", STACK_SIZE);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        timer = new Timer(UPDATE_INTERVAL, new ActionListener()
+        {
+            @Override
+            public void actionPerformed(ActionEvent e)
+            {
+                showProgress();
+            }
+        });
+    }
+
+    /**
+     * Starts an operation. If another one is still running, it
+     * is cancelled.
+     *
+     * @param operation The operation.
+     * @param image The image to work on, only the operation may use it.
+     * @param listener Receives the result.
+     */
+    public void start(CanvasOperation operation, BufferedImage image, Listener listener)
+    {
+        cancel();
+
+        current = new Task(operation, image, listener);
+        monitor = new ProgressMonitor(parent, operation.getName(), null, 0, 100);
+        cursor = parent.getCursor();
+        parent.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        timer.start();
+
+        executor.execute(current);
+    }
+
+    /**
+     * Cancels the running operation, if there is one. Its result
+     * will be dropped.
+     */
+    public void cancel()
+    {
+        if(current != null)
+        {
+            current.cancelled = true;
+            stop();
+        }
+    }
+
+    /**
+     * @return true if an operation is running.
+     */
+    public boolean isBusy()
+    {
+        return current != null;
+    }
+
+    private void showProgress()
+    {
+        if(current == null)
+        {
+            // a late tick, the operation is over
+            return;
+        }
+
+        if(monitor.isCanceled())
+        {
+            cancel();
+        }
+        else
+        {
+            // the monitor pops up by itself if the operation takes long
+            monitor.setProgress(current.percent);
+        }
+    }
+
+    private void finished(Task task, BufferedImage result)
+    {
+        if(task == current)
+        {
+            stop();
+
+            if(result != null && !task.cancelled)
+            {
+                task.listener.operationDone(result);
+            }
+        }
+    }
+
+    private void stop()
+    {
+        timer.stop();
+        monitor.close();
+        parent.setCursor(cursor);
+
+        current = null;
+        monitor = null;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * File: DirtyRegion.java
+ * Creation: 2026_10_17
+ * Author: agent <agent@local>
+ * License: See license.txt
+ */
+
+package tilemaster.editor;
+
+import java.awt.Rectangle;
+
+/**
+ * Collects the changed areas of an image as the bounding rectangle
+ * of all changes, so work after the changes can be limited to the
+ * changed area instead of the whole image.
+ *
+ * @author agent
+ */
+public class DirtyRegion
+{
+    // right and bottom are exclusive, empty if right <= left
+    private int left;
+    private int top;
+    private int right;
+    private int bottom;
+
+    /**
+     * Adds a changed area.
+     */
+    public void add(int x, int y, int width, int height)
+    {
+        if(width <= 0 || height <= 0)
+        {
+            return;
+        }
+
+        if(isEmpty())
+        {
+            left = x;
+            top = y;
+            right = x + width;
+            bottom = y + height;
+        }
+        else
+        {
+            left = Math.min(left, x);
+            top = Math.min(top, y);
+            right = Math.max(right, x + width);
+            bottom = Math.max(bottom, y + height);
+        }
+    }
+
+    public void add(Rectangle r)
+    {
+        add(r.x, r.y, r.width, r.height);
+    }
+
+    public void add(DirtyRegion other)
+    {
+        if(!other.isEmpty())
+        {
+            add(other.left, other.top, other.right - other.left, other.bottom - other.top);
+        }
+    }
+
+    public void clear()
+    {
+        left = 0;
+        top = 0;
+        right = 0;
+        bottom = 0;
+    }
+
+    public boolean isEmpty()
+    {
+        return right <= left;
+    }
+
+    /**
+     * Gets the changed area inside an image.
+     *
+     * @param width The image width.
+     * @param height The image height.
+     * @return The area, with width and height 0 if nothing changed
+     * inside the image.
+     */
+    public Rectangle getBounds(int width, int height)
+    {
+        final int x = Math.max(left, 0);
+        final int y = Math.max(top, 0);
+        final int w = Math.min(right, width) - x;
+        final int h = Math.min(bottom, height) - y;
+
+        if(isEmpty() || w <= 0 || h <= 0)
+        {
+            return new Rectangle(x, y, 0, 0);
+        }
+
+        return new Rectangle(x, y, w, h);
+    }
+
+    @Override
+    public String toString()
+    {
+        return isEmpty() ? "[]" : "[" + left + ", " + top + " - " + right + ", " + bottom + "]";
+    }
+}
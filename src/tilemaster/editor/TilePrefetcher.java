@@ -0,0 +1,218 @@
+/*
+ * File: TilePrefetcher.java
+ * Creation: 2026_10_17
+ * Author: agent <agent@local>
+ * License: See license.txt
+ */
+
+package tilemaster.editor;
+
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import tilemaster.tile.TileDescriptor;
+import tilemaster.tile.TileImageSource;
+
+/**
+ * Prepares the canvas pixels of tiles in the background, so the
+ * editor can show a tile without loading and converting its image
+ * if the user switches to one of the prefetched tiles.
+ * <p>
+ * Must be used from one thread only, the event dispatch thread.
+ *
+ * @author agent
+ */
+public class TilePrefetcher
+{
+    /**
+     * Pixels of a tile image as the canvas shows them.
+     */
+    public static class CanvasPixels
+    {
+        public final int width;
+        public final int height;
+
+        /** Rows of width pixels, fully transparent pixels are 0 */
+        public final int [] pixels;
+
+        CanvasPixels(int width, int height, int [] pixels)
+        {
+            this.width = width;
+            this.height = height;
+            this.pixels = pixels;
+        }
+    }
+
+    private static class PrefetchEntry
+    {
+        final BufferedImage img;
+        final TileImageSource source;
+        final Future <CanvasPixels> pixels;
+
+        PrefetchEntry(BufferedImage img, TileImageSource source, Future <CanvasPixels> pixels)
+        {
+            this.img = img;
+            this.source = source;
+            this.pixels = pixels;
+        }
+
+        /**
+         * @return true if the tile still has the image the pixels were made of.
+         */
+        boolean matches(TileDescriptor tld)
+        {
+            return tld.img == img && tld.getImageSource() == source;
+        }
+    }
+
+    private final ExecutorService executor;
+    private final int capacity;
+
+    private final LinkedHashMap <TileDescriptor, PrefetchEntry> entries;
+
+    /**
+     * @param executor The workers to prepare the pixels.
+     * @param capacity The number of tiles to keep prepared.
+     */
+    public TilePrefetcher(ExecutorService executor, final int capacity)
+    {
+        this.executor = executor;
+        this.capacity = capacity;
+
+        // least recently used order
+        entries = new LinkedHashMap<TileDescriptor, PrefetchEntry>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry <TileDescriptor, PrefetchEntry> eldest)
+            {
+                if(size() > TilePrefetcher.this.capacity)
+                {
+                    eldest.getValue().pixels.cancel(false);
+                    return true;
+                }
+
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Starts to prepare the pixels of a tile, unless they are
+     * prepared already.
+     */
+    public void prefetch(TileDescriptor tld)
+    {
+        if(tld == null || tld.isEmpty())
+        {
+            return;
+        }
+
+        final PrefetchEntry entry = entries.get(tld);
+        if(entry != null && entry.matches(tld))
+        {
+            return;
+        }
+
+        // the worker must not look at the tile, it may change meanwhile
+        final BufferedImage img = tld.img;
+        final TileImageSource source = tld.getImageSource();
+
+        if(img == null && source == null)
+        {
+            return;
+        }
+
+        final Future <CanvasPixels> pixels = executor.submit(new Callable<CanvasPixels>()
+        {
+            @Override
+            public CanvasPixels call()
+            {
+                return convert(img != null ? img : source.loadImage());
+            }
+        });
+
+        entries.put(tld, new PrefetchEntry(img, source, pixels));
+    }
+
+    /**
+     * Gets the prepared pixels of a tile, if they are ready.
+     *
+     * @return The pixels or null if the tile was not prefetched,
+     * is not ready yet, or has another image by now.
+     */
+    public CanvasPixels take(TileDescriptor tld)
+    {
+        final PrefetchEntry entry = entries.remove(tld);
+
+        if(entry == null || !entry.matches(tld) || !entry.pixels.isDone())
+        {
+            if(entry != null)
+            {
+                entry.pixels.cancel(false);
+            }
+            return null;
+        }
+
+        try
+        {
+            return entry.pixels.get();
+        }
+        catch(InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        catch(ExecutionException ex)
+        {
+            // the editor will load the image itself and see the problem
+            return null;
+        }
+    }
+
+    /**
+     * Forgets all prepared tiles.
+     */
+    public void clear()
+    {
+        for(Iterator <PrefetchEntry> i = entries.values().iterator(); i.hasNext(); )
+        {
+            i.next().pixels.cancel(false);
+            i.remove();
+        }
+    }
+
+    /**
+     * Converts an image to canvas pixels.
+     */
+    public static CanvasPixels convert(BufferedImage image)
+    {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final int [] pixels = new int [width * height];
+
+        if(image.getType() == BufferedImage.TYPE_INT_ARGB)
+        {
+            // no color conversion needed
+            image.getRaster().getDataElements(0, 0, width, height, pixels);
+        }
+        else
+        {
+            image.getRGB(0, 0, width, height, pixels, 0, width);
+        }
+
+        for(int i=0; i<pixels.length; i++)
+        {
+            if((pixels[i] & 0xFF000000) == 0)
+            {
+                pixels[i] = 0;
+            }
+        }
+
+        return new CanvasPixels(width, height, pixels);
+    }
+}
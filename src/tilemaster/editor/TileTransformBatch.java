@@ -0,0 +1,316 @@
+/*
+ * File: TileTransformBatch.java
+ * Creation: 2026_10_17
+ * Author: agent <agent@local>
+ * License: See license.txt
+ */
+
+package tilemaster.editor;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import tilemaster.editor.transforms.TileTransform;
+import tilemaster.tile.IndexedPixelStore;
+import tilemaster.tile.TileDescriptor;
+import tilemaster.tile.TileImageSource;
+import tilemaster.tile.TileSet;
+
+/**
+ * Applies tile transforms to a range of tiles, one tile per task.
+ * The workers read the tiles from a snapshot of the set and transform
+ * copies of their images, so the set stays untouched until commit()
+ * puts all results into it at once.
+ * <p>
+ * A tile which fails to transform keeps its image, the other tiles
+ * are transformed anyways.
+ *
+ * @author agent
+ */
+public class TileTransformBatch
+{
+    private final TileSet tileSet;
+    private final TileSet snapshot;
+    private final int first;
+    private final int count;
+    private final List <TileTransform> transforms;
+
+    /** Transformed images, null for skipped or failed tiles */
+    private final BufferedImage [] results;
+
+    private final CountDownLatch pending;
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicLong pixels = new AtomicLong();
+    private volatile Throwable firstFailure;
+    private volatile boolean cancelled;
+
+    /** Ids of the tiles which commit() changed */
+    private int [] changedIds = new int [0];
+
+    /** Images and sources commit() put into the changed tiles */
+    private BufferedImage [] installedImages = new BufferedImage [0];
+    private TileImageSource [] installedSources = new TileImageSource [0];
+
+    /** Ids of the tiles which revert() changed back */
+    private int [] revertedIds = new int [0];
+
+    /**
+     * @param tileSet The tile set.
+     * @param first The index of the first tile to transform.
+     * @param count The number of tiles to transform.
+     * @param transforms The transforms, applied in this order.
+     */
+    public TileTransformBatch(TileSet tileSet, int first, int count, List <TileTransform> transforms)
+    {
+        this.tileSet = tileSet;
+        this.snapshot = tileSet.snapshot();
+        this.first = first;
+        this.count = count;
+        this.transforms = transforms;
+
+        results = new BufferedImage [count];
+        pending = new CountDownLatch(count);
+    }
+
+    /**
+     * Hands the tiles to the workers. Returns at once.
+     */
+    public void start(ExecutorService executor)
+    {
+        for(int i=0; i<count; i++)
+        {
+            final int n = i;
+
+            executor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        if(!cancelled)
+                        {
+                            results[n] = transformTile(first + n);
+                        }
+                    }
+                    catch(RuntimeException ex)
+                    {
+                        failed(first + n, ex);
+                    }
+                    finally
+                    {
+                        pending.countDown();
+                    }
+                }
+            });
+        }
+    }
+
+    private BufferedImage transformTile(int tileNo)
+    {
+        if(snapshot.isEmpty(tileNo))
+        {
+            return null;
+        }
+
+        // tiles might share their image with other tiles
+        final BufferedImage source = snapshot.get(tileNo).getImage();
+        BufferedImage img = new BufferedImage(source.getWidth(), source.getHeight(),
+                                              BufferedImage.TYPE_INT_ARGB);
+        final Graphics gr = img.getGraphics();
+        gr.drawImage(source, 0, 0, null);
+        gr.dispose();
+
+        for(TileTransform transform : transforms)
+        {
+            img = transform.transform(img);
+        }
+
+        pixels.addAndGet(source.getWidth() * source.getHeight());
+
+        return img;
+    }
+
+    private void failed(int tileNo, RuntimeException ex)
+    {
+        if(failures.getAndIncrement() == 0)
+        {
+            firstFailure = ex;
+        }
+
+        System.err.println("Can't transform tile " + tileNo + ": " + ex);
+    }
+
+    /**
+     * Stops the batch. Tiles which are not started yet are skipped.
+     */
+    public void cancel()
+    {
+        cancelled = true;
+    }
+
+    public boolean isCancelled()
+    {
+        return cancelled;
+    }
+
+    /**
+     * Waits until all tiles are done.
+     */
+    public void await() throws InterruptedException
+    {
+        pending.await();
+    }
+
+    /**
+     * @return true if all tiles are done.
+     */
+    public boolean isDone()
+    {
+        return pending.getCount() == 0;
+    }
+
+    /**
+     * @return The number of tiles which are done.
+     */
+    public int getDone()
+    {
+        return count - (int)pending.getCount();
+    }
+
+    public int getFirst()
+    {
+        return first;
+    }
+
+    public int getCount()
+    {
+        return count;
+    }
+
+    public int getFailureCount()
+    {
+        return failures.get();
+    }
+
+    /**
+     * @return The problem of the first tile which failed, or null.
+     */
+    public Throwable getFirstFailure()
+    {
+        return firstFailure;
+    }
+
+    /**
+     * @return The number of pixels transformed.
+     */
+    public long getPixels()
+    {
+        return pixels.get();
+    }
+
+    /**
+     * Puts the transformed images into the tile set. Must be called
+     * once the batch is done. Tiles which were changed or moved in
+     * the set while the batch ran are not touched.
+     *
+     * @param indexedStore The pixel store of the set, null if the set
+     *                     is not in indexed mode.
+     * @return The number of tiles changed.
+     */
+    public int commit(IndexedPixelStore indexedStore)
+    {
+        int changed = 0;
+        changedIds = new int [count];
+        installedImages = new BufferedImage [count];
+        installedSources = new TileImageSource [count];
+
+        for(int i=0; i<count; i++)
+        {
+            final int tileNo = first + i;
+
+            if(results[i] != null && tileNo < tileSet.size() &&
+               tileSet.get(tileNo) == snapshot.get(tileNo))
+            {
+                final TileDescriptor tld = tileSet.edit(tileNo);
+                IndexedPixelStore.setImage(tld, results[i], indexedStore);
+                results[i] = null;
+
+                installedImages[changed] = tld.img;
+                installedSources[changed] = tld.getImageSource();
+                changedIds[changed++] = tld.tileId;
+            }
+        }
+
+        changedIds = Arrays.copyOf(changedIds, changed);
+        installedImages = Arrays.copyOf(installedImages, changed);
+        installedSources = Arrays.copyOf(installedSources, changed);
+
+        return changed;
+    }
+
+    /**
+     * @return The ids of the tiles which commit() changed.
+     */
+    public int [] getChangedIds()
+    {
+        return changedIds;
+    }
+
+    /**
+     * Puts the images from before the batch back into the tiles
+     * which commit() changed. The tiles are found by id, in case
+     * they were moved meanwhile. Tiles which got another image after
+     * commit() keep it.
+     *
+     * @param indexedStore The pixel store of the set, null if the set
+     *                     is not in indexed mode.
+     * @return The number of tiles changed back.
+     */
+    public int revert(IndexedPixelStore indexedStore)
+    {
+        int reverted = 0;
+        revertedIds = new int [changedIds.length];
+
+        for(int i=0; i<changedIds.length; i++)
+        {
+            final int id = changedIds[i];
+            final int before = snapshot.numberFromId(id);
+            final int now = tileSet.numberFromId(id);
+
+            if(before >= 0 && now >= 0 &&
+               tileSet.get(now).img == installedImages[i] &&
+               tileSet.get(now).getImageSource() == installedSources[i])
+            {
+                final TileDescriptor old = snapshot.get(before);
+                final TileDescriptor tld = tileSet.edit(now);
+
+                IndexedPixelStore.setImage(tld, old.getImage(), indexedStore);
+                revertedIds[reverted++] = id;
+            }
+        }
+
+        revertedIds = Arrays.copyOf(revertedIds, reverted);
+
+        // the store can free the pixels commit() put in, and
+        // a second revert() finds nothing to do
+        changedIds = new int [0];
+        installedImages = new BufferedImage [0];
+        installedSources = new TileImageSource [0];
+
+        return reverted;
+    }
+
+    /**
+     * @return The ids of the tiles which revert() changed back.
+     */
+    public int [] getRevertedIds()
+    {
+        return revertedIds;
+    }
+}
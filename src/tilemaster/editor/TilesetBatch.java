@@ -0,0 +1,342 @@
+/*
+ * File: TilesetBatch.java
+ * Creation: 2026_10_17
+ * Author: agent <agent@local>
+ * License: See license.txt
+ */
+
+package tilemaster.editor;
+
+import asktools.ColorPalette;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import tilemaster.editor.colors.ColorMapFile;
+import tilemaster.editor.transforms.ReduceToColormap;
+import tilemaster.editor.transforms.ReduceToColormapED;
+import tilemaster.editor.transforms.TileTransform;
+import tilemaster.editor.transforms.TransformBlackPoint;
+import tilemaster.editor.transforms.TransformCropTile;
+import tilemaster.editor.transforms.TransformWhitePoint;
+import tilemaster.io.FileTypeIO;
+import tilemaster.io.IOPluginBroker;
+import tilemaster.io.WorkerPool;
+import tilemaster.tile.TileSet;
+
+/**
+ * Command line tool to convert tile sets between the registered file
+ * formats and to apply tile transforms to all tiles of a set. Runs
+ * without a display, questions which the IO plugins would ask
+ * the user must be answered with -o options.
+ * <pre>
+ * TilesetBatch [options] input output
+ *   -t transform   crop, blackpoint=R,G,B, whitepoint=R,G,B, colormap, colormap-ed
+ *   -p palette     color palette file for crop and colormap
+ *   -o key=value   plugin option, i.e. sheet.raster=64x64x8 or atlas.options=2048,1,1
+ *   -j threads     number of worker threads
+ * </pre>
+ * Transforms are applied in the given order.
+ *
+ * @author agent
+ */
+public class TilesetBatch
+{
+    private final List <String> transformNames = new ArrayList<String>();
+    private File paletteFile;
+    private String input;
+    private String output;
+
+    private static void usage()
+    {
+        System.err.println("Usage: TilesetBatch [options] input output");
+        System.err.println("  -t transform   crop, blackpoint=R,G,B, whitepoint=R,G,B, colormap, colormap-ed");
+        System.err.println("  -p palette     color palette file for crop and colormap");
+        System.err.println("  -o key=value   plugin option, i.e. sheet.raster=64x64x8 or atlas.options=2048,1,1");
+        System.err.println("  -j threads     number of worker threads");
+        System.err.println("Supported file types: " + IOPluginBroker.getFileFilterList(" "));
+    }
+
+    /**
+     * Parses the command line.
+     *
+     * @return false if the command line is malformed.
+     */
+    private boolean parse(String [] args)
+    {
+        for(int i=0; i<args.length; i++)
+        {
+            final String arg = args[i];
+
+            if(arg.startsWith("-"))
+            {
+                if(i + 1 >= args.length)
+                {
+                    System.err.println("Missing value for " + arg);
+                    return false;
+                }
+
+                final String value = args[++i];
+
+                if("-t".equals(arg))
+                {
+                    transformNames.add(value);
+                }
+                else if("-p".equals(arg))
+                {
+                    paletteFile = new File(value);
+                }
+                else if("-o".equals(arg))
+                {
+                    final int split = value.indexOf('=');
+                    if(split <= 0)
+                    {
+                        System.err.println("Plugin options must be key=value: " + value);
+                        return false;
+                    }
+                    IOPluginBroker.setOption(value.substring(0, split), value.substring(split + 1));
+                }
+                else if("-j".equals(arg))
+                {
+                    WorkerPool.setThreadCount(Integer.parseInt(value));
+                }
+                else
+                {
+                    System.err.println("Unknown option: " + arg);
+                    return false;
+                }
+            }
+            else if(input == null)
+            {
+                input = arg;
+            }
+            else if(output == null)
+            {
+                output = arg;
+            }
+            else
+            {
+                System.err.println("Too many file names: " + arg);
+                return false;
+            }
+        }
+
+        return input != null && output != null;
+    }
+
+    /**
+     * Creates the transforms from their command line names.
+     */
+    private List <TileTransform> createTransforms() throws IOException
+    {
+        final ColorPalette palette;
+
+        if(paletteFile != null)
+        {
+            palette = new ColorPalette(null, ColorMapFile.read(paletteFile), 24);
+        }
+        else
+        {
+            palette = new ColorPalette(null, 24);
+        }
+
+        final List <TileTransform> result = new ArrayList<TileTransform>();
+
+        for(String name : transformNames)
+        {
+            final String [] parts = name.split("=", 2);
+            final String key = parts[0].toLowerCase(Locale.ROOT);
+
+            if("crop".equals(key))
+            {
+                result.add(new TransformCropTile(palette.getColor(0).getRGB()));
+            }
+            else if("blackpoint".equals(key) || "whitepoint".equals(key))
+            {
+                final int [] levels = parseLevels(name, parts);
+
+                if("blackpoint".equals(key))
+                {
+                    result.add(new TransformBlackPoint(levels[0], levels[1], levels[2]));
+                }
+                else
+                {
+                    result.add(new TransformWhitePoint(levels[0], levels[1], levels[2]));
+                }
+            }
+            else if("colormap".equals(key))
+            {
+                result.add(new ReduceToColormap(palette));
+            }
+            else if("colormap-ed".equals(key))
+            {
+                result.add(new ReduceToColormapED(palette));
+            }
+            else
+            {
+                throw new IOException("Unknown transform: " + name);
+            }
+        }
+
+        return result;
+    }
+
+    private static int [] parseLevels(String name, String [] parts) throws IOException
+    {
+        final String [] values = parts.length == 2 ? parts[1].split(",") : new String [0];
+
+        if(values.length != 3)
+        {
+            throw new IOException("Levels must be given as " + parts[0] + "=R,G,B: " + name);
+        }
+
+        try
+        {
+            return new int [] {Integer.parseInt(values[0].trim()),
+                               Integer.parseInt(values[1].trim()),
+                               Integer.parseInt(values[2].trim())};
+        }
+        catch(NumberFormatException ex)
+        {
+            throw new IOException("Levels must be numbers: " + name);
+        }
+    }
+
+    /**
+     * Applies the transforms to all tiles, in parallel.
+     *
+     * @return The number of pixels processed.
+     */
+    private static long transformAll(final TileSet tileSet,
+                                     final List <TileTransform> transforms) throws IOException
+    {
+        final ExecutorService executor = WorkerPool.create("TilesetBatch");
+        final TileTransformBatch batch = new TileTransformBatch(tileSet, 0, tileSet.size(), transforms);
+
+        try
+        {
+            batch.start(executor);
+            batch.await();
+        }
+        catch(InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while transforming tiles.");
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        if(batch.getFailureCount() > 0)
+        {
+            throw new IOException("Can't transform " + batch.getFailureCount() + " tiles.",
+                                  batch.getFirstFailure());
+        }
+
+        batch.commit(null);
+
+        return batch.getPixels();
+    }
+
+    private int run() throws IOException
+    {
+        final List <TileTransform> transforms = createTransforms();
+
+        final FileTypeIO reader = IOPluginBroker.findHandler(input);
+        if(reader == null)
+        {
+            throw new IOException("No handler for " + input);
+        }
+
+        final FileTypeIO writer = IOPluginBroker.findHandler(output);
+        if(writer == null)
+        {
+            throw new IOException("No handler for " + output);
+        }
+
+        final long start = System.nanoTime();
+        final TileSet tileSet = reader.read(input);
+        final long read = System.nanoTime();
+
+        long pixels = 0;
+        if(!transforms.isEmpty())
+        {
+            pixels = transformAll(tileSet, transforms);
+        }
+        final long transformed = System.nanoTime();
+
+        writer.write(output, tileSet);
+        final long written = System.nanoTime();
+
+        final int count = tileSet.size();
+        System.err.println("Read " + count + " tiles in " + millis(start, read) + " ms");
+
+        if(!transforms.isEmpty())
+        {
+            final double seconds = Math.max(1, transformed - read) / 1e9;
+            System.err.println(String.format(Locale.ROOT,
+                    "Transformed %d tiles with %d transforms using %d workers in %d ms, " +
+                    "%.0f tiles/s, %.1f Mpixel/s",
+                    count, transforms.size(), WorkerPool.getThreadCount(),
+                    millis(read, transformed),
+                    count / seconds, pixels / seconds / 1e6));
+        }
+
+        System.err.println("Wrote " + output + " in " + millis(transformed, written) + " ms");
+
+        return 0;
+    }
+
+    private static long millis(long start, long end)
+    {
+        return (end - start) / 1000000L;
+    }
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String args[])
+    {
+        if(System.getProperty("java.awt.headless") == null)
+        {
+            System.setProperty("java.awt.headless", "true");
+        }
+
+        IOPluginBroker.loadPlugins();
+
+        final TilesetBatch batch = new TilesetBatch();
+        int status;
+
+        try
+        {
+            if(batch.parse(args))
+            {
+                status = batch.run();
+            }
+            else
+            {
+                usage();
+                status = 2;
+            }
+        }
+        catch(IOException ex)
+        {
+            System.err.println("Error: " + ex.getMessage());
+            if(ex.getCause() != null)
+            {
+                ex.getCause().printStackTrace();
+            }
+            status = 1;
+        }
+        catch(NumberFormatException ex)
+        {
+            System.err.println("Error: not a number: " + ex.getMessage());
+            status = 1;
+        }
+
+        System.exit(status);
+    }
+}
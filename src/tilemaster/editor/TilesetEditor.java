@@ -15,14 +15,18 @@ import itemizer.item.ItemConfiguration;
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.image.BufferedImage;
-import java.io.BufferedReader;
+import java.awt.image.DataBufferInt;
 import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.imageio.ImageIO;
@@ -30,6 +34,9 @@ import javax.swing.*;
 import javax.swing.UIManager.LookAndFeelInfo;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
+import javax.swing.event.MenuEvent;
+import javax.swing.event.MenuListener;
+import tilemaster.editor.colors.ColorMapFile;
 import tilemaster.editor.colors.PaletteEditorFrame;
 import tilemaster.editor.paintingtools.*;
 import tilemaster.editor.paintingtools.Fillmachine.Filler;
@@ -39,11 +46,18 @@ import tilemaster.editor.ui.AnimationPreview;
 import tilemaster.editor.ui.ImageView;
 import tilemaster.editor.ui.PreviewFrame;
 import tilemaster.editor.ui.TileCellRenderer;
+import tilemaster.editor.ui.TileListModel;
 import tilemaster.file.FileSelector;
 import tilemaster.file.FileWrapper;
 import tilemaster.io.IOPluginBroker;
+import tilemaster.io.SheetSlicer;
+import tilemaster.io.SpriteFinder;
+import tilemaster.io.WorkerPool;
 import tilemaster.tile.IdPool;
+import tilemaster.tile.IndexedPixelStore;
 import tilemaster.tile.TileDescriptor;
+import tilemaster.tile.TileHashIndex;
+import tilemaster.tile.TilePixelStore;
 import tilemaster.tile.TileSet;
 
 /**
@@ -70,6 +84,12 @@ public class TilesetEditor
     private final ImageView imageView;
     private final JScrollPane imageViewScrollPane;
     private TileSet tileSet;
+    private final TileListModel tileListModel = new TileListModel();
+
+    /**
+     * Knows the used tile ids, new tiles get their ids here.
+     */
+    private IdPool idPool = new IdPool();
     
     private int currentTile = -1;
     
@@ -101,9 +121,97 @@ public class TilesetEditor
     private TileSet backgroundTileSet;
 
     /**
-     * Used to speed up canvas clearing.
+     * Holds the tile pixels in indexed color mode, null
+     * in ARGB mode.
+     */
+    private IndexedPixelStore indexedStore;
+
+    /**
+     * Set -Dtilemaster.editor.dirtyStats=true to see how many
+     * pixels the canvas operations touch.
+     */
+    private static final boolean DIRTY_STATS = Boolean.getBoolean("tilemaster.editor.dirtyStats");
+
+    /**
+     * Set -Dtilemaster.editor.switchStats=true to see how long
+     * switching to another tile takes.
+     */
+    private static final boolean SWITCH_STATS = Boolean.getBoolean("tilemaster.editor.switchStats");
+
+    /**
+     * Tile switches should be done within one frame at 60 Hz.
+     */
+    private static final long FRAME_NANOS = 16666667L;
+
+    /**
+     * Prepares the neighbours of the current tile for display.
+     */
+    private final TilePrefetcher prefetcher = new TilePrefetcher(WorkerPool.create("TilePrefetch"), 6);
+
+    /**
+     * Runs long canvas operations in the background, see runOperation().
+     */
+    private final CanvasOperationRunner operations = new CanvasOperationRunner(this);
+
+    /**
+     * Where tile transforms are applied, see callTransform().
+     */
+    private static final int TRANSFORM_TILE = 0;
+    private static final int TRANSFORM_RANGE = 1;
+    private static final int TRANSFORM_SET = 2;
+
+    private int transformMode = TRANSFORM_TILE;
+    private String transformRange = "0, 0";
+
+    /**
+     * The last batch transform, kept for undo.
+     */
+    private TileTransformBatch lastBatch;
+    private JMenuItem undoBatchMenuItem;
+
+    /**
+     * Preset for the number of hash bits in which look-alike
+     * tiles may differ, see findDuplicates().
+     */
+    private static final int DUPLICATE_DISTANCE = 4;
+
+    /**
+     * Background pixels which may be between parts of one
+     * sprite, see importSpritesFromImage().
      */
-    private int [] clearPixels = new int [0];
+    private int spriteGap = 1;
+
+    /**
+     * Canvas areas changed since the canvas was loaded from the
+     * current tile or copied back into it.
+     */
+    private final DirtyRegion tileChanges = new DirtyRegion();
+
+    /**
+     * Canvas areas changed since the last undo step was saved.
+     * Elsewhere the undo canvas equals the canvas.
+     */
+    private final DirtyRegion undoChanges = new DirtyRegion();
+
+    /**
+     * Undo steps of all tiles. Set -Dtilemaster.editor.undoBudget
+     * to the memory budget in megabytes.
+     */
+    private final UndoHistory undoHistory =
+        new UndoHistory(Long.getLong("tilemaster.editor.undoBudget", 64) * 1024 * 1024);
+
+    private JMenuItem undoMenuItem;
+    private JMenuItem redoMenuItem;
+
+    /**
+     * Canvas areas changed since the image view was repainted.
+     */
+    private final DirtyRegion viewChanges = new DirtyRegion();
+
+    /**
+     * Canvas area which might have pixels that are not transparent.
+     */
+    private final DirtyRegion canvasUsed = new DirtyRegion();
 
     /**
      * Customized file chooser.
@@ -151,7 +259,9 @@ public class TilesetEditor
         setIconImage(icon.getImage());
 
         imageList.setCellRenderer(new TileCellRenderer());
-        imageList.setModel(new DefaultListModel());
+        imageList.setFixedCellWidth(TileCellRenderer.CELL_SIZE);
+        imageList.setFixedCellHeight(TileCellRenderer.CELL_SIZE);
+        imageList.setModel(tileListModel);
         imageList.requestFocusInWindow();
 
         // shared between selection and image view
@@ -325,6 +435,19 @@ public class TilesetEditor
             }
         );
 
+        final JCheckBoxMenuItem indexed = new JCheckBoxMenuItem("Indexed Colors (8 Bit)");
+        fileMenu.add(indexed);
+        indexed.addActionListener(
+            new ActionListener() 
+            {
+            @Override
+                public void actionPerformed(ActionEvent e) 
+                {
+                    setIndexedMode(indexed.isSelected());
+                }
+            }
+        );
+
         fileMenu.addSeparator();
 
         importMenuItem = new JMenuItem("Import Image As Tile");
@@ -369,6 +492,19 @@ public class TilesetEditor
             }
         );
 
+        JMenuItem mspr = new JMenuItem("Import Sprites From Image");
+        fileMenu.add(mspr);
+        mspr.addActionListener(
+            new ActionListener() 
+            {
+            @Override
+                public void actionPerformed(ActionEvent e) 
+                {
+                    importSpritesFromImage();
+                }
+            }
+        );
+
         JMenuItem importList = new JMenuItem("Import From Tile Set");
         fileMenu.add(importList);
         importList.addActionListener(
@@ -444,20 +580,57 @@ public class TilesetEditor
         exit.setMnemonic(KeyEvent.VK_Q);
         exit.setAccelerator(KeyStroke.getKeyStroke("ctrl Q"));
 
-        JMenuItem undo = new JMenuItem("Undo");
-        editMenu.add(undo);
-        undo.addActionListener(
+        undoMenuItem = new JMenuItem("Undo");
+        editMenu.add(undoMenuItem);
+        undoMenuItem.addActionListener(
+            new ActionListener() 
+            {
+            @Override
+                public void actionPerformed(ActionEvent e) 
+                {
+                    undoStep();
+                    imageClicked(currentTile);
+                }
+            }
+        );
+        undoMenuItem.setAccelerator(KeyStroke.getKeyStroke("ctrl Z"));
+
+        redoMenuItem = new JMenuItem("Redo");
+        editMenu.add(redoMenuItem);
+        redoMenuItem.addActionListener(
             new ActionListener() 
             {
             @Override
                 public void actionPerformed(ActionEvent e) 
                 {
-                    undo();
+                    redoStep();
                     imageClicked(currentTile);
                 }
             }
         );
-        undo.setAccelerator(KeyStroke.getKeyStroke("ctrl Z"));
+        redoMenuItem.setAccelerator(KeyStroke.getKeyStroke("ctrl Y"));
+
+        // show the history depth when the menu opens
+        editMenu.addMenuListener(
+            new MenuListener()
+            {
+                @Override
+                public void menuSelected(MenuEvent e)
+                {
+                    updateUndoMenu();
+                }
+
+                @Override
+                public void menuDeselected(MenuEvent e)
+                {
+                }
+
+                @Override
+                public void menuCanceled(MenuEvent e)
+                {
+                }
+            }
+        );
 
         JMenuItem paste = new JMenuItem("Paste");
         editMenu.add(paste);
@@ -674,6 +847,32 @@ public class TilesetEditor
             }
         );
 
+        JMenuItem findDuplicates = new JMenuItem("Find Duplicate Tiles");
+        editMenu.add(findDuplicates);
+        findDuplicates.addActionListener(
+            new ActionListener() {
+            @Override
+                public void actionPerformed(ActionEvent e) {
+                    if(tileSet != null) {
+                        findDuplicates(false);
+                    }
+                }
+            }
+        );
+
+        JMenuItem findDuplicatesIn = new JMenuItem("Find Duplicates In Tile Set");
+        editMenu.add(findDuplicatesIn);
+        findDuplicatesIn.addActionListener(
+            new ActionListener() {
+            @Override
+                public void actionPerformed(ActionEvent e) {
+                    if(tileSet != null) {
+                        findDuplicates(true);
+                    }
+                }
+            }
+        );
+
         editMenu.addSeparator();
 
         JMenuItem lobai = new JMenuItem("Load Background Image");
@@ -820,7 +1019,7 @@ public class TilesetEditor
             @Override
                 public void actionPerformed(ActionEvent e)
                 {
-                   clearImage(canvas);
+                   clearCanvas();
                    imageClicked(currentTile);
                 }
             }
@@ -856,6 +1055,49 @@ public class TilesetEditor
         );
         toColormapED.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_R, KeyEvent.ALT_DOWN_MASK));
 
+        transformsMenu.addSeparator();
+
+        final ButtonGroup transformModeGroup = new ButtonGroup();
+        final String [] transformModeNames =
+        {
+            "Transform Current Tile",
+            "Transform Tile Range",
+            "Transform Whole Set"
+        };
+
+        for(int i=0; i<transformModeNames.length; i++)
+        {
+            final int mode = i;
+            final JRadioButtonMenuItem modeItem = 
+                new JRadioButtonMenuItem(transformModeNames[i], mode == transformMode);
+            transformModeGroup.add(modeItem);
+            transformsMenu.add(modeItem);
+            modeItem.addActionListener(
+                new ActionListener() 
+                {
+                @Override
+                    public void actionPerformed(ActionEvent e)
+                    {
+                        transformMode = mode;
+                    }
+                }
+            );
+        }
+
+        undoBatchMenuItem = new JMenuItem("Undo Batch Transform");
+        transformsMenu.add(undoBatchMenuItem);
+        undoBatchMenuItem.setEnabled(false);
+        undoBatchMenuItem.addActionListener(
+            new ActionListener() 
+            {
+            @Override
+                public void actionPerformed(ActionEvent e)
+                {
+                    undoBatch();
+                }
+            }
+        );
+
 
         JMenuItem tiledTiles = new JMenuItem("Rectangular Tiles");
         previewMenu.add(tiledTiles);
@@ -916,24 +1158,256 @@ public class TilesetEditor
 
     private void callTransform(final TileTransform tileTransform)
     {
-        if(currentTile != -1)
+        if(transformMode != TRANSFORM_TILE)
+        {
+            final int [] range = askTransformRange();
+
+            if(range != null && tileTransform.askUserData(this))
+            {
+                transformTiles(range[0], range[1] - range[0] + 1, tileTransform);
+            }
+        }
+        else if(currentTile != -1)
         {
             final boolean ok = tileTransform.askUserData(this);
             if(ok)
             {
-                final BufferedImage img = tileTransform.transform(canvas);
+                runOperation(new CanvasOperation("Transform")
+                {
+                    @Override
+                    public BufferedImage run(BufferedImage image, Progress progress)
+                    {
+                        return tileTransform.transform(image);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * @return First and last tile to transform, or null if the
+     * user cancelled.
+     */
+    private int [] askTransformRange()
+    {
+        final int last = tileSet.size() - 1;
+
+        if(transformMode == TRANSFORM_SET)
+        {
+            return last >= 0 ? new int [] {0, last} : null;
+        }
+
+        while(true)
+        {
+            final String input = requester.askString(this, "First, last tile", transformRange);
+
+            if(input == null)
+            {
+                return null;
+            }
+
+            final String [] parts = input.split(",");
 
-                if(img != canvas)
+            try
+            {
+                if(parts.length == 2)
+                {
+                    final int from = Math.max(0, Integer.parseInt(parts[0].trim()));
+                    final int to = Math.min(last, Integer.parseInt(parts[1].trim()));
+
+                    if(from <= to)
+                    {
+                        transformRange = input;
+                        return new int [] {from, to};
+                    }
+                }
+            }
+            catch(NumberFormatException ex)
+            {
+                // ask again
+            }
+        }
+    }
+
+    /**
+     * Applies a transform to a range of tiles, in the background.
+     * The results replace the tile images all at once when all
+     * tiles are done. "Undo Batch Transform" puts the old images back.
+     */
+    private void transformTiles(final int first, final int count, final TileTransform tileTransform)
+    {
+        // the batch must see the edits of the current tile
+        operations.cancel();
+        updateTileData(currentTile);
+
+        final long start = System.nanoTime();
+        final ExecutorService executor = WorkerPool.create("TileTransformBatch");
+        final TileTransformBatch batch = 
+            new TileTransformBatch(tileSet, first, count, Collections.singletonList(tileTransform));
+        final ProgressMonitor monitor = 
+            new ProgressMonitor(this, "Transforming " + count + " tiles", null, 0, count);
+
+        batch.start(executor);
+
+        new Timer(200, new ActionListener()
+        {
+            @Override
+            public void actionPerformed(ActionEvent e)
+            {
+                if(monitor.isCanceled())
+                {
+                    batch.cancel();
+                }
+
+                if(batch.isDone())
+                {
+                    ((Timer)e.getSource()).stop();
+                    monitor.close();
+                    executor.shutdown();
+
+                    if(!batch.isCancelled())
+                    {
+                        commitBatch(batch, start);
+                    }
+                }
+                else
                 {
-                    tileSet.get(currentTile).img = img;
-                    clearImage(canvas);
-                    updateCanvas(img);
+                    monitor.setProgress(batch.getDone());
                 }
+            }
+        }).start();
+    }
+
+    private void commitBatch(final TileTransformBatch batch, final long start)
+    {
+        // edits made meanwhile keep their tiles out of the batch
+        updateTileData(currentTile);
+        saveUndo();
+
+        final int changed = batch.commit(indexedStore);
+
+        // the steps of the changed tiles don't fit the new images
+        for(int id : batch.getChangedIds())
+        {
+            undoHistory.remove(id);
+        }
+
+        lastBatch = batch;
+        undoBatchMenuItem.setEnabled(changed > 0);
+
+        tileListModel.tilesChanged(batch.getFirst(), batch.getFirst() + batch.getCount() - 1);
+        reloadCanvas();
+        resetUndo();
+
+        System.err.println("Transformed " + changed + " of " + batch.getCount() + " tiles using " + 
+                           WorkerPool.getThreadCount() + " workers in " + 
+                           (System.nanoTime() - start) / 1000000L + " ms");
 
-                updateImageData(currentTile);
-                imageView.repaint();
+        if(batch.getFailureCount() > 0)
+        {
+            JOptionPane.showMessageDialog(this,
+                    batch.getFailureCount() + " tiles could not be transformed:\n" + 
+                    batch.getFirstFailure(),
+                    "Batch Transform", JOptionPane.WARNING_MESSAGE);
+        }
+    }
+
+    /**
+     * Puts the images back which the last batch transform replaced.
+     */
+    private void undoBatch()
+    {
+        if(lastBatch != null)
+        {
+            updateTileData(currentTile);
+            saveUndo();
+
+            final int changed = lastBatch.getChangedIds().length;
+            final int reverted = lastBatch.revert(indexedStore);
+
+            // tiles edited after the batch keep their edits and steps
+            for(int id : lastBatch.getRevertedIds())
+            {
+                undoHistory.remove(id);
             }
+
+            lastBatch = null;
+            undoBatchMenuItem.setEnabled(false);
+
+            // tiles are found by id, they might have moved
+            tileListModel.tilesChanged(0, tileSet.size() - 1);
+            reloadCanvas();
+            resetUndo();
+
+            final int kept = changed - reverted;
+            if(kept > 0)
+            {
+                JOptionPane.showMessageDialog(this,
+                        kept + " tiles were edited after the batch transform,\n" +
+                        "they keep their edits.",
+                        "Undo Batch Transform", JOptionPane.INFORMATION_MESSAGE);
+            }
+        }
+    }
+
+    /**
+     * Runs an operation on a copy of the canvas, in the background.
+     * The canvas is locked meanwhile. Once the operation is done the
+     * result replaces the canvas, unless the user cancelled the
+     * operation or switched to another tile. Starting an operation
+     * cancels the one which is still running.
+     *
+     * @param operation The operation to run.
+     */
+    public void runOperation(final CanvasOperation operation)
+    {
+        final int tileNo = currentTile;
+        final BufferedImage copy = 
+            new BufferedImage(canvas.getWidth(), canvas.getHeight(), BufferedImage.TYPE_INT_ARGB);
+
+        System.arraycopy(pixelsOf(canvas), 0, pixelsOf(copy), 0, canvas.getWidth() * canvas.getHeight());
+
+        operations.start(operation, copy, new CanvasOperationRunner.Listener()
+        {
+            @Override
+            public void operationDone(BufferedImage result)
+            {
+                commitOperation(tileNo, copy, result);
+            }
+        });
+    }
+
+    private void commitOperation(final int tileNo, final BufferedImage copy, final BufferedImage result)
+    {
+        if(tileNo != currentTile || copy.getWidth() != canvas.getWidth() || 
+           copy.getHeight() != canvas.getHeight())
+        {
+            // the result belongs to a canvas which is gone
+            return;
+        }
+
+        if(result != copy)
+        {
+            IndexedPixelStore.setImage(editTile(currentTile), result, indexedStore);
+            clearCanvas();
+            updateCanvas(result);
+            imageView.repaint();
         }
+        else
+        {
+            // the canvas was locked, it still equals the copy
+            // except where the operation changed the copy
+            final Rectangle area = UndoHistory.findChanges(copy, canvas,
+                new Rectangle(0, 0, canvas.getWidth(), canvas.getHeight()));
+
+            copyArea(copy, canvas, area);
+            markDirty(area.x, area.y, area.width, area.height);
+
+            countTouched("operation", area.width * area.height);
+            repaintChanges();
+        }
+
+        updateImageData(currentTile);
     }
     
     private void about()
@@ -1080,17 +1554,15 @@ public class TilesetEditor
         {
             setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
 
+            // all slots start empty, they get tiles when edited
+            final TileSet oldSet = tileSet;
             tileSet = new TileSet(config, size);
 
             initTileDataPanels();
-            clearImage(canvas);
-
-            for(int i=0; i<size; i++)
-            {
-                updateTileData(i);
-            }
+            clearCanvas();
 
             updateForNewImageList();
+            releaseTileSet(oldSet);
             imageList.setSelectedIndex(0);
 
             currentTileSetFile = null;
@@ -1116,36 +1588,46 @@ public class TilesetEditor
         
         final int end = Math.min(old.size(), tileSet.size());
         
-        final IdPool pool = new IdPool();
-
         for(int i=0; i<end; i++) {
             tileSet.set(i, old.get(i));
-            pool.add(tileSet.get(i).tileId);
         }
 
-        for(int i=end; i<tileSet.size(); i++) 
-        {
-            tileSet.get(i).tileId = pool.allocateNextId();
-        }
-        
-        updateForNewImageList();
+        // the copied tiles keep their ids, the pool must know them
+        addTileIds(tileSet);
+
+        // select again, the canvas still shows the empty tile
+        currentTile = -1;
+        tileListModel.tilesChanged(0, end - 1);
+        imageList.clearSelection();
+        imageList.setSelectedIndex(0);
         repaint(100);        
     }
 
     private void insertNewTileAt(int index)
     {
-        TileDescriptor tld = tileSet.createTileDescriptor();
-        tld.img = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
-        tileSet.insert(index, tld);
-        updateForNewImageList();
+        releaseCurrentTile();
+        tileSet.insertEmpty(index);
+        tileListModel.tilesInserted(index, 1);
         imageList.setSelectedIndex(index);
     }
     
     private void removeTileFrom(int index)
     {
+        releaseCurrentTile();
+        undoHistory.remove(tileSet.get(index).tileId);
         tileSet.remove(index);
-        updateForNewImageList();
-        imageList.setSelectedIndex(index);
+        tileListModel.tilesRemoved(index, 1);
+        imageList.setSelectedIndex(Math.min(index, tileSet.size() - 1));
+    }
+
+    /**
+     * Stores the edits of the current tile and unselects it, before
+     * tiles move to other places in the list.
+     */
+    private void releaseCurrentTile()
+    {
+        updateTileData(currentTile);
+        currentTile = -1;
     }
 
     private void copyFromTile()
@@ -1155,7 +1637,122 @@ public class TilesetEditor
         
         final int tileNo = tileSet.numberFromId(tileId);
         
-        importImage(tileSet.get(tileNo).img);
+        if(tileNo >= 0)
+        {
+            importImage(tileSet.get(tileNo).getImage());
+        }
+    }
+
+    /**
+     * Lists the tiles which look alike, by their perceptual hashes.
+     *
+     * @param otherSet true to ask for another tile set and list the
+     * tiles of the current set which look like tiles of the other set,
+     * false to list the look-alikes within the current set.
+     */
+    private void findDuplicates(boolean otherSet)
+    {
+        TileSet other = null;
+
+        if(otherSet)
+        {
+            other = askReadTileSet(false);
+            if(other == null)
+            {
+                return;
+            }
+        }
+
+        final int maxDistance =
+            requester.askNumber(this, "How many of 64 hash bits may differ?", DUPLICATE_DISTANCE);
+
+        if(maxDistance < 0)
+        {
+            return;
+        }
+
+        // the current tile must show the canvas contents
+        updateTileData(currentTile);
+
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        final ExecutorService executor = WorkerPool.create("TileHashIndex");
+
+        try
+        {
+            final long start = System.nanoTime();
+
+            final TileHashIndex index = new TileHashIndex();
+            index.add(tileSet, executor);
+            if(other != null)
+            {
+                index.add(other, executor);
+            }
+
+            final List <int []> clusters = index.findClusters(maxDistance);
+
+            System.err.println("Duplicates: hashed " + index.size() + " tiles and found " +
+                               clusters.size() + " clusters in " +
+                               (System.nanoTime() - start) / 1000000L + " ms");
+
+            showDuplicates(index, clusters, other != null);
+        }
+        catch(IOException ex)
+        {
+            LOGGER.log(Level.SEVERE, null, ex);
+        }
+        finally
+        {
+            executor.shutdownNow();
+            setCursor(Cursor.getDefaultCursor());
+        }
+    }
+
+    private void showDuplicates(TileHashIndex index, List <int []> clusters, boolean acrossSets)
+    {
+        final StringBuilder report = new StringBuilder();
+        int count = 0;
+
+        for(int [] cluster : clusters)
+        {
+            final StringBuilder line = new StringBuilder();
+            final boolean [] inSet = new boolean [2];
+
+            for(int entry : cluster)
+            {
+                final int set = index.getSetNumber(entry);
+                final int tileNo = index.getTileIndex(entry);
+                final TileDescriptor tld = index.getTileSet(set).get(tileNo);
+
+                inSet[set] = true;
+
+                if(line.length() > 0)
+                {
+                    line.append(", ");
+                }
+                line.append(set == 0 ? "#" : "other #").append(tileNo)
+                    .append(" (id ").append(tld.tileId).append(')');
+            }
+
+            // across sets only look-alikes from both sets matter
+            if(!acrossSets || (inSet[0] && inSet[1]))
+            {
+                count++;
+                report.append(count).append(": ").append(line).append('\n');
+            }
+        }
+
+        if(count == 0)
+        {
+            report.append("No look-alike tiles found.");
+        }
+
+        final JTextArea text = new JTextArea(report.toString(), 20, 60);
+        text.setEditable(false);
+
+        JOptionPane.showMessageDialog(this,
+                new JScrollPane(text),
+                count + " Groups Of Look-Alike Tiles",
+                JOptionPane.INFORMATION_MESSAGE);
     }
 
     private TileSet askReadTileSet(boolean setCurrentSet)
@@ -1180,6 +1777,16 @@ public class TilesetEditor
                 }
                 
                 newSet = IOPluginBroker.read(result.getAbsolutePath());
+
+                if(newSet != null && setCurrentSet && indexedStore != null)
+                {
+                    indexedStore = IndexedPixelStore.pack(newSet, colorPalette.getColors());
+                }
+                else if(newSet != null)
+                {
+                    // small tiles need less memory in a shared store
+                    TilePixelStore.pack(newSet, false);
+                }
             }
         }  
         catch (Exception ex)
@@ -1206,43 +1813,22 @@ public class TilesetEditor
             if(newSet != null)
             {
                 setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+                final TileSet oldSet = tileSet;
                 tileSet = newSet;
                 
                 // Hajo: some Tilemaster versions created sets
                 // with duplicate IDs. We try to repair such sets here.
                 
-                IdPool pool = new IdPool();
-                ArrayList <Integer> duplicates = new ArrayList<Integer> (1024);
+                final int repaired = new IdPool().repairDuplicates(tileSet, false);
                 
-                // 1) gather duplicate IDs
-                for(int i=0; i<tileSet.size(); i++) 
-                {
-                    TileDescriptor tld = tileSet.get(i);
-                    int id = tld.tileId;
-                    
-                    if(pool.contains(id))
-                    {
-                        duplicates.add(i);
-                    }
-                    else
-                    {
-                        pool.add(id);
-                    }
-                }
-
-                for(int i : duplicates)
-                {
-                    TileDescriptor tld = tileSet.get(i);
-                    tld.tileId = pool.allocateNextId();
-                }
-                
-                if(!duplicates.isEmpty())
+                if(repaired > 0)
                 {
                     requester.askChoice(this, "This tile set has duplicate IDs.", "Repair IDs");
                 }
                 
                 
                 updateForNewImageList();
+                releaseTileSet(oldSet);
                 
                 setTitle("Tilemaster - " + currentTileSetFile);
             }        
@@ -1260,24 +1846,31 @@ public class TilesetEditor
 
     private void addTileIds(TileSet tileSet)
     {
-        final IdPool pool = new IdPool();
+        // Give tiles which have no id yet
+        // an unique id. The pool remembers the
+        // used ids for tiles created later.
+        idPool = new IdPool();
+        idPool.repairDuplicates(tileSet, true);
+    }
 
-        for(int i=0; i<tileSet.size(); i++) 
-        {
-            pool.add(tileSet.get(i).tileId);
-        }
+    /**
+     * Gets a tile for changes. Empty slots get a new tile with an id.
+     *
+     * @param tileNo The index of the tile.
+     * @return The tile descriptor to change.
+     */
+    private TileDescriptor editTile(int tileNo)
+    {
+        final boolean wasEmpty = tileSet.isEmpty(tileNo);
+        final TileDescriptor tld = tileSet.edit(tileNo);
 
-        for(int i=0; i<tileSet.size(); i++) 
+        if(wasEmpty && tld != null)
         {
-            final TileDescriptor tld = tileSet.get(i);
-
-            // Give tiles which have no id yet
-            // an unique id.
-            if(tld.tileId == 0) 
-            {
-                tld.tileId = pool.allocateNextId();
-            }
+            // through the set, so the id index knows the new id
+            tileSet.setTileId(tileNo, idPool.allocateNextId());
         }
+
+        return tld;
     }
 
     public void updateImageViewOverlayOffset(int x, int y)
@@ -1305,17 +1898,26 @@ public class TilesetEditor
         addTileIds(tileSet);
         
         currentTile = -1;
+        undoHistory.clear();
+        prefetcher.clear();
+
+        lastBatch = null;
+        undoBatchMenuItem.setEnabled(false);
 
         initTileDataPanels();
-        DefaultListModel model = new DefaultListModel();
+        tileListModel.setTileSet(tileSet);
+        imageList.setSelectedIndex(0);
+    }
 
-        for(int i=0; i<tileSet.size(); i++) 
+    /**
+     * Closes the files of a tile set which is not shown anymore.
+     */
+    private void releaseTileSet(TileSet oldSet)
+    {
+        if(oldSet != null && oldSet != tileSet && oldSet != backgroundTileSet)
         {
-            model.addElement(tileSet.get(i));
+            IOPluginBroker.release(oldSet);
         }
-
-        imageList.setModel(model);
-        imageList.setSelectedIndex(0);
     }
 
     private void updateTileSetRaster()
@@ -1358,16 +1960,13 @@ public class TilesetEditor
                 // Hajo: now read the tileSet and display the selector
                 final TileSet importedtileSet = IOPluginBroker.read(result.getPath());
 
-                DefaultListModel model = new DefaultListModel();
-
-                for(int i=0; i<importedtileSet.size(); i++)
-                {
-                    model.addElement(importedtileSet.get(i));
-                }
+                final TileListModel model = new TileListModel(importedtileSet);
 
                 final JList selectorList = new JList();
                 selectorList.setLayoutOrientation(JList.HORIZONTAL_WRAP);
                 selectorList.setCellRenderer(new TileCellRenderer());
+                selectorList.setFixedCellWidth(TileCellRenderer.CELL_SIZE);
+                selectorList.setFixedCellHeight(TileCellRenderer.CELL_SIZE);
                 selectorList.setModel(model);
                 selectorList.setVisibleRowCount(-1);
                         
@@ -1425,6 +2024,7 @@ public class TilesetEditor
                 
                 final int id = tileSet.get(currentTile).tileId;
                 importedTile.tileId = id;
+                importedTile.markDirty();
 
                 tileSet.set(currentTile, importedTile);
 
@@ -1462,7 +2062,7 @@ public class TilesetEditor
 
         if(index > -1)
         {
-            final TileDescriptor tld = tileSet.get(index);
+            final TileDescriptor tld = editTile(index);
             tld.footX = x;
             tld.footY = y;
             footField.setText("" + tld.footX + ", " + tld.footY);
@@ -1501,7 +2101,7 @@ public class TilesetEditor
             public void actionPerformed(ActionEvent e)
             {
                 backgroundTile = importedTile;
-                imageView.setUnderlay(backgroundTile.img);
+                imageView.setUnderlay(backgroundTile.getImage());
                 updateUnderlayOffset();
                 setEnabled(false);
             }
@@ -1516,7 +2116,7 @@ public class TilesetEditor
         if(backgroundTileSet != null)
         {
             backgroundTile = backgroundTileSet.get(currentTile);
-            imageView.setUnderlay(backgroundTile.img);
+            imageView.setUnderlay(backgroundTile.getImage());
             updateUnderlayOffset();
         }
         else
@@ -1639,35 +2239,77 @@ public class TilesetEditor
     {
         try 
         {
-            BufferedReader reader = new BufferedReader(new FileReader(file));
+            colorPalette.setColors(ColorMapFile.read(file));
+            paletteChanged();
+        } 
+        catch(IOException ex) 
+        {
+            LOGGER.log(Level.SEVERE, null, ex);
+        }
+    }
+
+    /**
+     * Switches between indexed color mode, where tiles use one byte per
+     * pixel with the current palette, and ARGB mode. Switching to indexed
+     * mode maps all tile colors to the palette.
+     */
+    private void setIndexedMode(boolean indexed)
+    {
+        if(indexed == (indexedStore != null) || tileSet == null)
+        {
+            return;
+        }
 
-            // Hajo: First line should be "256". Error check?
-            String line = reader.readLine();
+        final Cursor cursor = getCursor();
 
-            int count = Integer.parseInt(line);
-            Color [] colormap = new Color [count];
+        try
+        {
+            setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+            updateImageData(currentTile);
 
-            for(int i=0; i<count; i++) 
+            if(indexed)
             {
-                line = reader.readLine();
-                final String [] rgb = line.split(" ");
+                indexedStore = IndexedPixelStore.pack(tileSet, colorPalette.getColors());
+            }
+            else
+            {
+                indexedStore.unpack(tileSet);
+                indexedStore = null;
+            }
 
-                int R = Integer.parseInt(rgb[0]);
-                int G = Integer.parseInt(rgb[1]);
-                int B = Integer.parseInt(rgb[2]);
+            reloadCanvas();
+        }
+        finally
+        {
+            setCursor(cursor);
+        }
+    }
 
-                colormap[i] = new Color(R, G, B);
-            }
+    /**
+     * In indexed color mode, palette changes recolor all tiles.
+     */
+    private void paletteChanged()
+    {
+        if(indexedStore != null)
+        {
+            // keep edits, the canvas still has the old colors
+            updateImageData(currentTile);
+            indexedStore.setPalette(colorPalette.getColors());
+            reloadCanvas();
+        }
+    }
 
-            reader.close();
-            colorPalette.setColors(colormap);
-        } 
-        catch(IOException ex) 
+    private void reloadCanvas()
+    {
+        if(currentTile >= 0)
         {
-            LOGGER.log(Level.SEVERE, null, ex);
-        } catch (NumberFormatException ex) {
-            LOGGER.log(Level.SEVERE, null, ex);
+            clearCanvas();
+            updateCanvas(tileSet.get(currentTile).getImage());
+            tileChanges.clear();
+            imageView.repaint();
         }
+
+        imageList.repaint();
     }
 
     private void saveColorMap(File file)
@@ -1700,16 +2342,11 @@ public class TilesetEditor
     {
         try
         {
-            final String filterList = ".gif|.png|.jpg|.jpeg";
-            File result;
-            result = fs.selectFile(tilesetSplitter, "Select an image to import:", filterList, "Image files",
-                                   currentSingleImportFile, FileSelector.Mode.OPEN);
+            File result = selectImportFile();
 
             if(result != null)
             {
-                currentSingleImportFile = result;
-                
-                BufferedImage img = ImageIO.read(currentSingleImportFile);
+                BufferedImage img = ImageIO.read(result);
                 return img;
             }
         
@@ -1721,6 +2358,21 @@ public class TilesetEditor
         
         return null;
     }
+
+    private File selectImportFile()
+    {
+        final String filterList = ".gif|.png|.jpg|.jpeg";
+        File result;
+        result = fs.selectFile(tilesetSplitter, "Select an image to import:", filterList, "Image files",
+                               currentSingleImportFile, FileSelector.Mode.OPEN);
+
+        if(result != null)
+        {
+            currentSingleImportFile = result;
+        }
+
+        return result;
+    }
     
     
     /**
@@ -1823,15 +2475,15 @@ public class TilesetEditor
 
     private void importTilesFromImage()
     {
-        Image img = selectImageFile();
+        File file = selectImportFile();
 
-        if(img != null) 
+        if(file != null) 
         {
-            importTilesFromImage(img);
+            importTilesFromImage(file);
         }
     }
 
-    private void importTilesFromImage(Image img)
+    private void importTilesFromImage(File file)
     {
         SimpleMessageBox box = new SimpleMessageBox(this,
                                                     "Tile Raster",
@@ -1846,79 +2498,156 @@ public class TilesetEditor
             int rasterW = Integer.parseInt(parts[0]);
             int rasterH = Integer.parseInt(parts[1]);
 
-            int w = img.getWidth(null);
-            int h = img.getHeight(null);
+            try
+            {
+                // cut the cells without decoding the whole image at once
+                SheetSlicer slicer = new SheetSlicer(file);
+                BufferedImage [] cells;
+
+                try
+                {
+                    int w = slicer.getWidth();
+                    int h = slicer.getHeight();
+
+                    System.err.println("Importing " + rasterW + "x" + rasterH +
+                                       " tiles from a " + w + "x" + h + " image");
+
+                    int columns = w / rasterW;
+                    int count = Math.min(columns * (h / rasterH), tileSet.size() - currentTile);
+
+                    // imported tiles have always been opaque
+                    slicer.setOpaque(true);
+                    cells = slicer.sliceGrid(rasterW, rasterH, Math.max(columns, 1), Math.max(count, 0));
+                }
+                finally
+                {
+                    slicer.close();
+                }
+
+                for(int i=0; i<cells.length; i++)
+                {
+                    importImage(cells[i]);
+                    currentTile ++;
+                }
+            }
+            catch(IOException ex)
+            {
+                LOGGER.log(Level.SEVERE, null, ex);
+            }
+
+            currentTile --;
+            imageList.setSelectedIndex(currentTile);
+        }
+    }
+
+    private void importSpritesFromImage()
+    {
+        File file = selectImportFile();
+
+        if(file == null)
+        {
+            return;
+        }
+
+        final int gap =
+            requester.askNumber(this, "How many background pixels may be between parts of a sprite?", spriteGap);
+
+        if(gap < 0)
+        {
+            return;
+        }
+
+        spriteGap = gap;
+
+        final List <SpriteFinder.Sprite> sprites;
+
+        try
+        {
+            final BufferedImage sheet = ImageIO.read(file);
+
+            if(sheet == null)
+            {
+                requester.askChoice(this, "Can't read this image format.", "Bummer");
+                return;
+            }
+
+            // the top left pixel has always been taken as background
+            sprites = new SpriteFinder(sheet.getRGB(0, 0), gap).find(sheet);
+        }
+        catch(IOException ex)
+        {
+            LOGGER.log(Level.SEVERE, null, ex);
+            return;
+        }
+
+        if(sprites.isEmpty())
+        {
+            requester.askChoice(this, "There are no sprites in this image.", "Bummer");
+            return;
+        }
+
+        final int first = Math.max(currentTile, 0);
+        final int end = Math.min(first + sprites.size(), tileSet.size());
+
+        // count the painted tiles, too
+        updateTileData(currentTile);
+
+        int used = 0;
+        for(int i=first; i<end; i++)
+        {
+            if(!tileSet.isEmpty(i))
+            {
+                used++;
+            }
+        }
+
+        if(used > 0)
+        {
+            final String choice = requester.askChoice(this,
+                    "<html>The " + sprites.size() + " sprites will replace " + used + " tiles,<br>"
+                    + "starting at tile " + first + ". Continue?</html>",
+                    "(y)es|(n)o");
+
+            if(!"y".equals(choice))
+            {
+                return;
+            }
+        }
 
-            System.err.println("Importing " + rasterW + "x" + rasterH +
-                               " tiles from a " + w + "x" + h + " image");
+        releaseCurrentTile();
 
-            BufferedImage bim = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
-            Graphics bgr = bim.getGraphics();
-            bgr.drawImage(img, 0, 0, null);
+        final int missing = first + sprites.size() - tileSet.size();
 
-            for(int y=0; y<=h-rasterH; y+=rasterH) 
+        if(missing > 0)
+        {
+            final int size = tileSet.size();
+            for(int i=0; i<missing; i++)
             {
-                for(int x=0; x<=w-rasterW; x+=rasterW) 
-                {
-                    if(currentTile < tileSet.size()) 
-                    {
-                        importImage(bim.getSubimage(x, y, rasterW, rasterH));
-                        currentTile ++;
-                    }
-                }
+                tileSet.addEmpty();
             }
-            currentTile --;
-            imageList.setSelectedIndex(currentTile);
+            tileListModel.tilesInserted(size, missing);
         }
-    }
-
-    private void multiImport(Image img)
-    {
-        int w = img.getWidth(null);
-        int h = img.getHeight(null);
 
-        BufferedImage bim = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
-        Graphics bgr = bim.getGraphics();
-        bgr.drawImage(img, 0, 0, null);
+        // the offset keeps the place of the sprite on the sheet.
+        // editTile() gives the new and empty slots ids from the pool.
+        for(int i=0; i<sprites.size(); i++)
+        {
+            final SpriteFinder.Sprite sprite = sprites.get(i);
+            final TileDescriptor tld = editTile(first + i);
 
-        int back = bim.getRGB(0, 0);
-        
-        int xstart, xend;
-        
-        currentTile --;
-        
-        int x = 0;
-        while(x < w) {
-            boolean columnClean = true;
-
-            while(columnClean && x < w) {
-                for(int y=0; y<h; y++) {
-                    if(bim.getRGB(x,y) != back) {
-                        columnClean = false;
-                    }
-                }
-                x++;
-            }
-            xstart = x-1;
+            // the steps of replaced tiles don't fit the sprites
+            undoHistory.remove(tld.tileId);
 
-            while(!columnClean && x < w) {
-                columnClean = true;
-                for(int y=0; y<h; y++) {
-                    if(bim.getRGB(x,y) != back) {
-                        columnClean = false;
-                    }
-                }
-                x++;
-            }
-            
-            xend = x;
-            
-            currentTile ++;
-            askImportImage(bim.getSubimage(xstart, 0, (xend-xstart), h));
+            IndexedPixelStore.setImage(tld, sprite.image, indexedStore);
+            tld.offX = sprite.x;
+            tld.offY = sprite.y;
         }
-        
+
+        tileListModel.tilesChanged(first, first + sprites.size() - 1);
+        imageList.clearSelection();
+        imageList.setSelectedIndex(first);
     }
-    
+
     public void askImportImage(final Image img)
     {
         final int width = img.getWidth(this);
@@ -1950,10 +2679,11 @@ public class TilesetEditor
 
     private void importImage(final Image img)
     {
-        clearImage(canvas);
+        clearCanvas();
         
         Graphics gr = canvas.getGraphics();
         gr.drawImage(img, 0, 0, this);
+        markDirty(0, 0, img.getWidth(this), img.getHeight(this));
 
         imageClicked(currentTile);
     }
@@ -1997,7 +2727,7 @@ public class TilesetEditor
                 if(argb)
                 {
                     System.err.println("Writing PNG with alpha channel.");
-                    ImageIO.write(tileSet.get(currentTile).img, format, currentSingleImportFile);
+                    ImageIO.write(tileSet.get(currentTile).getImage(), format, currentSingleImportFile);
                 }
                 else
                 {
@@ -2005,16 +2735,16 @@ public class TilesetEditor
 
                     TileDescriptor tld = tileSet.get(currentTile);
 
-                    final BufferedImage img = new BufferedImage(tld.img.getWidth(),
-                                                                tld.img.getHeight(),
+                    final BufferedImage img = new BufferedImage(tld.getWidth(),
+                                                                tld.getHeight(),
                                                                 BufferedImage.TYPE_INT_RGB);
                     final Graphics gr = img.getGraphics();
                     
                     gr.setColor(new Color(255, 0, 255));
                     gr.fillRect(0, 0, 
-                                tld.img.getWidth(),
-                                tld.img.getHeight());
-                    gr.drawImage(tld.img, 0, 0, null);
+                                tld.getWidth(),
+                                tld.getHeight());
+                    gr.drawImage(tld.getImage(), 0, 0, null);
                     ImageIO.write(img, format, currentSingleImportFile);
                 }
             }
@@ -2064,16 +2794,16 @@ public class TilesetEditor
 
                 TileDescriptor tld = tileSet.get(currentTile);
 
-                final BufferedImage img = new BufferedImage(tld.img.getWidth(),
-                                                            tld.img.getHeight(),
+                final BufferedImage img = new BufferedImage(tld.getWidth(),
+                                                            tld.getHeight(),
                                                             BufferedImage.TYPE_INT_RGB);
                 final Graphics gr = img.getGraphics();
 
                 gr.setColor(new Color(255, 0, 255));
                 gr.fillRect(0, 0, 
-                            tld.img.getWidth(),
-                            tld.img.getHeight());
-                gr.drawImage(tld.img, 0, 0, null);
+                            tld.getWidth(),
+                            tld.getHeight());
+                gr.drawImage(tld.getImage(), 0, 0, null);
                 ImageIO.write(img, format, currentSingleImportFile);
             }
         } 
@@ -2090,14 +2820,28 @@ public class TilesetEditor
      */
     public void imageClicked(final int tileNo)
     {
+        final long start = System.nanoTime();
+        boolean prefetched = false;
+
         if(paintingTool != null && tileNo != currentTile)
         {
             paintingTool.onTileWillChange(tileNo);
+            paintingToolCalled();
         }
         
         // Hajo: convert formerly edited image
         updateTileData(currentTile);
-        clearImage(canvas);
+
+        if(tileNo != currentTile)
+        {
+            // a result for the former tile is of no use anymore
+            operations.cancel();
+
+            // the last edits belong to the history of the former tile
+            saveUndo();
+        }
+
+        clearCanvas();
 
         if(tileNo >= 0) 
         {
@@ -2106,7 +2850,14 @@ public class TilesetEditor
             final TileDescriptor tld = tileSet.get(tileNo);
             idField.setText("" + tld.tileId);
 
-            updateCanvas(tld.img);
+            TilePrefetcher.CanvasPixels pixels = prefetcher.take(tld);
+            prefetched = pixels != null;
+            if(pixels == null)
+            {
+                pixels = TilePrefetcher.convert(tld.getImage());
+            }
+
+            updateCanvas(pixels);
             showTileAttributes(tileNo);
             updateUnderlayOffset();
             footField.setText("" + tld.footX + ", " + tld.footY);
@@ -2118,46 +2869,115 @@ public class TilesetEditor
             idField.setText("0");
         }
 
+        // the canvas shows the tile now
+        tileChanges.clear();
+
         if(tileNo != currentTile)
         {
-            saveUndo();
             currentTile = tileNo;
+            resetUndo();
             
             if(backgroundTileSet != null)
             {
                 backgroundTile = backgroundTileSet.get(currentTile);
-                imageView.setUnderlay(backgroundTile.img);
+                imageView.setUnderlay(backgroundTile.getImage());
                 updateUnderlayOffset();
             }
         }
         
+        viewChanges.clear();
         imageView.repaint(50);
+
+        if(tileNo >= 0)
+        {
+            prefetchNeighbours(tileNo);
+        }
+
+        if(SWITCH_STATS)
+        {
+            final long time = System.nanoTime() - start;
+            System.err.println("Switch to tile " + tileNo + ": " + time / 1000 + " us" +
+                               (prefetched ? ", prefetched" : "") +
+                               (time > FRAME_NANOS ? ", SLOWER THAN ONE FRAME" : ""));
+        }
+    }
+
+    /**
+     * Prepares the tiles around a tile in the list, the likely
+     * next ones to be shown.
+     */
+    private void prefetchNeighbours(final int tileNo)
+    {
+        final int size = tileSet.size();
+        final Rectangle cell = imageList.getCellBounds(tileNo, tileNo);
+
+        prefetchTile(tileNo + 1, size);
+        prefetchTile(tileNo - 1, size);
+
+        if(cell != null)
+        {
+            // the list wraps, above and below are a row apart
+            prefetchTile(imageList.locationToIndex(new Point(cell.x, cell.y + cell.height)), size);
+            prefetchTile(imageList.locationToIndex(new Point(cell.x, cell.y - 1)), size);
+        }
+    }
+
+    private void prefetchTile(final int tileNo, final int size)
+    {
+        if(tileNo >= 0 && tileNo < size && tileNo != currentTile)
+        {
+            prefetcher.prefetch(tileSet.get(tileNo));
+        }
     }
 
     private void updateCanvas(BufferedImage image)
     {
-        if(image.getHeight() > canvas.getHeight() || image.getWidth() > canvas.getWidth())
+        updateCanvas(TilePrefetcher.convert(image));
+    }
+
+    /**
+     * Draws tile pixels onto the canvas. Transparent pixels
+     * keep the canvas pixels.
+     */
+    private void updateCanvas(TilePrefetcher.CanvasPixels image)
+    {
+        if(image.height > canvas.getHeight() || image.width > canvas.getWidth())
         {
             // Hajo: this tile needs a bigger canvas
-            setCanvasSize(image.getWidth(), image.getHeight());
-            clearImage(canvas);
+            setCanvasSize(image.width, image.height);
+            clearCanvas();
         }
         
-        for(int j=0; j<image.getHeight(); j++) {
-            for(int i=0; i<image.getWidth(); i++) {
-                final int argb = image.getRGB(i, j);
+        final int width = image.width;
+        final int height = image.height;
+        final int [] source = image.pixels;
+        final int [] target = pixelsOf(canvas);
+        final int stride = canvas.getWidth();
 
-                // Better to preserve alpha?
-                /*
-                if((argb & 0xFF000000) != 0) {
-                    canvas.setRGB(i, j, argb | 0xFF000000);
-                }
-                */
-                if((argb & 0xFF000000) != 0) {
-                    canvas.setRGB(i, j, argb);
+        if(canvasUsed.isEmpty())
+        {
+            // the canvas is clear, nothing to keep
+            for(int j=0; j<height; j++) {
+                System.arraycopy(source, j * width, target, j * stride, width);
+            }
+        }
+        else
+        {
+            for(int j=0; j<height; j++) {
+                final int s0 = j * width;
+                final int t0 = j * stride;
+
+                for(int i=0; i<width; i++) {
+                    final int argb = source[s0 + i];
+                    if(argb != 0) {
+                        target[t0 + i] = argb;
+                    }
                 }
             }
         }
+
+        markDirty(0, 0, width, height);
+        countTouched("load", width * height);
     }
 
     private void showTileAttributes(final int tileNo)
@@ -2183,6 +3003,7 @@ public class TilesetEditor
     {
         paintColor = colorPalette.getColor(colorIndex);
         paintingTool.onColorSelected(colorIndex);
+        paintingToolCalled();
         
         // System.err.println("colorIndex = " + colorIndex);
     }
@@ -2204,17 +3025,21 @@ public class TilesetEditor
             final String [] strings = stringPanel.getStringValues();
             final int [] ints = intPanel.getIntValues();
 
-            TileDescriptor tld = new TileDescriptor(config, strings, ints);
-            TileDescriptor old = tileSet.get(tileNo);
-            if(old != null) 
+            TileDescriptor tld = tileSet.get(tileNo);
+            if(tld != null) 
+            {
+                // keep the descriptor, it remembers the saved state.
+                // Switching tiles mostly changes nothing, then don't copy.
+                if(!tld.hasData(strings, ints))
+                {
+                    editTile(tileNo).setData(config, strings, ints);
+                }
+            }
+            else
             {
-                tld.offX = old.offX;
-                tld.offY = old.offY;
-                tld.footX = old.footX;
-                tld.footY = old.footY;
-                tld.tileId = old.tileId;
+                tld = new TileDescriptor(config, strings, ints);
+                tileSet.set(tileNo, tld);
             }
-            tileSet.set(tileNo, tld);
             updateImageData(tileNo);
         }
     }
@@ -2227,63 +3052,136 @@ public class TilesetEditor
     private void updateImageData(int tileNo)
     {
         if(tileNo >= 0) {
-            int maxX = 0;
-            int maxY = 0;
+            // an unchanged canvas still shows the tile image
+            if(!tileChanges.isEmpty()) {
+                copyCanvasTo(tileNo);
+            }
+
+            refreshListEntry(tileNo);
+
+            // images from a pixel store are decoded on each call
+            if(previewFrame.isVisible())
+            {
+                previewFrame.setImage(tileSet.get(tileNo).getImage());
+            }
+        }
+    }
+
+    /**
+     * Copies the canvas pixels into a tile image, cropped to the
+     * pixels which are not transparent.
+     */
+    private void copyCanvasTo(int tileNo)
+    {
+        int maxX = 0;
+        int maxY = 0;
+
+        int colorZero = colorPalette.getColor(0).getRGB();
 
-            int colorZero = colorPalette.getColor(0).getRGB();
+        // Hajo: Scan for bounds
+        // the canvas is clear outside of the used area
+        final Rectangle used = canvasUsed.getBounds(canvas.getWidth(), canvas.getHeight());
+        final int [] pixels = pixelsOf(canvas);
+        final int stride = canvas.getWidth();
 
-            // Hajo: Scan for bounds
-            for(int y=0; y<canvas.getHeight(); y++) {
-                for(int x=0; x<canvas.getWidth(); x++) {
-                    final int argb = canvas.getRGB(x, y);
-                    final int a = (argb >>> 24) & 255;
+        for(int y=used.y; y<used.y+used.height; y++) {
+            final int row = y * stride;
 
-                    if(a > 0 && argb != colorZero) 
+            for(int i=0; i<used.width; i++) {
+                final int argb = pixels[row + used.x + i];
+                final int a = (argb >>> 24) & 255;
+
+                if(a > 0 && argb != colorZero) 
+                {
+                    final int x = used.x + i;
+
+                    if(x > maxX) 
                     {
-                        if(x > maxX) 
-                        {
-                            maxX = x;
-                        }
-                        if(y > maxY) 
-                        {
-                            maxY = y;
-                        }
+                        maxX = x;
+                    }
+                    if(y > maxY) 
+                    {
+                        maxY = y;
                     }
                 }
             }
+        }
 
-            // System.err.println("Image dimensions are: " + maxX + "x" + maxY);
-            final int width = maxX + 1;
-            final int height = maxY + 1;
+        // System.err.println("Image dimensions are: " + maxX + "x" + maxY);
+        final int width = maxX + 1;
+        final int height = maxY + 1;
 
-            BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-            
-            for(int y=0; y<height; y++) {
-                for(int x=0; x<width; x++) {
-                    final int argb = canvas.getRGB(x, y);
-                    final int a = (argb >>> 24) & 255;
-
-                    if(a > 0 && argb != colorZero) {
-                        img.setRGB(x, y, argb);
-                    } else {
-                        img.setRGB(x, y, 0);
-                    }
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+
+        // not pixelsOf(img), tile images should stay managed for fast drawing
+        final int [] line = new int [width * height];
+
+        for(int y=0; y<height; y++) {
+            final int row = y * width;
+            System.arraycopy(pixels, y * stride, line, row, width);
+
+            for(int x=row; x<row+width; x++) {
+                final int argb = line[x];
+                final int a = (argb >>> 24) & 255;
+
+                if(a == 0 || argb == colorZero) {
+                    line[x] = 0;
                 }
             }
-            
-            tileSet.get(tileNo).img = img;
+        }
 
-            refreshListEntry(tileNo);
+        img.getRaster().setDataElements(0, 0, width, height, line);
+
+        countTouched("copy back", used.width * used.height + width * height);
+        tileChanges.clear();
 
-            previewFrame.setImage(img);
+        // keep the old image if nothing changed, so the
+        // tile is not considered modified
+        if(!sameImage(tileSet.get(tileNo).getImage(), img))
+        {
+            IndexedPixelStore.setImage(editTile(tileNo), img, indexedStore);
+        }
+    }
+
+    /**
+     * Checks if two images have the same size and pixels.
+     */
+    private static boolean sameImage(final BufferedImage a, final BufferedImage b)
+    {
+        if(a == null || b == null)
+        {
+            return a == b;
+        }
+        
+        final int width = a.getWidth();
+        final int height = a.getHeight();
+        
+        if(width != b.getWidth() || height != b.getHeight())
+        {
+            return false;
+        }
+
+        final int [] lineA = new int [width];
+        final int [] lineB = new int [width];
+        
+        for(int y=0; y<height; y++)
+        {
+            a.getRGB(0, y, width, 1, lineA, 0, width);
+            b.getRGB(0, y, width, 1, lineB, 0, width);
+            
+            if(!Arrays.equals(lineA, lineB))
+            {
+                return false;
+            }
         }
+        
+        return true;
     }
 
     private void refreshListEntry(final int tileNo)
     {
-        DefaultListModel model = (DefaultListModel)imageList.getModel();
-        if(tileNo < model.getSize()) {
-            model.set(tileNo, tileSet.get(tileNo));
+        if(tileNo < tileListModel.getSize()) {
+            tileListModel.tileChanged(tileNo);
         }
     }
 
@@ -2292,16 +3190,17 @@ public class TilesetEditor
         if(index1 >= 0 && index1 < tileSet.size() &&
            index2 >= 0 && index2 < tileSet.size())
         {
+            releaseCurrentTile();
+
             TileDescriptor one = tileSet.get(index1);
             TileDescriptor two = tileSet.get(index2);
 
             tileSet.set(index1, two);
             tileSet.set(index2, one);
             
-            // refreshListEntry(index1);
-            // refreshListEntry(index2);
+            refreshListEntry(index1);
+            refreshListEntry(index2);
 
-            updateForNewImageList();
             imageList.setSelectedIndex(index2);
         }
     }
@@ -2312,24 +3211,137 @@ public class TilesetEditor
      */
     private void clearImage(final BufferedImage img)
     {
-        final int width = img.getWidth();
-        final int height = img.getHeight();
-        
-        if(clearPixels.length != width * height)
+        clearArea(img, new Rectangle(0, 0, img.getWidth(), img.getHeight()));
+    }
+
+    private void clearArea(final BufferedImage img, final Rectangle area)
+    {
+        final int [] pixels = pixelsOf(img);
+        final int stride = img.getWidth();
+
+        for(int y=area.y; y<area.y+area.height; y++)
         {
-            clearPixels = new int[width*height];    
+            final int start = y * stride + area.x;
+            Arrays.fill(pixels, start, start + area.width, 0);
+        }
+    }
+
+    /**
+     * @return The pixel array of a TYPE_INT_ARGB image created by
+     * this editor, row after row without gaps.
+     */
+    private static int [] pixelsOf(final BufferedImage img)
+    {
+        return ((DataBufferInt)img.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * Clear the used area of the canvas.
+     */
+    private void clearCanvas()
+    {
+        final Rectangle used = canvasUsed.getBounds(canvas.getWidth(), canvas.getHeight());
+
+        clearArea(canvas, used);
+        markDirty(used.x, used.y, used.width, used.height);
+        canvasUsed.clear();
+
+        countTouched("clear", used.width * used.height);
+    }
+
+    /**
+     * Copies an area of the pixels of an image into another
+     * image. Both must be TYPE_INT_ARGB images created by this editor.
+     */
+    private static void copyArea(final BufferedImage from, final BufferedImage to,
+                                 final Rectangle area)
+    {
+        final int [] source = pixelsOf(from);
+        final int [] target = pixelsOf(to);
+        final int fromStride = from.getWidth();
+        final int toStride = to.getWidth();
+
+        for(int y=area.y; y<area.y+area.height; y++)
+        {
+            System.arraycopy(source, y * fromStride + area.x,
+                             target, y * toStride + area.x, area.width);
+        }
+    }
+
+    /**
+     * Tells the editor about a changed area of the canvas. Painting
+     * tools which call this should implement DirtyRegionReporter.
+     *
+     * @param x Left edge of the area.
+     * @param y Top edge of the area.
+     * @param width Width of the area.
+     * @param height Height of the area.
+     */
+    public void markDirty(int x, int y, int width, int height)
+    {
+        tileChanges.add(x, y, width, height);
+        undoChanges.add(x, y, width, height);
+        viewChanges.add(x, y, width, height);
+        canvasUsed.add(x, y, width, height);
+    }
+
+    private void markAllDirty()
+    {
+        markDirty(0, 0, canvas.getWidth(), canvas.getHeight());
+    }
+
+    /**
+     * Call after each call of the painting tool.
+     */
+    private void paintingToolCalled()
+    {
+        if(!(paintingTool instanceof DirtyRegionReporter))
+        {
+            markAllDirty();
+        }
+    }
+
+    /**
+     * Repaints the changed areas of the image view.
+     */
+    private void repaintChanges()
+    {
+        final Rectangle area = viewChanges.getBounds(canvas.getWidth(), canvas.getHeight());
+        viewChanges.clear();
+
+        if(area.width > 0)
+        {
+            imageView.repaintImage(20, area);
+        }
+    }
+
+    private void countTouched(final String operation, final int pixels)
+    {
+        if(DIRTY_STATS)
+        {
+            System.err.println(operation + ": touched " + pixels + " of " +
+                               canvas.getWidth() * canvas.getHeight() + " canvas pixels");
         }
-        
-        img.setRGB(0, 0, width, height, clearPixels, 0, width);
     }
 
     private void setCanvasSize(final int width, final int height)
     {
+        final BufferedImage oldCanvas = canvas;
+        final BufferedImage oldUndoCanvas = undoCanvas;
+
+        final Rectangle kept = new Rectangle(0, 0,
+                                             Math.min(width, oldCanvas.getWidth()),
+                                             Math.min(height, oldCanvas.getHeight()));
+
+        // keep edits which are not saved as undo step yet
         canvas = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-        clearImage(canvas);
-        canvas.getGraphics().drawImage(undoCanvas, 0, 0, null);
+        copyArea(oldCanvas, canvas, kept);
 
         undoCanvas = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        copyArea(oldUndoCanvas, undoCanvas, kept);
+
+        // nothing is known about the new canvases
+        markAllDirty();
 
         imageView.setImage(canvas);
     }
@@ -2399,7 +3411,7 @@ public class TilesetEditor
         }
         else 
         {
-            previewFrame.setImage(tileSet.get(currentTile).img);
+            previewFrame.setImage(tileSet.get(currentTile).getImage());
             previewFrame.setBackground(imageView.getBackground());
 
             previewFrame.setVisible(true);
@@ -2413,16 +3425,114 @@ public class TilesetEditor
     {
         // System.err.println("Saving undo data");
         
-        clearImage(undoCanvas);
-        final Graphics ugr = undoCanvas.getGraphics();
-        ugr.drawImage(canvas, 0, 0, null);
+        // elsewhere the undo canvas is still up to date
+        final Rectangle changed = undoChanges.getBounds(canvas.getWidth(), canvas.getHeight());
+        final Rectangle area = UndoHistory.findChanges(canvas, undoCanvas, changed);
+
+        if(area.width > 0)
+        {
+            // painting on an empty slot makes it a tile with an id
+            if(tileSet != null && currentTile >= 0 && tileSet.isEmpty(currentTile))
+            {
+                editTile(currentTile);
+            }
+
+            final int key = undoKey();
+            if(key != 0)
+            {
+                undoHistory.record(key, undoCanvas, area);
+            }
+        }
+
+        copyArea(canvas, undoCanvas, area);
+        undoChanges.clear();
+
+        countTouched("save undo", changed.width * changed.height);
+    }
+
+    /**
+     * Makes the canvas the base of the next undo step, without
+     * saving the changes as a step. Used after loading a tile.
+     */
+    private void resetUndo()
+    {
+        final Rectangle changed = undoChanges.getBounds(canvas.getWidth(), canvas.getHeight());
+        copyArea(canvas, undoCanvas, changed);
+        undoChanges.clear();
+    }
+
+    /**
+     * @return The key of the undo history of the current tile,
+     * 0 if there is none.
+     */
+    private int undoKey()
+    {
+        if(tileSet != null && currentTile >= 0 && currentTile < tileSet.size())
+        {
+            return tileSet.get(currentTile).tileId;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Reverts the last edit of the current tile, from the history.
+     */
+    private void undoStep()
+    {
+        operations.cancel();
+        saveUndo();
+        restoreStep(undoHistory.undo(undoKey(), canvas));
+    }
+
+    /**
+     * Repeats the last reverted edit of the current tile.
+     */
+    private void redoStep()
+    {
+        operations.cancel();
+
+        // if there were new edits, saving them drops the redo steps
+        saveUndo();
+        restoreStep(undoHistory.redo(undoKey(), canvas));
+    }
+
+    private void restoreStep(Rectangle area)
+    {
+        if(area != null)
+        {
+            // the history changed the canvas, it is the undo base now
+            copyArea(canvas, undoCanvas, area);
+            markDirty(area.x, area.y, area.width, area.height);
+            undoChanges.clear();
+
+            countTouched("undo step", area.width * area.height);
+        }
+    }
+
+    private void updateUndoMenu()
+    {
+        final int key = undoKey();
+        final Rectangle changed = undoChanges.getBounds(canvas.getWidth(), canvas.getHeight());
+        final boolean pending = UndoHistory.findChanges(canvas, undoCanvas, changed).width > 0;
+
+        final int undoDepth = undoHistory.getUndoDepth(key) + (pending ? 1 : 0);
+        final int redoDepth = pending ? 0 : undoHistory.getRedoDepth(key);
+
+        undoMenuItem.setText("Undo (" + undoDepth + ")");
+        redoMenuItem.setText("Redo (" + redoDepth + ")");
     }
 
     public void undo()
     {
-        clearImage(canvas);
-        final Graphics gr = canvas.getGraphics();
-        gr.drawImage(undoCanvas, 0, 0, null);
+        final Rectangle changed = undoChanges.getBounds(canvas.getWidth(), canvas.getHeight());
+        copyArea(undoCanvas, canvas, changed);
+
+        // the canvas equals the undo canvas again, but not the tile
+        markDirty(changed.x, changed.y, changed.width, changed.height);
+        undoChanges.clear();
+
+        countTouched("undo", changed.width * changed.height);
     }
 
     public void setUndo(BufferedImage img)
@@ -2430,6 +3540,8 @@ public class TilesetEditor
         clearImage(undoCanvas);
         final Graphics ugr = undoCanvas.getGraphics();
         ugr.drawImage(img, 0, 0, null);
+
+        undoChanges.add(0, 0, undoCanvas.getWidth(), undoCanvas.getHeight());
     }
 
     private void restoreWindowState()
@@ -3348,6 +4460,7 @@ public class TilesetEditor
             public void onColorSelected(int colorIndex) 
             {
                 colorPalette.setColors(pef.getColors());
+                paletteChanged();
             }
         });
 
@@ -3664,8 +4777,8 @@ public class TilesetEditor
                                 50);
 
         TileDescriptor tld = tileSet.get(currentTile);
-        Dimension d = new Dimension(tld.img.getWidth() * percent / 100,
-                                    tld.img.getHeight() * percent / 100);
+        Dimension d = new Dimension(tld.getWidth() * percent / 100,
+                                    tld.getHeight() * percent / 100);
         
         reshape(d, smooth);
     }
@@ -3673,7 +4786,7 @@ public class TilesetEditor
     private void askReshape(boolean smooth)
     {
         TileDescriptor tld = tileSet.get(currentTile);
-        String preset = "" + tld.img.getWidth() + "x" + tld.img.getHeight();
+        String preset = "" + tld.getWidth() + "x" + tld.getHeight();
 
         final Dimension d = requester.askDimension(this, "<html>Please enter the new tile size,<br>" +
                                          "in format WxH:</html>",
@@ -3688,10 +4801,10 @@ public class TilesetEditor
         updateImageData(currentTile);
         saveUndo();
 
-        clearImage(canvas);
+        clearCanvas();
         Graphics2D gr2 = canvas.createGraphics();
 
-        Image source = tileSet.get(currentTile).img;
+        Image source = tileSet.get(currentTile).getImage();
 
         RenderingHints hints = gr2.getRenderingHints();
 
@@ -3713,6 +4826,7 @@ public class TilesetEditor
                       null);
 
         gr2.setRenderingHints(hints);
+        markDirty(0, 0, size.width, size.height);
 
         imageClicked(currentTile);
     }
@@ -3724,8 +4838,9 @@ public class TilesetEditor
         Integer tolerance = (Integer)toleranceSpinner.getValue();
         int selectedBackground = colorPalette.getSelectedBackground();
         Color backColor = colorPalette.getColor(selectedBackground);
-        Fillmachine fillmachine = new Fillmachine(this, canvas, tolerance*500, backColor);
+        Fillmachine fillmachine = new Fillmachine(tolerance*500, backColor);
         fillmachine.setFiller(filler);
+        fillmachine.setEditor(this);
         paintingTool = fillmachine;        
     }
 
@@ -3734,7 +4849,7 @@ public class TilesetEditor
         if(currentTile >= 0)
         {
             TileDescriptor tld = tileSet.get(currentTile);
-            SystemClipboard.copy(tld.img);
+            SystemClipboard.copy(tld.getImage());
         }        
     }
 
@@ -3761,6 +4876,13 @@ public class TilesetEditor
         {
             // System.err.println("Mouse clicked: " + e);
 
+            if(operations.isBusy())
+            {
+                // the canvas is locked until the operation is done
+                Toolkit.getDefaultToolkit().beep();
+                return;
+            }
+
             firstClick.x = e.getX()/zoomLevel;
             firstClick.y = e.getY()/zoomLevel;
             
@@ -3806,17 +4928,25 @@ public class TilesetEditor
             
             gr.setColor(paintColor);
             paintingTool.firstClick(gr, firstClick.x, firstClick.y);
-            imageView.repaint(20);
+            paintingToolCalled();
+            repaintChanges();
         }
 
         @Override
         public void mouseReleased(MouseEvent e)
         {
+            if(operations.isBusy())
+            {
+                // the press was rejected, or started the operation
+                return;
+            }
+
             imageClicked(currentTile);
 
             if(paintingTool != null)
             {
                 paintingTool.onMouseReleased();
+                paintingToolCalled();
             }
         }
 
@@ -3844,11 +4974,17 @@ public class TilesetEditor
             final Graphics gr = canvas.getGraphics();
             gr.setColor(paintColor);
             paintingTool.onMouseMoved(gr, tileX, tileY);
+            paintingToolCalled();
         }
         
         @Override
         public void mouseDragged(final MouseEvent e)
         {
+            if(operations.isBusy())
+            {
+                return;
+            }
+
             final Graphics gr = canvas.getGraphics();
 
             final int mods = e.getModifiersEx(); 
@@ -3861,7 +4997,7 @@ public class TilesetEditor
 
                 // Have an underlay ? -> reposition image on drag
                 if(backgroundTile != null && currentTile > -1) {
-                    final TileDescriptor tld = tileSet.get(currentTile);
+                    final TileDescriptor tld = editTile(currentTile);
 
                     tld.offX += firstClick.x - newX;
                     tld.offY += firstClick.y - newY;
@@ -3892,7 +5028,8 @@ public class TilesetEditor
             paintingTool.paint(gr, newX, newY,
                                0 != (mods & InputEvent.ALT_DOWN_MASK) ||
                                cbPaintFilled.isSelected());
-            imageView.repaint(20);
+            paintingToolCalled();
+            repaintChanges();
         }
     }
 
@@ -3958,8 +5095,9 @@ public class TilesetEditor
         // imageClicked(currentImage);
         
         saveUndo();
-        clearImage(canvas);
+        clearCanvas();
         canvas.getGraphics().drawImage(undoCanvas, dx, dy, null);
+        markAllDirty();
 
         // tld.xoff += dx;
         // tld.yoff += dy;
@@ -3974,6 +5112,7 @@ public class TilesetEditor
         toolRepaintMode = paintingTool.getRefreshMode();
         paintingTool.setEditor(this);
         paintingTool.setCanvas(canvas);        
+        paintingToolCalled();
     }
 
     private void showAnimation()
@@ -0,0 +1,396 @@
+/*
+ * File: UndoHistory.java
+ * Creation: 2026_10_17
+ * Author: agent <agent@local>
+ * License: See license.txt
+ */
+
+package tilemaster.editor;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Undo and redo steps for image edits, kept separately for each
+ * tile. A step only stores the pixels of the changed area, run
+ * length encoded, so small edits need little time and memory.
+ * <p>
+ * All steps together must fit into a memory budget. If they don't,
+ * the oldest steps of all tiles are dropped.
+ *
+ * @author agent
+ */
+public class UndoHistory
+{
+    /**
+     * Pixels of an area, before or after an edit.
+     */
+    private static class Step
+    {
+        int x, y, width, height;
+
+        /** Pixels, or null if the step was dropped or used */
+        int [] data;
+
+        /** true if data is run length encoded */
+        boolean packed;
+
+        /** The undo or redo stack which holds this step */
+        ArrayDeque <Step> stack;
+
+        long size()
+        {
+            // rough object overhead plus data
+            return 64 + (data == null ? 0 : 4L * data.length);
+        }
+    }
+
+    private static class History
+    {
+        final ArrayDeque <Step> undo = new ArrayDeque<Step>();
+        final ArrayDeque <Step> redo = new ArrayDeque<Step>();
+    }
+
+    private final HashMap <Integer, History> histories = new HashMap<Integer, History>();
+
+    /** All steps, oldest first. Used steps stay until they are at the front. */
+    private final ArrayDeque <Step> age = new ArrayDeque<Step>();
+
+    private final long budget;
+    private long used;
+
+    /**
+     * Creates an empty history.
+     *
+     * @param budget The memory budget in bytes.
+     */
+    public UndoHistory(long budget)
+    {
+        this.budget = budget;
+    }
+
+    /**
+     * Records an edit. Drops the redo steps of the tile.
+     *
+     * @param key The tile.
+     * @param before The image before the edit.
+     * @param area The changed area.
+     */
+    public void record(int key, BufferedImage before, Rectangle area)
+    {
+        if(area.width <= 0 || area.height <= 0)
+        {
+            return;
+        }
+
+        final History history = history(key);
+
+        for(Step step : history.redo)
+        {
+            drop(step);
+        }
+        history.redo.clear();
+
+        push(history.undo, capture(before, area));
+    }
+
+    /**
+     * Reverts the last recorded edit of a tile.
+     *
+     * @param key The tile.
+     * @param image The image to revert.
+     * @return The changed area or null if there was nothing to undo.
+     */
+    public Rectangle undo(int key, BufferedImage image)
+    {
+        final History history = histories.get(key);
+        return history == null ? null : swap(history.undo, history.redo, image);
+    }
+
+    /**
+     * Repeats the last reverted edit of a tile.
+     *
+     * @param key The tile.
+     * @param image The image to change.
+     * @return The changed area or null if there was nothing to redo.
+     */
+    public Rectangle redo(int key, BufferedImage image)
+    {
+        final History history = histories.get(key);
+        return history == null ? null : swap(history.redo, history.undo, image);
+    }
+
+    public int getUndoDepth(int key)
+    {
+        final History history = histories.get(key);
+        return history == null ? 0 : history.undo.size();
+    }
+
+    public int getRedoDepth(int key)
+    {
+        final History history = histories.get(key);
+        return history == null ? 0 : history.redo.size();
+    }
+
+    /**
+     * @return The memory used by all steps, in bytes.
+     */
+    public long getMemoryUsed()
+    {
+        return used;
+    }
+
+    /**
+     * Drops the steps of a tile.
+     */
+    public void remove(int key)
+    {
+        final History history = histories.remove(key);
+
+        if(history != null)
+        {
+            for(Step step : history.undo)
+            {
+                drop(step);
+            }
+            for(Step step : history.redo)
+            {
+                drop(step);
+            }
+        }
+    }
+
+    /**
+     * Drops all steps.
+     */
+    public void clear()
+    {
+        histories.clear();
+        age.clear();
+        used = 0;
+    }
+
+    /**
+     * Finds the pixels which differ between two images of the same size.
+     *
+     * @param a One image.
+     * @param b The other image.
+     * @param area The area to compare.
+     * @return The bounds of the differing pixels, with width and height 0
+     * if there are none.
+     */
+    public static Rectangle findChanges(BufferedImage a, BufferedImage b, Rectangle area)
+    {
+        int left = area.x + area.width;
+        int right = area.x - 1;
+        int top = -1;
+        int bottom = -1;
+
+        final int [] rowA = new int [Math.max(area.width, 1)];
+        final int [] rowB = new int [Math.max(area.width, 1)];
+
+        for(int y=area.y; y<area.y+area.height; y++)
+        {
+            a.getRaster().getDataElements(area.x, y, area.width, 1, rowA);
+            b.getRaster().getDataElements(area.x, y, area.width, 1, rowB);
+
+            int first = 0;
+            while(first < area.width && rowA[first] == rowB[first])
+            {
+                first++;
+            }
+
+            if(first < area.width)
+            {
+                int last = area.width - 1;
+                while(rowA[last] == rowB[last])
+                {
+                    last--;
+                }
+
+                left = Math.min(left, area.x + first);
+                right = Math.max(right, area.x + last);
+                if(top < 0)
+                {
+                    top = y;
+                }
+                bottom = y;
+            }
+        }
+
+        if(top < 0)
+        {
+            return new Rectangle(area.x, area.y, 0, 0);
+        }
+
+        return new Rectangle(left, top, right - left + 1, bottom - top + 1);
+    }
+
+    private History history(int key)
+    {
+        History history = histories.get(key);
+
+        if(history == null)
+        {
+            history = new History();
+            histories.put(key, history);
+        }
+
+        return history;
+    }
+
+    /**
+     * Moves the top step from one stack to the other, and
+     * swaps the pixels of the step and the image.
+     */
+    private Rectangle swap(ArrayDeque <Step> from, ArrayDeque <Step> to, BufferedImage image)
+    {
+        final Step step = from.pollLast();
+
+        if(step == null)
+        {
+            return null;
+        }
+
+        // the image can be smaller than it was when the step was saved
+        final Rectangle area = new Rectangle(step.x, step.y, step.width, step.height)
+            .intersection(new Rectangle(0, 0, image.getWidth(), image.getHeight()));
+
+        if(area.width <= 0 || area.height <= 0)
+        {
+            drop(step);
+            return null;
+        }
+
+        final Step current = capture(image, area);
+        final int [] pixels = unpack(step);
+
+        for(int y=area.y; y<area.y+area.height; y++)
+        {
+            final int start = (y - step.y) * step.width + area.x - step.x;
+            image.getRaster().setDataElements(area.x, y, area.width, 1,
+                                              Arrays.copyOfRange(pixels, start, start + area.width));
+        }
+
+        drop(step);
+        push(to, current);
+
+        return area;
+    }
+
+    private void push(ArrayDeque <Step> stack, Step step)
+    {
+        step.stack = stack;
+        stack.addLast(step);
+        age.addLast(step);
+        used += step.size();
+
+        // the stacks hold their oldest steps first, so the
+        // oldest step of all is at the bottom of its stack
+        while(used > budget && !age.isEmpty())
+        {
+            final Step oldest = age.pollFirst();
+
+            if(oldest.data != null)
+            {
+                oldest.stack.remove(oldest);
+                drop(oldest);
+            }
+        }
+
+        while(!age.isEmpty() && age.peekFirst().data == null)
+        {
+            age.pollFirst();
+        }
+    }
+
+    private void drop(Step step)
+    {
+        if(step.data != null)
+        {
+            used -= step.size();
+            step.data = null;
+        }
+    }
+
+    private static Step capture(BufferedImage image, Rectangle area)
+    {
+        final Rectangle clipped = area.intersection(new Rectangle(0, 0, image.getWidth(), image.getHeight()));
+
+        final Step step = new Step();
+        step.x = clipped.x;
+        step.y = clipped.y;
+        step.width = Math.max(clipped.width, 0);
+        step.height = Math.max(clipped.height, 0);
+
+        final int [] pixels = new int [step.width * step.height];
+        if(pixels.length > 0)
+        {
+            image.getRaster().getDataElements(step.x, step.y, step.width, step.height, pixels);
+        }
+
+        final int [] runs = pack(pixels);
+        step.packed = runs != null;
+        step.data = step.packed ? runs : pixels;
+
+        return step;
+    }
+
+    /**
+     * Run length encodes pixels as pairs of count and color.
+     *
+     * @return The runs, or null if they need more space than the pixels.
+     */
+    private static int [] pack(int [] pixels)
+    {
+        int [] runs = new int [Math.min(pixels.length, 64)];
+        int n = 0;
+
+        for(int i=0; i<pixels.length; )
+        {
+            final int color = pixels[i];
+            int end = i + 1;
+            while(end < pixels.length && pixels[end] == color)
+            {
+                end++;
+            }
+
+            if(n + 2 > pixels.length)
+            {
+                return null;
+            }
+            if(n + 2 > runs.length)
+            {
+                runs = Arrays.copyOf(runs, Math.min(runs.length * 2, pixels.length));
+            }
+
+            runs[n++] = end - i;
+            runs[n++] = color;
+            i = end;
+        }
+
+        return Arrays.copyOf(runs, n);
+    }
+
+    private static int [] unpack(Step step)
+    {
+        if(!step.packed)
+        {
+            return step.data;
+        }
+
+        final int [] pixels = new int [step.width * step.height];
+        int p = 0;
+
+        for(int i=0; i<step.data.length; i += 2)
+        {
+            Arrays.fill(pixels, p, p + step.data[i], step.data[i + 1]);
+            p += step.data[i];
+        }
+
+        return pixels;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * File: ColorMapFile.java
+ * Creation: 2026_10_17
+ * Author: agent <agent@local>
+ * License: See license.txt
+ */
+
+package tilemaster.editor.colors;
+
+import java.awt.Color;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+/**
+ * Reads color palette files. The first line holds the number of
+ * colors, each following line one color as "R G B". The parsing was
+ * moved here from the palette loading of TilesetEditor.
+ *
+ * @author agent
+ */
+public class ColorMapFile
+{
+    /**
+     * Reads the colors of a palette file.
+     *
+     * @param file The palette file.
+     * @return The colors.
+     * @throws IOException In case of IO errors or malformed files.
+     */
+    public static Color [] read(File file) throws IOException
+    {
+        final BufferedReader reader = new BufferedReader(new FileReader(file));
+
+        try
+        {
+            // Hajo: First line should be "256".
+            String line = reader.readLine();
+            if(line == null)
+            {
+                throw new IOException("Empty palette " + file);
+            }
+
+            final int count = Integer.parseInt(line.trim());
+            final Color [] colormap = new Color [count];
+
+            for(int i=0; i<count; i++)
+            {
+                line = reader.readLine();
+                if(line == null)
+                {
+                    throw new IOException("Palette " + file + " ends after " + i + " colors.");
+                }
+
+                final String [] rgb = line.trim().split(" ");
+
+                final int R = Integer.parseInt(rgb[0]);
+                final int G = Integer.parseInt(rgb[1]);
+                final int B = Integer.parseInt(rgb[2]);
+
+                colormap[i] = new Color(R, G, B);
+            }
+
+            return colormap;
+        }
+        catch(NumberFormatException ex)
+        {
+            throw new IOException("Malformed palette " + file + ": " + ex.getMessage());
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    private ColorMapFile()
+    {
+    }
+}
@@ -0,0 +1,20 @@
+/*
+ * File: DirtyRegionReporter.java
+ * Creation: 2026_10_17
+ * Author: agent <agent@local>
+ * License: See license.txt
+ */
+
+package tilemaster.editor.paintingtools;
+
+/**
+ * Painting tools which tell the editor about each change of the
+ * canvas, through TilesetEditor.markDirty(), implement this interface.
+ * For other tools the editor assumes that each call of the tool
+ * changed the whole canvas.
+ *
+ * @author agent
+ */
+public interface DirtyRegionReporter
+{
+}
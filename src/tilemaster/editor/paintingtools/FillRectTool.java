@@ -15,7 +15,7 @@ import java.awt.image.BufferedImage;
  *
  * @author Hj. Malthaner
  */
-public class FillRectTool extends PaintingToolBase
+public class FillRectTool extends PaintingToolBase implements DirtyRegionReporter
 {
     
     private int firstX, firstY;
@@ -58,6 +58,7 @@ public class FillRectTool extends PaintingToolBase
         firstX = x;
         firstY = y;
         gr.fillRect(firstX, firstY, 1, 1);
+        markDirty(firstX, firstY, 1, 1);
     }
 
     /**
@@ -78,6 +79,9 @@ public class FillRectTool extends PaintingToolBase
             } else {
                 gr.drawRect(l, t, w, h);
             }
+
+            // outlines are one pixel wider than fills
+            markDirty(l, t, w + 1, h + 1);
         // }
     }
     
@@ -8,31 +8,36 @@
 package tilemaster.editor.paintingtools;
 
 import java.awt.Color;
-import java.awt.Component;
-import java.awt.Cursor;
 import java.awt.Graphics;
 import java.awt.image.BufferedImage;
+import tilemaster.editor.CanvasOperation;
 import tilemaster.editor.colors.RGB;
 
 /**
  * Fillmachine implements a flood fill algorithm and
  * uses "Filler" objects for operatiosn to be done
  * on the filled area.
+ * <p>
+ * Fills run in the background, on a copy of the canvas. The
+ * editor marks the filled area once the fill is done.
  *
  * @author Hj. Malthaner
  */
-public class Fillmachine extends PaintingToolBase
+public class Fillmachine extends PaintingToolBase implements DirtyRegionReporter
 {
     private static final int PASS_HORIZONTAL = 0;
     private static final int PASS_VERTICAL = 1;
 
-    private Component parent;
     private BufferedImage canvas;
     private int tolerance;
     private int backgroundRGB;
     private int areaRGB;
     private Filler currentFiller;
     private byte [] marks;
+    private CanvasOperation.Progress progress;
+
+    // number of marked pixels in this pass
+    private long marked;
 
     /**
      * To let the Fillers keep track which fill direction is currently employed
@@ -78,33 +83,54 @@ public class Fillmachine extends PaintingToolBase
      * User clicked a new location
      */
     @Override
-    public void firstClick(Graphics gr, int x, int y)
+    public void firstClick(Graphics gr, final int x, final int y)
     {
-        final Cursor cursor = parent.getCursor();
+        final Color paintColor = gr.getColor();
 
-        try
+        runOperation(new CanvasOperation(getToolName())
         {
-            parent.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+            @Override
+            public BufferedImage run(BufferedImage image, Progress progress)
+            {
+                fill(image, x, y, paintColor, progress);
+                return image;
+            }
+        });
+    }
 
-            areaRGB = canvas.getRGB(x,y);
-            Color paintColor = gr.getColor();
+    /**
+     * Fills the area around a pixel. Runs on the worker thread of
+     * the editor, one fill after the other.
+     */
+    private void fill(final BufferedImage image, final int x, final int y,
+                      final Color paintColor, final CanvasOperation.Progress fillProgress)
+    {
+        canvas = image;
+        progress = fillProgress;
 
-            currentFiller.start(canvas, paintColor);
+        areaRGB = canvas.getRGB(x,y);
 
-            pass = PASS_HORIZONTAL;
-            marks = new byte [canvas.getWidth() * canvas.getHeight()];
-            rangeLeftRight(x, y);
+        currentFiller.start(canvas, paintColor);
 
-            pass = PASS_VERTICAL;
-            marks = new byte [canvas.getWidth() * canvas.getHeight()];
-            rangeUpDown(x, y);
+        pass = PASS_HORIZONTAL;
+        marked = 0;
+        marks = new byte [canvas.getWidth() * canvas.getHeight()];
+        rangeLeftRight(x, y);
 
-            currentFiller.finish(marks);
-        }
-        finally
+        pass = PASS_VERTICAL;
+        marked = 0;
+        marks = new byte [canvas.getWidth() * canvas.getHeight()];
+        rangeUpDown(x, y);
+
+        // the filler does the last third of the work
+        currentFiller.finish(marks, new CanvasOperation.Progress()
         {
-            parent.setCursor(cursor);
-        }
+            @Override
+            public void update(long done, long total)
+            {
+                fillProgress.update(2 * total + done, 3 * total);
+            }
+        });
     }
 
     /**
@@ -129,10 +155,8 @@ public class Fillmachine extends PaintingToolBase
     /** 
      * Creates a new instance of Fillmachine
      */
-    public Fillmachine(Component parent, BufferedImage canvas, int tolerance, Color background)
+    public Fillmachine(int tolerance, Color background)
     {
-        this.parent = parent;
-        this.canvas = canvas;
         this.tolerance = tolerance;
         this.backgroundRGB = background.getRGB();
     }
@@ -157,9 +181,16 @@ public class Fillmachine extends PaintingToolBase
     private void setMark(final int x, final int y)
     {
         marks[canvas.getWidth() * y + x] = 1;
+        marked ++;
     }
 
 
+    private void reportProgress()
+    {
+        final long area = (long)canvas.getWidth() * canvas.getHeight();
+        progress.update(pass * area + marked, 3 * area);
+    }
+
     private void rangeLeftRight(final int x, final int y)
     {
         if(isValid(x, y) && !isMarked(x, y) && isFillableColor(canvas.getRGB(x,y)))
@@ -192,6 +223,7 @@ public class Fillmachine extends PaintingToolBase
 
             // Hajo: fill line
             currentFiller.plotLine(xl, y, xr, y);
+            reportProgress();
 
             for(int i=xl; i<=xr; i++)
             {
@@ -233,6 +265,7 @@ public class Fillmachine extends PaintingToolBase
 
             // Hajo: fill line
             currentFiller.plotLine(x, yo, x, yu);
+            reportProgress();
 
             for(int i=yo; i<=yu; i++)
             {
@@ -251,7 +284,35 @@ public class Fillmachine extends PaintingToolBase
     public interface Filler
     {
         public void start(BufferedImage canvas, Color paintColor);
-        public void finish(byte [] marks);
+
+        /**
+         * Works on the filled area. Fillers implement one of the two
+         * finish() methods, each calls the other by default.
+         *
+         * @param marks The filled area, non-zero for filled pixels.
+         * @param progress To report progress, once per row at least.
+         */
+        public default void finish(byte [] marks, CanvasOperation.Progress progress)
+        {
+            finish(marks);
+        }
+
+        /**
+         * Works on the filled area, without reporting progress. Kept
+         * for fillers written before finish() had a Progress.
+         *
+         * @param marks The filled area, non-zero for filled pixels.
+         */
+        public default void finish(byte [] marks)
+        {
+            finish(marks, new CanvasOperation.Progress()
+            {
+                @Override
+                public void update(long done, long total)
+                {
+                }
+            });
+        }
         
         public void plotInside(int x, int y);
         public void plotBorder(int x, int y);
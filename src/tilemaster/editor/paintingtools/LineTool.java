@@ -15,7 +15,7 @@ import java.awt.image.BufferedImage;
  * 
  * @author Hj. Malthaner
  */
-public class LineTool extends PaintingToolBase
+public class LineTool extends PaintingToolBase implements DirtyRegionReporter
 {
     private int firstX, firstY;
 
@@ -57,6 +57,7 @@ public class LineTool extends PaintingToolBase
         firstX = x;
         firstY = y;
         gr.fillRect(firstX, firstY, 1, 1);
+        markDirty(firstX, firstY, 1, 1);
     }
 
     /**
@@ -67,6 +68,8 @@ public class LineTool extends PaintingToolBase
     {
         if(x != firstX || y != firstY) {
             gr.drawLine(firstX, firstY, x, y);
+            markDirty(Math.min(firstX, x), Math.min(firstY, y),
+                      Math.abs(x-firstX) + 1, Math.abs(y-firstY) + 1);
         }
     }
     
@@ -8,7 +8,9 @@
 package tilemaster.editor.paintingtools;
 
 import java.awt.Graphics;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import tilemaster.editor.CanvasOperation;
 import tilemaster.editor.TilesetEditor;
 
 /**
@@ -20,6 +22,7 @@ import tilemaster.editor.TilesetEditor;
  */
 public abstract class PaintingToolBase implements PaintingTool
 {
+    private TilesetEditor editor;
 
     @Override
     public int getRefreshMode()
@@ -43,6 +46,44 @@ public abstract class PaintingToolBase implements PaintingTool
     @Override
     public void setEditor(TilesetEditor editor)
     {
+        this.editor = editor;
+    }
+
+    /**
+     * Tells the editor about a changed area of the canvas. Tools
+     * which report all their changes should implement
+     * DirtyRegionReporter.
+     *
+     * @param x Left edge of the area.
+     * @param y Top edge of the area.
+     * @param width Width of the area.
+     * @param height Height of the area.
+     */
+    protected void markDirty(int x, int y, int width, int height)
+    {
+        if(editor != null)
+        {
+            editor.markDirty(x, y, width, height);
+        }
+    }
+
+    protected void markDirty(Rectangle area)
+    {
+        markDirty(area.x, area.y, area.width, area.height);
+    }
+
+    /**
+     * Runs a long operation on a copy of the canvas, in the
+     * background. See TilesetEditor.runOperation().
+     *
+     * @param operation The operation to run.
+     */
+    protected void runOperation(CanvasOperation operation)
+    {
+        if(editor != null)
+        {
+            editor.runOperation(operation);
+        }
     }
 
     /**
@@ -17,7 +17,7 @@ import tilemaster.editor.TilesetEditor;
  * 
  * @author Hj. Malthaner
  */
-public class PlotTool extends PaintingToolBase
+public class PlotTool extends PaintingToolBase implements DirtyRegionReporter
 {
     private TilesetEditor editor;
     private int firstX, firstY;
@@ -47,6 +47,7 @@ public class PlotTool extends PaintingToolBase
     @Override
     public void setEditor(TilesetEditor editor)
     {
+        super.setEditor(editor);
         this.editor = editor;
     }
 
@@ -60,6 +61,7 @@ public class PlotTool extends PaintingToolBase
         firstY = y;
 
         editor.brush.draw(gr, x, y);
+        markDirty(editor.brush.getArea(x, y));
     }
 
     /**
@@ -72,6 +74,8 @@ public class PlotTool extends PaintingToolBase
         {
             if(x != firstX || y != firstY) {
                 gr.drawLine(firstX, firstY, x, y);
+                markDirty(Math.min(firstX, x), Math.min(firstY, y),
+                          Math.abs(x-firstX) + 1, Math.abs(y-firstY) + 1);
 
                 firstX = x;
                 firstY = y;
@@ -80,6 +84,7 @@ public class PlotTool extends PaintingToolBase
         else
         {
             editor.brush.draw(gr, x, y);            
+            markDirty(editor.brush.getArea(x, y));
         }
     }
     /**
@@ -15,7 +15,7 @@ import java.awt.image.BufferedImage;
  * 
  * @author Hj. Malthaner
  */
-public class RoundRectTool extends PaintingToolBase
+public class RoundRectTool extends PaintingToolBase implements DirtyRegionReporter
 {
     private int firstX, firstY;
 
@@ -57,6 +57,7 @@ public class RoundRectTool extends PaintingToolBase
         firstX = x;
         firstY = y;
         gr.fillRect(firstX, firstY, 1, 1);
+        markDirty(firstX, firstY, 1, 1);
     }
 
     /**
@@ -75,6 +76,9 @@ public class RoundRectTool extends PaintingToolBase
         } else {
             gr.drawRoundRect(l, t, w, h, 8, 8);
         }
+
+        // outlines are one pixel wider than fills
+        markDirty(l, t, w + 1, h + 1);
     }
     
     /**
@@ -9,9 +9,9 @@ package tilemaster.editor.paintingtools.filler;
 
 import asktools.Requester;
 import java.awt.Color;
-import java.awt.Cursor;
 import java.awt.image.BufferedImage;
 import javax.swing.JFrame;
+import tilemaster.editor.CanvasOperation;
 import tilemaster.editor.paintingtools.Fillmachine;
 import tilemaster.editor.paintingtools.filler.gradients.Func;
 import tilemaster.editor.paintingtools.filler.gradients.FuncLinear;
@@ -94,59 +94,50 @@ public class ContourFiller implements Fillmachine.Filler
         this.canvas = canvas;
     }
 
-    public void finish(final byte [] marks)
+    public void finish(final byte [] marks, final CanvasOperation.Progress progress)
     {
-        final Cursor cursor = parent.getCursor();
+        final int height = canvas.getHeight();
+        final int width = canvas.getWidth();
 
-        try
+        for(int y=0; y<height; y++)
         {
-            parent.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+            progress.update(y, height);
 
-            final int height = canvas.getHeight();
-            final int width = canvas.getWidth();
-
-            for(int y=0; y<height; y++)
+            for(int x=0; x<width; x++)
             {
-                for(int x=0; x<width; x++)
+                if(marks[y*width + x] != 0)
                 {
-                    if(marks[y*width + x] != 0)
+                    double sum = 0;
+                    int div = 0;
+
+                    for(double r=startAngle; r<Math.PI; r+=angleStep)
                     {
-                        double sum = 0;
-                        int div = 0;
+                        final double sin = Math.sin(r);
+                        final double cos = Math.cos(r);
+
+                        final int l1 = seek(marks, x, y, sin, cos, width, height);
+                        final int l2 = seek(marks, x, y, -sin, -cos, width, height);
+
+                        if(l1 < 0) System.err.println("l1=" + l1);
+                        if(l2 < 0) System.err.println("l2=" + l2);
 
-                        for(double r=startAngle; r<Math.PI; r+=angleStep)
+                        if(l1 + l2 != 0)
                         {
-                            final double sin = Math.sin(r);
-                            final double cos = Math.cos(r);
-
-                            final int l1 = seek(marks, x, y, sin, cos, width, height);
-                            final int l2 = seek(marks, x, y, -sin, -cos, width, height);
-
-                            if(l1 < 0) System.err.println("l1=" + l1);
-                            if(l2 < 0) System.err.println("l2=" + l2);
-
-                            if(l1 + l2 != 0)
-                            {
-                                sum += function.calc(l1, l2);
-                                // sum += function.calc(0, 10);
-                                // sum += function.calc(10, 0);
-                                div ++;
-                            }
+                            sum += function.calc(l1, l2);
+                            // sum += function.calc(0, 10);
+                            // sum += function.calc(10, 0);
+                            div ++;
                         }
+                    }
 
-                        final int rgb = calcRGB(canvas.getRGB(x, y), colors[0], colors[1], sum, div);
-                        // final int rgb = gradient.calcRGB(colors[0], colors[1], 0.0);
-                        // final int rgb = gradient.calcRGB(colors[0], colors[1], 1.0);
+                    final int rgb = calcRGB(canvas.getRGB(x, y), colors[0], colors[1], sum, div);
+                    // final int rgb = gradient.calcRGB(colors[0], colors[1], 0.0);
+                    // final int rgb = gradient.calcRGB(colors[0], colors[1], 1.0);
 
-                        canvas.setRGB(x, y, rgb);
-                    }
+                    canvas.setRGB(x, y, rgb);
                 }
             }
         }
-        finally
-        {
-            parent.setCursor(cursor);
-        }
     }
 
     protected int calcRGB(int oldRgb, int rgb1, int rgb2, double sum, double div)
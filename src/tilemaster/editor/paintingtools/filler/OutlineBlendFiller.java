@@ -10,6 +10,7 @@ package tilemaster.editor.paintingtools.filler;
 import java.awt.Color;
 import java.awt.image.BufferedImage;
 import tilemaster.editor.colors.RGB;
+import tilemaster.editor.CanvasOperation;
 import tilemaster.editor.paintingtools.Fillmachine;
 
 /**
@@ -42,7 +43,7 @@ public class OutlineBlendFiller implements Fillmachine.Filler
     }
     
     @Override
-    public void finish(byte [] marks)
+    public void finish(byte [] marks, CanvasOperation.Progress progress)
     {
         canvas.getGraphics().drawImage(img, 0, 0, null);
     }
@@ -11,6 +11,7 @@ import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.image.BufferedImage;
 import tilemaster.editor.colors.RGB;
+import tilemaster.editor.CanvasOperation;
 import tilemaster.editor.paintingtools.Fillmachine;
 
 /**
@@ -36,7 +37,7 @@ public class OutlineFiller implements Fillmachine.Filler
     }
     
     @Override
-    public void finish(byte [] marks)
+    public void finish(byte [] marks, CanvasOperation.Progress progress)
     {
         canvas.getGraphics().drawImage(img, 0, 0, null);
     }
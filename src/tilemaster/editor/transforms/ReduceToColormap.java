@@ -20,6 +20,23 @@ public class ReduceToColormap implements TileTransform
 {
     private ColorPalette palette;
 
+    /**
+     * Creates a transform which takes the palette from the
+     * editor in askUserData().
+     */
+    public ReduceToColormap()
+    {
+    }
+
+    /**
+     * Creates a transform for a known palette, i.e. for batch runs.
+     * @param palette The colors to reduce to, color 0 is transparent.
+     */
+    public ReduceToColormap(ColorPalette palette)
+    {
+        this.palette = palette;
+    }
+
     /**
      * If this transform requires user input, ask for details.
      * @param parent The parent frame.
@@ -25,6 +25,23 @@ public class ReduceToColormapED implements TileTransform
     
     private ColorPalette palette;
 
+    /**
+     * Creates a transform which takes the palette from the
+     * editor in askUserData().
+     */
+    public ReduceToColormapED()
+    {
+    }
+
+    /**
+     * Creates a transform for a known palette, i.e. for batch runs.
+     * @param palette The colors to reduce to, color 0 is transparent.
+     */
+    public ReduceToColormapED(ColorPalette palette)
+    {
+        this.palette = palette;
+    }
+
     /**
      * If this transform requires user input, ask for details.
      * @param parent The parent frame.
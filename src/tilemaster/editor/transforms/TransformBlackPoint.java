@@ -20,6 +20,24 @@ public class TransformBlackPoint implements TileTransform
     private static String input = "256 256 256";
     private int rf, gf, bf;
 
+    /**
+     * Creates a transform which asks for the levels in askUserData().
+     */
+    public TransformBlackPoint()
+    {
+    }
+
+    /**
+     * Creates a transform for known levels, i.e. for batch runs.
+     * 256 keeps a channel unchanged.
+     */
+    public TransformBlackPoint(int rf, int gf, int bf)
+    {
+        this.rf = rf;
+        this.gf = gf;
+        this.bf = bf;
+    }
+
     @Override
     public boolean  askUserData(TilesetEditor parent)
     {
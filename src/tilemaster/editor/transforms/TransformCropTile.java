@@ -18,6 +18,23 @@ public class TransformCropTile implements TileTransform
 {
     private int bgColor;
 
+    /**
+     * Creates a transform which takes the background color
+     * from the editor in askUserData().
+     */
+    public TransformCropTile()
+    {
+    }
+
+    /**
+     * Creates a transform for a known background color, i.e. for batch runs.
+     * @param bgColor The ARGB background color.
+     */
+    public TransformCropTile(int bgColor)
+    {
+        this.bgColor = bgColor;
+    }
+
     /**
      * If this transform requires user input, ask for details.
      * @param parent The parent frame.
@@ -62,6 +79,12 @@ public class TransformCropTile implements TileTransform
 
         System.err.println("Image area: " + minX + ", " + minY + ", " + maxX + ", " + maxY);
 
+        if(maxX < minX || maxY < minY)
+        {
+            // nothing but background, keep a transparent dot
+            return new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        }
+
         final int width = maxX - minX + 1;
         final int height = maxY - minY + 1;
 
@@ -39,8 +39,8 @@ public class AnimationPanel extends JPanel
         this.frame = 0;
         
         TileDescriptor tld = tileSet.get(start);
-        Dimension dim = new Dimension(Math.max(tld.img.getWidth(), 128),
-                                      Math.max(tld.img.getHeight(), 128));
+        Dimension dim = new Dimension(Math.max(tld.getWidth(), 128),
+                                      Math.max(tld.getHeight(), 128));
         setPreferredSize(dim);
         
         animationThread = new AnimationThread();
@@ -57,10 +57,10 @@ public class AnimationPanel extends JPanel
         super.paint(gr);
 
         final TileDescriptor tld = tileSet.get(start);
-        final int xoff = (getWidth() - tld.img.getWidth()) / 2;
-        final int yoff = (getHeight() - tld.img.getHeight()) / 2;
+        final int xoff = (getWidth() - tld.getWidth()) / 2;
+        final int yoff = (getHeight() - tld.getHeight()) / 2;
         
-        final Image img = tileSet.get(start + (frame % count)).img;
+        final Image img = tileSet.get(start + (frame % count)).getImage();
         gr.drawImage(img, xoff, yoff, this);
         // gr.drawString("" + frame, 10, 50);
     }
@@ -73,9 +73,9 @@ public class ImageSelector extends JPanel {
                     gr.fillRect(xpos, size.height-1, SPACING, 1);
                     gr.fillRect((i+1)*SPACING-1, 1, 1, size.height-1);
                 }
-                gr.drawImage(images[i].img,
-                             xpos + (SPACING-images[i].img.getWidth())/2,
-                             size.height - images[i].img.getHeight() - 3, null);
+                gr.drawImage(images[i].getImage(),
+                             xpos + (SPACING-images[i].getWidth())/2,
+                             size.height - images[i].getHeight() - 3, null);
 
                 gr.setColor(Color.WHITE);
 
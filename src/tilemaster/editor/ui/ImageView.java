@@ -113,6 +113,18 @@ public class ImageView extends JPanel
         repaint(100);
     }
 
+    /**
+     * Repaints the part of the view which shows an area of the image.
+     *
+     * @param tm Maximum time in milliseconds before the update.
+     * @param area The area, in image coordinates.
+     */
+    public void repaintImage(long tm, Rectangle area)
+    {
+        repaint(tm, (xoff + area.x) * zoomLevel, (yoff + area.y) * zoomLevel,
+                area.width * zoomLevel, area.height * zoomLevel);
+    }
+
     @Override
     public void paint(final Graphics gr) 
     {
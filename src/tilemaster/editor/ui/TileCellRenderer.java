@@ -19,12 +19,17 @@ import tilemaster.tile.TileDescriptor;
 
 public class TileCellRenderer extends JLabel implements ListCellRenderer
 {
-
+    /**
+     * Width and height of a list cell. Lists should use this as
+     * fixed cell size, so they don't need to render all cells
+     * (and load all tile images) to find the cell sizes.
+     */
+    public static final int CELL_SIZE = 64;
 
     public TileCellRenderer() {
         setOpaque(true);
         setMinimumSize(new Dimension(32, 32));
-        setPreferredSize(new Dimension(64, 64));
+        setPreferredSize(new Dimension(CELL_SIZE, CELL_SIZE));
         setHorizontalAlignment(CENTER);
         setBorder(new BevelBorder(BevelBorder.LOWERED));
     }
@@ -39,7 +44,9 @@ public class TileCellRenderer extends JLabel implements ListCellRenderer
              TileDescriptor tld = (TileDescriptor)value;
 
              setText("");
-             setIcon(new ImageIcon(tld.img));
+
+             // empty slots have nothing to show
+             setIcon(tld.isEmpty() ? null : new ImageIcon(tld.getImage()));
          } else {
              setText(value.toString());
              setIcon(null);
@@ -0,0 +1,140 @@
+/*
+ * File: TileListModel.java
+ * Creation: 2026_10_17
+ * Author: agent <agent@local>
+ * License: See license.txt
+ */
+
+package tilemaster.editor.ui;
+
+import javax.swing.AbstractListModel;
+import tilemaster.tile.TileDescriptor;
+import tilemaster.tile.TileSet;
+
+/**
+ * List model which shows the tiles of a tile set. The model doesn't
+ * copy the tiles, it reads them from the set when the list asks.
+ * <p>
+ * The set doesn't notify the model. Whoever changes the set must
+ * tell the model which tiles changed, so the list can update just
+ * these cells.
+ *
+ * @author agent
+ */
+public class TileListModel extends AbstractListModel <TileDescriptor>
+{
+    private static final long serialVersionUID = 1L;
+
+    private TileSet tileSet;
+
+    /**
+     * Creates a model without tiles.
+     */
+    public TileListModel()
+    {
+    }
+
+    /**
+     * Creates a model for a tile set.
+     *
+     * @param tileSet The tiles to show.
+     */
+    public TileListModel(TileSet tileSet)
+    {
+        this.tileSet = tileSet;
+    }
+
+    public TileSet getTileSet()
+    {
+        return tileSet;
+    }
+
+    /**
+     * Shows another tile set.
+     *
+     * @param tileSet The tiles to show, null for none.
+     */
+    public void setTileSet(TileSet tileSet)
+    {
+        final int oldSize = getSize();
+
+        // the list must see the old tiles gone before it sees the new ones
+        this.tileSet = null;
+        if(oldSize > 0)
+        {
+            fireIntervalRemoved(this, 0, oldSize - 1);
+        }
+
+        this.tileSet = tileSet;
+
+        final int newSize = getSize();
+        if(newSize > 0)
+        {
+            fireIntervalAdded(this, 0, newSize - 1);
+        }
+    }
+
+    @Override
+    public int getSize()
+    {
+        return tileSet == null ? 0 : tileSet.size();
+    }
+
+    @Override
+    public TileDescriptor getElementAt(int index)
+    {
+        return tileSet.get(index);
+    }
+
+    /**
+     * Call after tiles were inserted into the set.
+     *
+     * @param index Index of the first new tile.
+     * @param count Number of new tiles.
+     */
+    public void tilesInserted(int index, int count)
+    {
+        if(count > 0)
+        {
+            fireIntervalAdded(this, index, index + count - 1);
+        }
+    }
+
+    /**
+     * Call after tiles were removed from the set.
+     *
+     * @param index Former index of the first removed tile.
+     * @param count Number of removed tiles.
+     */
+    public void tilesRemoved(int index, int count)
+    {
+        if(count > 0)
+        {
+            fireIntervalRemoved(this, index, index + count - 1);
+        }
+    }
+
+    /**
+     * Call after a tile was changed or replaced.
+     *
+     * @param index Index of the tile.
+     */
+    public void tileChanged(int index)
+    {
+        tilesChanged(index, index);
+    }
+
+    /**
+     * Call after a range of tiles was changed or replaced.
+     *
+     * @param first Index of the first tile.
+     * @param last Index of the last tile.
+     */
+    public void tilesChanged(int first, int last)
+    {
+        if(first <= last)
+        {
+            fireContentsChanged(this, first, last);
+        }
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * File: CatalogXmlIO.java
+ * Creation: 2026_10_17
+ * Author: agent <agent@local>
+ * License: See license.txt
+ */
+
+package tilemaster.io;
+
+import itemizer.item.ItemConfiguration;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.imageio.ImageIO;
+import tilemaster.tile.TileDescriptor;
+import tilemaster.tile.TileImageSource;
+import tilemaster.tile.TileSet;
+
+
+/**
+ * XML catalog IO. Opens a tile set from a catalog.xml file alone.
+ * If the catalog is part of a tile catalog folder, the tile images
+ * are loaded on demand from the folder. Writing stores the catalog
+ * and the tile images next to it, named like in tile catalog folders.
+ *
+ * @author agent
+ */
+public class CatalogXmlIO implements FileTypeIO
+{
+    private static final Logger LOGGER = Logger.getLogger(CatalogXmlIO.class.getName());
+
+    /** Names of tile image files, see TicaIO.makeImageName() */
+    private static final String TILE_IMAGE_PATTERN = "-?[0-9]+-.*\\.png";
+
+    static
+    {
+        IOPluginBroker.registerHandler(".xml", new CatalogXmlIO());
+    }
+
+    /**
+     * Reads a tile set from a XML catalog.
+     *
+     * @param filename The name of the file to read.
+     * @return The created tile set.
+     * @throws IOException In case of IO errors.
+     */
+    @Override
+    public TileSet read(String filename) throws IOException
+    {
+        final long start = System.nanoTime();
+        final File catalog = new File(filename).getAbsoluteFile();
+        final File folder = catalog.getParentFile();
+
+        final TileSet result = new TileSet(new ItemConfiguration(), 0);
+        result.readXML(new BufferedInputStream(new FileInputStream(catalog), 1 << 16));
+
+        final long parsed = System.nanoTime();
+
+        final FileListing listing = new FileListing();
+        final Set <String> images = new HashSet<String>(listing.listNames(folder, ".*\\.png"));
+        final ImageCache cache = new ImageCache(ImageCache.DEFAULT_PIXELS);
+        int found = 0;
+
+        for(int i=0; i<result.size(); i++)
+        {
+            final TileDescriptor tld = result.get(i);
+            final String name = tld.getString(0);
+            final String imgname = TicaIO.makeImageName(tld.tileId, name);
+
+            if(images.contains(imgname))
+            {
+                // the size is known from the catalog already
+                tld.setImageSource(new ImageFile(new File(folder, imgname), cache));
+                found ++;
+            }
+            else
+            {
+                tld.img = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+            }
+
+            tld.markClean();
+
+            if(!images.contains(imgname))
+            {
+                result.setEmptyIfBlank(i);
+            }
+        }
+
+        System.err.println("Read " + result.size() + " tiles from " + filename +
+                           ", " + found + " with images: parse " +
+                           WorkerPool.millis(start, parsed) + " ms, images " +
+                           WorkerPool.millis(parsed, System.nanoTime()) + " ms");
+
+        return result;
+    }
+
+    /**
+     * Writes the XML catalog of a tile set, and the tile images as
+     * PNG files into the same folder. Images which are loaded on demand
+     * from their file in this folder are not written again. Tile images
+     * of earlier saves which no tile uses anymore are removed.
+     *
+     * @param filename The name of the file to write.
+     * @param tileSet The tiles to write.
+     * @throws IOException In case of IO errors.
+     */
+    @Override
+    public void write(String filename, TileSet tileSet) throws IOException
+    {
+        final long start = System.nanoTime();
+        final File folder = new File(filename).getAbsoluteFile().getParentFile();
+
+        final Writer writer =
+                new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filename), "UTF-8"),
+                                   1 << 16);
+
+        try
+        {
+            tileSet.writeXML(writer);
+        }
+        finally
+        {
+            writer.close();
+        }
+
+        final Set <String> wanted = new HashSet<String>();
+        int written = 0;
+        int removed = 0;
+
+        for(int i=0; i<tileSet.size(); i++)
+        {
+            final TileDescriptor tld = tileSet.get(i);
+
+            // empty images are not stored
+            if(tld.getWidth() > 1)
+            {
+                final String imgname = TicaIO.makeImageName(tld.tileId, tld.getString(0));
+                final File file = new File(folder, imgname);
+
+                if(!isLoadedFrom(tld, file))
+                {
+                    ImageIO.write(tld.getImage(), "PNG", file);
+                    written ++;
+                }
+
+                rebindImage(tld, file);
+                wanted.add(imgname);
+            }
+        }
+
+        // only files named like tile images, the folder may hold other images
+        final List <String> existing = new FileListing().listNames(folder, TILE_IMAGE_PATTERN);
+
+        for(String imgname : existing)
+        {
+            if(!wanted.contains(imgname) && new File(folder, imgname).delete())
+            {
+                removed ++;
+            }
+        }
+
+        tileSet.markClean();
+
+        System.err.println("Saved " + filename + " in " +
+                           WorkerPool.millis(start, System.nanoTime()) + " ms: " +
+                           written + " of " + tileSet.size() + " images written, " +
+                           removed + " removed.");
+    }
+
+    /**
+     * @return true if the tile image is loaded on demand from the file.
+     */
+    private static boolean isLoadedFrom(TileDescriptor tld, File file)
+    {
+        final TileImageSource source = tld.getImageSource();
+
+        return tld.img == null && source instanceof ImageFile &&
+               ((ImageFile)source).file.equals(file);
+    }
+
+    /**
+     * Lets a tile image which is loaded on demand from a catalog folder
+     * load from another file with the same pixels. Must be called if
+     * saving renames or rewrites the file, else the tile would load
+     * from a file which is gone or has other pixels by now.
+     * <p>
+     * The tile itself is not changed, it may be shared with snapshots.
+     * The image source moves to the file instead, for all copies of
+     * the tile.
+     *
+     * @param tld The tile.
+     * @param file The file which holds the tile image now.
+     */
+    static void rebindImage(TileDescriptor tld, File file)
+    {
+        final TileImageSource source = tld.getImageSource();
+
+        if(tld.img == null && source instanceof ImageFile && !isLoadedFrom(tld, file))
+        {
+            ((ImageFile)source).file = file;
+        }
+    }
+
+    /**
+     * Image source for a tile image file in the catalog folder.
+     */
+    private static class ImageFile implements TileImageSource
+    {
+        private volatile File file;
+        private final ImageCache cache;
+
+        ImageFile(File file, ImageCache cache)
+        {
+            this.file = file;
+            this.cache = cache;
+        }
+
+        @Override
+        public BufferedImage loadImage()
+        {
+            BufferedImage img = cache.get(this);
+
+            if(img == null)
+            {
+                try
+                {
+                    img = ImageIO.read(file);
+                }
+                catch(IOException ex)
+                {
+                    LOGGER.log(Level.SEVERE, "Can't load tile image " + file, ex);
+                }
+
+                if(img == null)
+                {
+                    // not cached, the next call tries again
+                    return new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+                }
+
+                cache.put(this, img);
+            }
+
+            return img;
+        }
+    }
+
+    /** Creates a new instance of CatalogXmlIO */
+    private CatalogXmlIO()
+    {
+    }
+}
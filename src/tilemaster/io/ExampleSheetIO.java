@@ -47,16 +47,9 @@ public class ExampleSheetIO implements FileTypeIO {
     {
         TileSet result = null;
 
-        SimpleMessageBox box = new SimpleMessageBox(null,
-                                                    "Tile Raster",
-                                                    "Please enter the tile raster used in this image:",
-                                                    "64x64");
-        box.setVisible(true);
-        box.dispose();
-
-        String input = box.getInput();
+        String input = askRaster();
         String [] parts = input.split("x");
-        if(parts.length == 2) {
+        if(parts.length >= 2) {
             final int rasterW = Integer.parseInt(parts[0]);
             final int rasterH = Integer.parseInt(parts[1]);
 
@@ -66,12 +59,24 @@ public class ExampleSheetIO implements FileTypeIO {
             result = new TileSet(new ItemConfiguration(), 0);
             result.read(reader);
 
-            BufferedImage sheet = ImageIO.read(new File(makeSheetName(filename)));
+            // cut the cells without decoding the whole sheet at once
+            SheetSlicer slicer = new SheetSlicer(new File(makeSheetName(filename)));
+            slicer.setCrop(true);
 
-            for(int i=0; i<result.size(); i++) {
-                int x = (i % stride) * rasterW;
-                int y = (i / stride) * rasterH;
-                result.get(i).img = crop(sheet.getSubimage(x, y, rasterW, rasterH));
+            try {
+                BufferedImage [] cells = slicer.sliceGrid(rasterW, rasterH, stride, result.size());
+
+                for(int i=0; i<result.size(); i++) {
+                    result.get(i).img = cells[i];
+
+                    // blank cells crop to one transparent pixel
+                    if(cells[i].getWidth() == 1 && cells[i].getHeight() == 1 &&
+                       (cells[i].getRGB(0, 0) >>> 24) == 0) {
+                        result.setEmptyIfBlank(i);
+                    }
+                }
+            } finally {
+                slicer.close();
             }
         }
         
@@ -87,16 +92,9 @@ public class ExampleSheetIO implements FileTypeIO {
     @Override
     public void write(String filename, TileSet tileSet) throws IOException
     {
-        SimpleMessageBox box = new SimpleMessageBox(null,
-                                                    "Tile Raster",
-                                                    "Please enter the tile raster used in this image:",
-                                                    "64x64");
-        box.setVisible(true);
-        box.dispose();
-
-        String input = box.getInput();
+        String input = askRaster();
         String [] parts = input.split("x");
-        if(parts.length == 2) {
+        if(parts.length >= 2) {
             final int rasterW = Integer.parseInt(parts[0]);
             final int rasterH = Integer.parseInt(parts[1]);
 
@@ -118,7 +116,10 @@ public class ExampleSheetIO implements FileTypeIO {
                 int x = (i % stride) * rasterW;
                 int y = (i / stride) * rasterH;
 
-                gr.drawImage(tileSet.get(i).img, x, y, null);
+                // empty slots stay transparent
+                if(!tileSet.isEmpty(i)) {
+                    gr.drawImage(tileSet.get(i).getImage(), x, y, null);
+                }
             }
 
 
@@ -131,66 +132,39 @@ public class ExampleSheetIO implements FileTypeIO {
     }
 
 
-    /** 
-     * Creates a new instance of ExampleSheetIO
-     */
-    private ExampleSheetIO()
-    {
-    }
-
-
     /**
-     * Semi-crop (right, bottom) real image from a larger image with
-     * empty borders.
+     * Asks the user for the tile raster, unless the "sheet.raster"
+     * option is set.
      *
-     * @param canvas The orginal image
-     * @return the semi-cropped image
+     * @return The raster in format WxH.
      */
-    private BufferedImage crop(final BufferedImage canvas)
+    private String askRaster()
     {
-        int maxX = 0;
-        int maxY = 0;
-
-        // Hajo: Scan for bounds
-        for(int y=0; y<canvas.getHeight(); y++) {
-            for(int x=0; x<canvas.getWidth(); x++) {
-                final int argb = canvas.getRGB(x, y);
-                final int a = (argb >>> 24) & 255;
-
-                if(a > 127) {
-                    if(x > maxX)
-                    {
-                        maxX = x;
-                    }
-                    if(y > maxY)
-                    {
-                        maxY = y;
-                    }
-                }
-            }
-        }
+        String input = IOPluginBroker.getOption("sheet.raster");
 
-        final int width = maxX + 1;
-        final int height = maxY + 1;
+        if(input == null) {
+            SimpleMessageBox box = new SimpleMessageBox(null,
+                                                        "Tile Raster",
+                                                        "Please enter the tile raster used in this image:",
+                                                        "64x64");
+            box.setVisible(true);
+            box.dispose();
 
-        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            input = box.getInput();
+        }
 
-        for(int y=0; y<height; y++) {
-            for(int x=0; x<width; x++) {
-                final int argb = canvas.getRGB(x, y);
-                final int a = (argb >>> 24) & 255;
+        return input;
+    }
 
-                if(a > 127) {
-                    img.setRGB(x, y, argb);
-                } else {
-                    img.setRGB(x, y, 0);
-                }
-            }
-        }
 
-        return img;
+    /** 
+     * Creates a new instance of ExampleSheetIO
+     */
+    private ExampleSheetIO()
+    {
     }
 
+
     /**
      * Creates the name of the tile sheet image file.
      * 
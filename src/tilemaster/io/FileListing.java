@@ -11,6 +11,7 @@ import java.io.File;
 import java.io.FilenameFilter;
 import java.util.Arrays;
 import java.util.List;
+import java.util.regex.Pattern;
 
 /**
  * Helper class to list files in a directory.
@@ -38,10 +39,12 @@ public class FileListing
             throw new IllegalArgumentException("Invalid path: " + file);
         }
 
+        final Pattern regex = Pattern.compile(pattern);
+
         String [] filenames = file.list(new FilenameFilter() {
             public boolean accept(File dir, String name)
             {
-                return name.toLowerCase().matches(pattern);
+                return regex.matcher(name.toLowerCase()).matches();
             }
         });
 
@@ -66,10 +69,12 @@ public class FileListing
             throw new IllegalArgumentException("Invalid path: " + file);
         }
 
+        final Pattern regex = Pattern.compile(pattern);
+
         File [] files = file.listFiles(new FilenameFilter() {
             public boolean accept(File dir, String name)
             {
-                return name.toLowerCase().matches(pattern);
+                return regex.matcher(name.toLowerCase()).matches();
             }
         });
 
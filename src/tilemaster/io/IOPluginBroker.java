@@ -11,6 +11,8 @@ import itemizer.editor.ui.SimpleMessageBox;
 import itemizer.io.ObjectBroker;
 import java.io.File;
 import java.util.Enumeration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import tilemaster.tile.TileSet;
 
 /**
@@ -21,6 +23,7 @@ import tilemaster.tile.TileSet;
 public class IOPluginBroker
 {
     private static final ObjectBroker objectBroker = new ObjectBroker();
+    private static final Map <String, String> options = new ConcurrentHashMap<String, String>();
 
     public static void registerHandler(String extension, FileTypeIO handler)
     {
@@ -45,6 +48,54 @@ public class IOPluginBroker
         return filterMask;
     }
 
+    /**
+     * Sets an option for the IO handlers. Handlers which would ask
+     * the user for settings use the option instead, if it is set.
+     *
+     * @param key The option name, like "sheet.raster".
+     * @param value The option value, null to remove the option.
+     */
+    public static void setOption(final String key, final String value)
+    {
+        if(value == null)
+        {
+            options.remove(key);
+        }
+        else
+        {
+            options.put(key, value);
+        }
+    }
+
+    /**
+     * @param key The option name.
+     * @return The option value, or null if the option is not set.
+     */
+    public static String getOption(final String key)
+    {
+        return options.get(key);
+    }
+
+    /**
+     * Finds the handler for a file, by the file extension. Unlike
+     * read() and write() this doesn't show any messages to the user.
+     *
+     * @param filename The file name.
+     * @return The handler, or null if there is no handler for the file.
+     */
+    public static FileTypeIO findHandler(final String filename)
+    {
+        final String name = new File(filename).getName();
+
+        final int p = name.indexOf('.');
+        if(p >= 0)
+        {
+            return (FileTypeIO)objectBroker.get(name.substring(p));
+        }
+
+        return null;
+    }
+
     private static FileTypeIO getHandler(final File file)
     {
         final String name = file.getName();
@@ -53,10 +104,10 @@ public class IOPluginBroker
         if(p >= 0)
         {
             final String ext = name.substring(p);
-            Object handler = objectBroker.get(ext);
+            FileTypeIO handler = findHandler(file.getPath());
             if(handler != null)
             {
-                return (FileTypeIO)handler;
+                return handler;
             }
             else
             {
@@ -127,12 +178,26 @@ public class IOPluginBroker
         }
     }
     
+    /**
+     * Releases the files which a tile set keeps open to load its
+     * images on demand. Must be called once the set is not used
+     * anymore.
+     *
+     * @param tileSet The tile set.
+     */
+    public static void release(final TileSet tileSet)
+    {
+        ZipTileArchive.release(tileSet);
+    }
+
     public static void loadPlugins()
     {
         try
         {
             Class.forName("tilemaster.io.TicaZipIo");
             Class.forName("tilemaster.io.TicaIO");
+            Class.forName("tilemaster.io.TilePackIO");
+            Class.forName("tilemaster.io.CatalogXmlIO");
         }
         catch(Exception e)
         {
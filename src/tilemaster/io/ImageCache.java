@@ -0,0 +1,73 @@
+/*
+ * File: ImageCache.java
+ * Creation: 2026_10_17
+ * Author: agent <agent@local>
+ * License: See license.txt
+ */
+
+package tilemaster.io;
+
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache for tile images which are loaded on demand. The cache
+ * has a limited pixel budget, least recently used images are
+ * released first.
+ *
+ * @author agent
+ */
+class ImageCache
+{
+    /**
+     * Default pixel budget of a cache.
+     */
+    static final long DEFAULT_PIXELS = Long.getLong("tilemaster.io.cachePixels", 16L << 20);
+
+    private final LinkedHashMap <Object, BufferedImage> cache =
+            new LinkedHashMap<Object, BufferedImage>(256, 0.75f, true);
+    private final long maxPixels;
+    private long cachedPixels;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxPixels The pixel budget.
+     */
+    ImageCache(long maxPixels)
+    {
+        this.maxPixels = maxPixels;
+    }
+
+    synchronized BufferedImage get(Object key)
+    {
+        return cache.get(key);
+    }
+
+    synchronized void put(Object key, BufferedImage img)
+    {
+        final BufferedImage old = cache.put(key, img);
+        if(old != null)
+        {
+            cachedPixels -= pixels(old);
+        }
+        cachedPixels += pixels(img);
+
+        // release least recently used images, but always
+        // keep the newest one.
+        final Iterator <Map.Entry<Object, BufferedImage>> iterator = cache.entrySet().iterator();
+        while(cachedPixels > maxPixels && cache.size() > 1)
+        {
+            final BufferedImage eldest = iterator.next().getValue();
+            iterator.remove();
+            cachedPixels -= pixels(eldest);
+        }
+    }
+
+    private static long pixels(BufferedImage img)
+    {
+        return (long)img.getWidth() * img.getHeight();
+    }
+}
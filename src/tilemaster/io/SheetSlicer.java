@@ -0,0 +1,306 @@
+/*
+ * File: SheetSlicer.java
+ * Creation: 2026_10_17
+ * Author: agent <agent@local>
+ * License: See license.txt
+ */
+
+package tilemaster.io;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Cuts the cells of a tile sheet image into single images, without
+ * decoding the whole sheet at once. The sheet is decoded in bands of
+ * cell rows, the cells of a band are cut out by the worker pool while
+ * the next band is decoded.
+ * <p>
+ * Band size is limited by the system property "tilemaster.io.sheetBandPixels".
+ * Some decoders, i.e. PNG, must decode the sheet from the top for each
+ * band, so bands shouldn't be too small either.
+ *
+ * @author agent
+ */
+public class SheetSlicer
+{
+    private static final int BAND_PIXELS = Integer.getInteger("tilemaster.io.sheetBandPixels", 1 << 24);
+
+    private final File file;
+    private final ImageInputStream stream;
+    private final ImageReader reader;
+    private final int width;
+    private final int height;
+
+    private int subsampling = 1;
+    private boolean crop;
+    private boolean opaque;
+
+    /**
+     * Opens a sheet image. Only the image header is read.
+     *
+     * @param file The sheet image file.
+     * @throws IOException In case of IO errors or unsupported image formats.
+     */
+    public SheetSlicer(File file) throws IOException
+    {
+        this.file = file;
+
+        stream = ImageIO.createImageInputStream(file);
+        if(stream == null)
+        {
+            throw new IOException("Can't open " + file);
+        }
+
+        final Iterator <ImageReader> readers = ImageIO.getImageReaders(stream);
+        if(!readers.hasNext())
+        {
+            stream.close();
+            throw new IOException("Unsupported image format: " + file);
+        }
+
+        reader = readers.next();
+        reader.setInput(stream, false, true);
+
+        width = reader.getWidth(0);
+        height = reader.getHeight(0);
+    }
+
+    public int getWidth()
+    {
+        return width;
+    }
+
+    public int getHeight()
+    {
+        return height;
+    }
+
+    /**
+     * Sets a subsampling factor, to cut scaled down cells. The
+     * decoder reads only every n-th pixel in both directions.
+     *
+     * @param subsampling The factor, 1 to read all pixels. Must
+     *                    divide the cell width and height.
+     */
+    public void setSubsampling(int subsampling)
+    {
+        this.subsampling = Math.max(1, subsampling);
+    }
+
+    /**
+     * Cropped cells lose empty space to the right and bottom. Pixels
+     * which are more than half transparent become fully transparent.
+     */
+    public void setCrop(boolean crop)
+    {
+        this.crop = crop;
+    }
+
+    /**
+     * Opaque cells have no transparent pixels.
+     */
+    public void setOpaque(boolean opaque)
+    {
+        this.opaque = opaque;
+    }
+
+    /**
+     * Cuts cells from a regular grid, row by row, left to right.
+     *
+     * @param rasterW The cell width.
+     * @param rasterH The cell height.
+     * @param stride The number of cells in one row.
+     * @param count The number of cells to cut.
+     * @return The cell images, in TYPE_INT_ARGB.
+     * @throws IOException In case of IO errors or if the cells exceed the sheet.
+     */
+    public BufferedImage [] sliceGrid(final int rasterW, final int rasterH,
+                                      final int stride, final int count) throws IOException
+    {
+        final long start = System.nanoTime();
+
+        if(rasterW % subsampling != 0 || rasterH % subsampling != 0)
+        {
+            throw new IOException("Subsampling " + subsampling + " doesn't fit the raster " +
+                                  rasterW + "x" + rasterH);
+        }
+
+        final int rows = (count + stride - 1) / stride;
+        final int usedWidth = Math.min(stride, count) * rasterW;
+
+        if(usedWidth > width || rows * rasterH > height)
+        {
+            throw new IOException(count + " cells of " + rasterW + "x" + rasterH +
+                                  " don't fit into the " + width + "x" + height +
+                                  " sheet " + file);
+        }
+
+        final BufferedImage [] cells = new BufferedImage [count];
+        if(count == 0)
+        {
+            return cells;
+        }
+
+        final int bandRows = Math.max(1, BAND_PIXELS / Math.max(1, usedWidth * rasterH));
+        final int cellW = rasterW / subsampling;
+        final int cellH = rasterH / subsampling;
+
+        final ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+
+        final ExecutorService executor = WorkerPool.create("SheetSlicer");
+        List <Future<?>> pending = new ArrayList<Future<?>>();
+        int bands = 0;
+
+        try
+        {
+            for(int row=0; row<rows; row+=bandRows)
+            {
+                final int bandStart = row;
+                final int bandEnd = Math.min(rows, row + bandRows);
+
+                param.setSourceRegion(new Rectangle(0, bandStart * rasterH,
+                                                    usedWidth, (bandEnd - bandStart) * rasterH));
+                final BufferedImage band = reader.read(0, param);
+                bands ++;
+
+                // the previous band must be done before its memory can go
+                waitFor(pending);
+                pending = new ArrayList<Future<?>>();
+
+                for(int n=bandStart*stride; n<Math.min(count, bandEnd*stride); n++)
+                {
+                    final int index = n;
+
+                    pending.add(executor.submit(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            final int x = (index % stride) * cellW;
+                            final int y = (index / stride - bandStart) * cellH;
+                            cells[index] = cut(band, x, y, cellW, cellH);
+                        }
+                    }));
+                }
+            }
+
+            waitFor(pending);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        System.err.println("Cut " + count + " cells from " + file.getName() + " in " +
+                           bands + " bands using " + WorkerPool.getThreadCount() + " workers in " +
+                           WorkerPool.millis(start, System.nanoTime()) + " ms");
+
+        return cells;
+    }
+
+    /**
+     * Releases the image reader and closes the file.
+     *
+     * @throws IOException In case of IO errors.
+     */
+    public void close() throws IOException
+    {
+        reader.dispose();
+        stream.close();
+    }
+
+    private static void waitFor(List <Future<?>> futures) throws IOException
+    {
+        try
+        {
+            for(Future<?> future : futures)
+            {
+                future.get();
+            }
+        }
+        catch(InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while cutting cells.");
+        }
+        catch(ExecutionException ex)
+        {
+            throw new IOException("Can't cut cell.", ex.getCause());
+        }
+    }
+
+    /**
+     * Copies one cell of a band into a new image, and applies
+     * the crop and opaque options.
+     */
+    private BufferedImage cut(BufferedImage band, int x, int y, int w, int h)
+    {
+        BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        int [] argb = ((DataBufferInt)img.getRaster().getDataBuffer()).getData();
+
+        band.getRGB(x, y, w, h, argb, 0, w);
+
+        if(opaque)
+        {
+            for(int i=0; i<argb.length; i++)
+            {
+                argb[i] |= 0xFF000000;
+            }
+        }
+
+        if(crop)
+        {
+            int maxX = 0;
+            int maxY = 0;
+
+            for(int i=0; i<argb.length; i++)
+            {
+                if((argb[i] >>> 24) > 127)
+                {
+                    final int px = i % w;
+                    if(px > maxX) maxX = px;
+                    maxY = i / w;
+                }
+                else
+                {
+                    argb[i] = 0;
+                }
+            }
+
+            final int cropW = maxX + 1;
+            final int cropH = maxY + 1;
+
+            if(cropW < w || cropH < h)
+            {
+                final BufferedImage cropped =
+                        new BufferedImage(cropW, cropH, BufferedImage.TYPE_INT_ARGB);
+                final int [] data = ((DataBufferInt)cropped.getRaster().getDataBuffer()).getData();
+
+                for(int row=0; row<cropH; row++)
+                {
+                    System.arraycopy(argb, row * w, data, row * cropW, cropW);
+                }
+
+                img = cropped;
+            }
+        }
+
+        return img;
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * File: SkylinePacker.java
+ * Creation: 2026_10_17
+ * Author: agent <agent@local>
+ * License: See license.txt
+ */
+
+package tilemaster.io;
+
+import java.awt.Point;
+
+/**
+ * Packs rectangles into one texture page, using the skyline
+ * bottom-left strategy. The skyline is the upper contour of the
+ * rectangles placed so far, a new rectangle is placed where its
+ * top edge ends up lowest.
+ *
+ * @author agent
+ */
+public class SkylinePacker
+{
+    private final int maxWidth;
+    private final int maxHeight;
+
+    // skyline segments, sorted by x
+    private int [] nodeX = new int [16];
+    private int [] nodeY = new int [16];
+    private int [] nodeW = new int [16];
+    private int nodeCount;
+
+    private int usedWidth;
+    private int usedHeight;
+
+    /**
+     * Creates a packer for an empty page.
+     *
+     * @param maxWidth The page width.
+     * @param maxHeight The page height.
+     */
+    public SkylinePacker(int maxWidth, int maxHeight)
+    {
+        this.maxWidth = maxWidth;
+        this.maxHeight = maxHeight;
+
+        nodeX[0] = 0;
+        nodeY[0] = 0;
+        nodeW[0] = maxWidth;
+        nodeCount = 1;
+    }
+
+    /**
+     * @return The width of the area covered by the placed rectangles.
+     */
+    public int getUsedWidth()
+    {
+        return usedWidth;
+    }
+
+    /**
+     * @return The height of the area covered by the placed rectangles.
+     */
+    public int getUsedHeight()
+    {
+        return usedHeight;
+    }
+
+    /**
+     * Places a rectangle on the page.
+     *
+     * @param width The rectangle width.
+     * @param height The rectangle height.
+     * @param result Receives the top left corner of the placed rectangle.
+     * @return true if the rectangle was placed, false if it doesn't fit.
+     */
+    public boolean insert(int width, int height, Point result)
+    {
+        int bestIndex = -1;
+        int bestTop = Integer.MAX_VALUE;
+        int bestWidth = Integer.MAX_VALUE;
+        int bestY = 0;
+
+        for(int i=0; i<nodeCount; i++)
+        {
+            final int y = fit(i, width, height);
+
+            if(y >= 0)
+            {
+                final int top = y + height;
+                if(top < bestTop || (top == bestTop && nodeW[i] < bestWidth))
+                {
+                    bestIndex = i;
+                    bestTop = top;
+                    bestWidth = nodeW[i];
+                    bestY = y;
+                }
+            }
+        }
+
+        if(bestIndex < 0)
+        {
+            return false;
+        }
+
+        result.x = nodeX[bestIndex];
+        result.y = bestY;
+
+        addLevel(bestIndex, result.x, bestY + height, width);
+
+        usedWidth = Math.max(usedWidth, result.x + width);
+        usedHeight = Math.max(usedHeight, bestY + height);
+
+        return true;
+    }
+
+    /**
+     * Checks if a rectangle fits at the start of a skyline segment.
+     *
+     * @return The y position of the rectangle, -1 if it doesn't fit.
+     */
+    private int fit(int index, int width, int height)
+    {
+        final int x = nodeX[index];
+        if(x + width > maxWidth)
+        {
+            return -1;
+        }
+
+        int y = 0;
+        int remaining = width;
+        int i = index;
+
+        while(remaining > 0)
+        {
+            y = Math.max(y, nodeY[i]);
+            if(y + height > maxHeight)
+            {
+                return -1;
+            }
+            remaining -= nodeW[i];
+            i++;
+        }
+
+        return y;
+    }
+
+    /**
+     * Adds a new skyline segment and removes the segments
+     * which are shadowed by it.
+     */
+    private void addLevel(int index, int x, int y, int width)
+    {
+        insertNode(index, x, y, width);
+
+        final int end = x + width;
+        int i = index + 1;
+
+        while(i < nodeCount && nodeX[i] < end)
+        {
+            final int shrink = end - nodeX[i];
+            if(shrink >= nodeW[i])
+            {
+                removeNode(i);
+            }
+            else
+            {
+                nodeX[i] += shrink;
+                nodeW[i] -= shrink;
+                break;
+            }
+        }
+
+        // merge neighbors of equal height
+        for(int n=0; n<nodeCount-1; n++)
+        {
+            if(nodeY[n] == nodeY[n+1])
+            {
+                nodeW[n] += nodeW[n+1];
+                removeNode(n+1);
+                n--;
+            }
+        }
+    }
+
+    private void insertNode(int index, int x, int y, int width)
+    {
+        if(nodeCount == nodeX.length)
+        {
+            nodeX = grow(nodeX);
+            nodeY = grow(nodeY);
+            nodeW = grow(nodeW);
+        }
+
+        final int tail = nodeCount - index;
+        System.arraycopy(nodeX, index, nodeX, index+1, tail);
+        System.arraycopy(nodeY, index, nodeY, index+1, tail);
+        System.arraycopy(nodeW, index, nodeW, index+1, tail);
+
+        nodeX[index] = x;
+        nodeY[index] = y;
+        nodeW[index] = width;
+        nodeCount ++;
+    }
+
+    private void removeNode(int index)
+    {
+        final int tail = nodeCount - index - 1;
+        System.arraycopy(nodeX, index+1, nodeX, index, tail);
+        System.arraycopy(nodeY, index+1, nodeY, index, tail);
+        System.arraycopy(nodeW, index+1, nodeW, index, tail);
+        nodeCount --;
+    }
+
+    private static int [] grow(int [] array)
+    {
+        final int [] result = new int [array.length * 2];
+        System.arraycopy(array, 0, result, 0, array.length);
+        return result;
+    }
+}
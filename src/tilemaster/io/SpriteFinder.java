@@ -0,0 +1,388 @@
+/*
+ * File: SpriteFinder.java
+ * Creation: 2026_10_17
+ * Author: agent <agent@local>
+ * License: See license.txt
+ */
+
+package tilemaster.io;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Finds the sprites on a sheet which has them packed loosely instead
+ * of in a grid. A sprite is a group of pixels which are not background,
+ * with at most "gap" background pixels between neighbours in any
+ * direction. Gap 0 means the pixels must touch, diagonally at least.
+ * <p>
+ * The sheet is scanned once, row by row. Each row is cut into runs
+ * of sprite pixels, and runs which are close to runs of the rows above
+ * are joined with union-find. The bounding boxes are joined too, so
+ * after the scan each group knows its box.
+ *
+ * @author agent
+ */
+public class SpriteFinder
+{
+    /**
+     * A sprite found on the sheet.
+     */
+    public static class Sprite
+    {
+        /** Position of the sprite on the sheet */
+        public final int x, y;
+
+        /** The sprite pixels, background is transparent */
+        public final BufferedImage image;
+
+        Sprite(int x, int y, BufferedImage image)
+        {
+            this.x = x;
+            this.y = y;
+            this.image = image;
+        }
+    }
+
+    private final int background;
+    private final int gap;
+
+    // runs of all rows, row after row, left to right
+    private int [] runStart;
+    private int [] runEnd;
+    private int [] runY;
+    private int [] runLabel;
+    private int runCount;
+
+    // union-find forest of the labels, with the bounding
+    // box of each tree kept at its root
+    private int [] parent;
+    private byte [] rank;
+    private int [] minX, minY, maxX, maxY;
+    private int labelCount;
+
+    /**
+     * @param background The ARGB color of the sheet background. Fully
+     * transparent pixels are background, too.
+     * @param gap The number of background pixels which may be between
+     * two pixels of one sprite.
+     */
+    public SpriteFinder(int background, int gap)
+    {
+        this.background = background;
+        this.gap = Math.max(0, gap);
+    }
+
+    /**
+     * Finds the sprites of a sheet.
+     *
+     * @param sheet The sheet image.
+     * @return The sprites, top to bottom, and left to right if
+     * they start in the same row.
+     */
+    public List <Sprite> find(BufferedImage sheet)
+    {
+        final int width = sheet.getWidth();
+        final int height = sheet.getHeight();
+        final int [] pixels = pixelsOf(sheet);
+
+        runStart = new int [1024];
+        runEnd = new int [1024];
+        runY = new int [1024];
+        runLabel = new int [1024];
+        runCount = 0;
+
+        parent = new int [256];
+        rank = new byte [256];
+        minX = new int [256];
+        minY = new int [256];
+        maxX = new int [256];
+        maxY = new int [256];
+        labelCount = 0;
+
+        label(pixels, width, height);
+        final List <Sprite> sprites = cut(pixels, width);
+
+        // the arrays can be big, don't keep them
+        runStart = runEnd = runY = runLabel = null;
+        parent = minX = minY = maxX = maxY = null;
+        rank = null;
+
+        return sprites;
+    }
+
+    private boolean isBackground(int argb)
+    {
+        return (argb >>> 24) == 0 || argb == background;
+    }
+
+    /**
+     * Cuts the rows into runs and joins the runs which are
+     * close to each other.
+     */
+    private void label(final int [] pixels, final int width, final int height)
+    {
+        // pixels this far apart still belong together
+        final int reach = gap + 1;
+
+        final int [] rowStart = new int [height + 1];
+        final int [] cursor = new int [reach];
+
+        for(int y=0; y<height; y++)
+        {
+            rowStart[y] = runCount;
+
+            final int firstRow = Math.max(0, y - reach);
+            for(int r=firstRow; r<y; r++)
+            {
+                cursor[r - firstRow] = rowStart[r];
+            }
+
+            final int row = y * width;
+            int x = 0;
+
+            while(x < width)
+            {
+                while(x < width && isBackground(pixels[row + x]))
+                {
+                    x++;
+                }
+
+                if(x == width)
+                {
+                    break;
+                }
+
+                // a gap of background pixels which is small
+                // enough doesn't end the run
+                final int first = x;
+                int last = x;
+                x++;
+
+                while(x < width && x - last <= reach)
+                {
+                    if(!isBackground(pixels[row + x]))
+                    {
+                        last = x;
+                    }
+                    x++;
+                }
+
+                int label = -1;
+
+                for(int r=firstRow; r<y; r++)
+                {
+                    // runs of a row are sorted, runs which end left
+                    // of this one end left of the next ones, too
+                    int i = cursor[r - firstRow];
+                    final int end = rowStart[r + 1];
+
+                    while(i < end && runEnd[i] < first - reach)
+                    {
+                        i++;
+                    }
+                    cursor[r - firstRow] = i;
+
+                    for(; i < end && runStart[i] <= last + reach; i++)
+                    {
+                        label = label < 0 ? find(runLabel[i]) : union(label, runLabel[i]);
+                    }
+                }
+
+                if(label < 0)
+                {
+                    label = newLabel(first, y, last);
+                }
+                else
+                {
+                    minX[label] = Math.min(minX[label], first);
+                    maxX[label] = Math.max(maxX[label], last);
+                    maxY[label] = y;
+                }
+
+                addRun(first, last, y, label);
+            }
+        }
+
+        rowStart[height] = runCount;
+    }
+
+    /**
+     * Copies the runs of each sprite into an image of its own,
+     * so parts of other sprites in the bounding box are left out.
+     */
+    private List <Sprite> cut(final int [] pixels, final int width)
+    {
+        // roots in reading order
+        final List <Integer> roots = new ArrayList<Integer>();
+        for(int i=0; i<labelCount; i++)
+        {
+            if(parent[i] == i)
+            {
+                roots.add(i);
+            }
+        }
+
+        roots.sort(new Comparator<Integer>()
+        {
+            @Override
+            public int compare(Integer a, Integer b)
+            {
+                if(minY[a] != minY[b])
+                {
+                    return minY[a] - minY[b];
+                }
+                return minX[a] - minX[b];
+            }
+        });
+
+        final int [] spriteOf = new int [labelCount];
+        final int [][] data = new int [roots.size()][];
+        final List <Sprite> sprites = new ArrayList<Sprite>(roots.size());
+
+        for(int s=0; s<roots.size(); s++)
+        {
+            final int root = roots.get(s);
+            final BufferedImage img = new BufferedImage(maxX[root] - minX[root] + 1,
+                                                        maxY[root] - minY[root] + 1,
+                                                        BufferedImage.TYPE_INT_ARGB);
+
+            spriteOf[root] = s;
+            data[s] = ((DataBufferInt)img.getRaster().getDataBuffer()).getData();
+            sprites.add(new Sprite(minX[root], minY[root], img));
+        }
+
+        for(int i=0; i<runCount; i++)
+        {
+            final int root = find(runLabel[i]);
+            final Sprite sprite = sprites.get(spriteOf[root]);
+            final int [] target = data[spriteOf[root]];
+            final int stride = sprite.image.getWidth();
+            final int offset = (runY[i] - sprite.y) * stride - sprite.x;
+            final int row = runY[i] * width;
+
+            for(int x=runStart[i]; x<=runEnd[i]; x++)
+            {
+                final int argb = pixels[row + x];
+                target[offset + x] = isBackground(argb) ? 0 : argb;
+            }
+        }
+
+        return sprites;
+    }
+
+    private int newLabel(int x0, int y, int x1)
+    {
+        if(labelCount == parent.length)
+        {
+            final int size = labelCount * 2;
+            parent = Arrays.copyOf(parent, size);
+            rank = Arrays.copyOf(rank, size);
+            minX = Arrays.copyOf(minX, size);
+            minY = Arrays.copyOf(minY, size);
+            maxX = Arrays.copyOf(maxX, size);
+            maxY = Arrays.copyOf(maxY, size);
+        }
+
+        final int label = labelCount++;
+        parent[label] = label;
+        minX[label] = x0;
+        minY[label] = y;
+        maxX[label] = x1;
+        maxY[label] = y;
+
+        return label;
+    }
+
+    private void addRun(int x0, int x1, int y, int label)
+    {
+        if(runCount == runStart.length)
+        {
+            final int size = runCount * 2;
+            runStart = Arrays.copyOf(runStart, size);
+            runEnd = Arrays.copyOf(runEnd, size);
+            runY = Arrays.copyOf(runY, size);
+            runLabel = Arrays.copyOf(runLabel, size);
+        }
+
+        runStart[runCount] = x0;
+        runEnd[runCount] = x1;
+        runY[runCount] = y;
+        runLabel[runCount] = label;
+        runCount++;
+    }
+
+    private int find(int label)
+    {
+        while(parent[label] != label)
+        {
+            // path halving
+            parent[label] = parent[parent[label]];
+            label = parent[label];
+        }
+
+        return label;
+    }
+
+    /**
+     * Joins two trees and their bounding boxes.
+     *
+     * @return The root of the joined tree.
+     */
+    private int union(int a, int b)
+    {
+        a = find(a);
+        b = find(b);
+
+        if(a == b)
+        {
+            return a;
+        }
+
+        if(rank[a] < rank[b])
+        {
+            final int t = a;
+            a = b;
+            b = t;
+        }
+        else if(rank[a] == rank[b])
+        {
+            rank[a]++;
+        }
+
+        parent[b] = a;
+        minX[a] = Math.min(minX[a], minX[b]);
+        minY[a] = Math.min(minY[a], minY[b]);
+        maxX[a] = Math.max(maxX[a], maxX[b]);
+        maxY[a] = Math.max(maxY[a], maxY[b]);
+
+        return a;
+    }
+
+    /**
+     * @return The sheet pixels in TYPE_INT_ARGB, row after row.
+     */
+    private static int [] pixelsOf(BufferedImage sheet)
+    {
+        if(sheet.getType() == BufferedImage.TYPE_INT_ARGB &&
+           sheet.getRaster().getParent() == null)
+        {
+            return ((DataBufferInt)sheet.getRaster().getDataBuffer()).getData();
+        }
+
+        final BufferedImage argb = new BufferedImage(sheet.getWidth(), sheet.getHeight(),
+                                                     BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D gr = argb.createGraphics();
+        gr.setComposite(AlphaComposite.Src);
+        gr.drawImage(sheet, 0, 0, null);
+        gr.dispose();
+
+        return ((DataBufferInt)argb.getRaster().getDataBuffer()).getData();
+    }
+}
@@ -10,7 +10,11 @@ package tilemaster.io;
 import itemizer.item.ItemConfiguration;
 import java.awt.image.BufferedImage;
 import java.io.*;
-import java.util.List;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 import javax.imageio.ImageIO;
 import tilemaster.tile.TileDescriptor;
 import tilemaster.tile.TileSet;
@@ -24,6 +28,12 @@ import tilemaster.tile.TileSet;
 public class TicaIO implements FileTypeIO
 {
     public static final String CATALOG_XML = "catalog.xml";
+
+    /**
+     * The folders which hold the last saved state of the tile sets.
+     */
+    private final Map <TileSet, File> savedLocations =
+            Collections.synchronizedMap(new WeakHashMap<TileSet, File>());
     
     static
     {
@@ -61,6 +71,7 @@ public class TicaIO implements FileTypeIO
             {
                 BufferedImage img = ImageIO.read(file);
                 tld.img = img;
+                tld.markClean();
             }
             else
             {
@@ -77,10 +88,14 @@ public class TicaIO implements FileTypeIO
                 else
                 {
                     tld.img = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+                    tld.markClean();
+                    result.setEmptyIfBlank(i);
                 }
             }
         }
         
+        savedLocations.put(result, catalog.getAbsoluteFile().getParentFile());
+        
         /*
         FileListing listing = new FileListing();
         List <File> files = listing.listFiles(catalog, ".*\\.png");
@@ -115,46 +130,140 @@ public class TicaIO implements FileTypeIO
     @Override
     public void write(String filename, TileSet tileSet) throws IOException
     {
-        File catalogFile = new File(filename);
+        final long start = System.nanoTime();
+
+        File catalogFile = new File(filename).getAbsoluteFile();
         File catalogDir = catalogFile.getParentFile();
 
-        Writer writer = new FileWriter(filename);
+        Writer writer = new BufferedWriter(new FileWriter(filename));
         tileSet.write(writer);
         writer.close();
 
         FileOutputStream fos = new FileOutputStream(new File(catalogDir, CATALOG_XML));
-        writer = new OutputStreamWriter(fos, "UTF-8");
+        writer = new BufferedWriter(new OutputStreamWriter(fos, "UTF-8"));
         tileSet.writeXML(writer);
         writer.close();
-        
+
+        // only if the set was loaded from or saved to this folder
+        // before, the clean tiles are known to be on disk already.
+        // Snapshots share the location with their set.
+        final boolean incremental = catalogDir.equals(savedLocations.get(tileSet.getOrigin()));
+
         FileListing listing = new FileListing();
-        List <File> files = listing.listFiles(catalogDir, ".*\\.png");
+        final Set <String> existing =
+                new HashSet<String>(listing.listNames(catalogDir, ".*\\.png"));
+        final Set <String> wanted = new HashSet<String>();
 
-        // Remove old files
-        for(File file : files)
+        for(int i=0; i<tileSet.size(); i++)
         {
-            file.delete();
+            final TileDescriptor tld = tileSet.get(i);
+
+            // empty images are not stored
+            if(tld.getWidth() > 1)
+            {
+                wanted.add(makeImageName(tld.tileId, tld.getString(0)));
+            }
         }
 
         final String format = "PNG";
+        int written = 0;
+        int renamed = 0;
+        int removed = 0;
 
         for(int i=0; i<tileSet.size(); i++)
         {
             final TileDescriptor tld = tileSet.get(i);
 
             // Hajo: skip empty images
-            if(tld.img.getWidth() > 1)
+            if(tld.getWidth() > 1)
             {
-                final String name = tld.getString(0) != null ? tld.getString(0) : "";
-                final String pngfile =
-                        "" + tld.tileId + "-" + name + ".png";
-                ImageIO.write(tld.img, format, new File(catalogDir, pngfile));
+                final String pngfile = makeImageName(tld.tileId, tld.getString(0));
+
+                if(incremental && !tld.isDirty() && existing.contains(pngfile))
+                {
+                    // unchanged
+                }
+                else if(incremental && !tld.isImageDirty() && 
+                        renameImage(catalogDir, tld, pngfile, existing, wanted))
+                {
+                    renamed ++;
+                }
+                else
+                {
+                    ImageIO.write(tld.getImage(), format, new File(catalogDir, pngfile));
+                    existing.add(pngfile);
+                    written ++;
+                }
+
+                // tiles opened from catalog.xml load their images
+                // from the files, which might be renamed or removed now
+                CatalogXmlIO.rebindImage(tld, new File(catalogDir, pngfile));
             }
             else
             {
                 // System.err.println("Skipping empty tile " + i);                
             }
         }
+
+        // Remove stale files
+        for(String pngfile : existing)
+        {
+            if(!wanted.contains(pngfile) && new File(catalogDir, pngfile).delete())
+            {
+                removed ++;
+            }
+        }
+
+        tileSet.markClean();
+
+        savedLocations.put(tileSet.getOrigin(), catalogDir);
+
+        System.err.println("Saved " + filename + " in " + 
+                           ((System.nanoTime() - start) / 1000000L) + " ms: " +
+                           written + " of " + tileSet.size() + " images written, " +
+                           renamed + " renamed, " + removed + " removed.");
+    }
+
+    /**
+     * Tries to rename the image file of a tile, whose image is unchanged
+     * but whose name or id changed.
+     *
+     * @return true if the file was renamed.
+     */
+    private boolean renameImage(File catalogDir, TileDescriptor tld, String pngfile,
+                                Set <String> existing, Set <String> wanted)
+    {
+        final String oldName = tld.getSavedName();
+
+        if(oldName != null)
+        {
+            final String oldfile = makeImageName(tld.getSavedId(), oldName);
+
+            // don't take a file which is needed by another tile
+            // and don't overwrite existing files
+            if(existing.contains(oldfile) && !wanted.contains(oldfile) &&
+               !existing.contains(pngfile) &&
+               new File(catalogDir, oldfile).renameTo(new File(catalogDir, pngfile)))
+            {
+                existing.remove(oldfile);
+                existing.add(pngfile);
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Creates the image file name for a tile.
+     *
+     * @param id The tile id.
+     * @param name The tile name, might be null.
+     * @return The image file name.
+     */
+    static String makeImageName(int id, String name)
+    {
+        return "" + id + "-" + (name != null ? name : "") + ".png";
     }
 
 
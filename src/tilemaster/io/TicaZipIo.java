@@ -10,12 +10,28 @@ package tilemaster.io;
 import itemizer.item.ItemConfiguration;
 import java.awt.image.BufferedImage;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
 import javax.imageio.ImageIO;
 import tilemaster.tile.TileDescriptor;
+import tilemaster.tile.TileImageSource;
 import tilemaster.tile.TileSet;
 
 
@@ -34,6 +50,35 @@ public class TicaZipIo implements FileTypeIO
     public static final String CATALOG_FILE = "catalog.tica";
     public static final String CATALOG_XML = "catalog.xml";
 
+    /**
+     * Lists the content hash of the image of each tile. Each unique
+     * image is stored once, as IMAGE_DIR + hash + ".png". Archives
+     * without image index store one "index,id,name.png" entry per tile.
+     */
+    public static final String IMAGE_INDEX = "images.lst";
+    public static final String IMAGE_DIR = "images/";
+
+    /**
+     * Version of the catalog in archives with image index. Tilemaster
+     * versions before the image index expect one "index,id,name.png"
+     * entry per tile, and would fail on the hash named entries. They
+     * reject catalogs with unknown version, so they stop right away
+     * with "Wrong version: v.3".
+     */
+    private static final String CATALOG_VERSION = "v.3";
+
+    /**
+     * Marks hashes of PNG data, used for images copied unchanged from
+     * archives without image index. Other hashes are pixel hashes.
+     */
+    private static final String FILE_HASH_PREFIX = "png-";
+
+    /**
+     * Sets with at least this many tiles are opened without
+     * decoding the images. The images are decoded on demand.
+     */
+    private static final int LAZY_THRESHOLD = Integer.getInteger("tilemaster.io.lazyThreshold", 2000);
+
     /**
      * Reads images from a tile set zipfile.
      *
@@ -44,47 +89,317 @@ public class TicaZipIo implements FileTypeIO
     @Override
     public TileSet read(String filename) throws IOException
     {
-        ZipFile zipFile = new ZipFile(filename);
+        final long start = System.nanoTime();
+        final ZipFile zipFile = new ZipFile(filename);
+        boolean keepOpen = false;
+
+        try
+        {
+            ZipEntry catalog = zipFile.getEntry(CATALOG_FILE);
+
+            InputStream in = zipFile.getInputStream(catalog);
 
-        ZipEntry catalog = zipFile.getEntry(CATALOG_FILE);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+            TileSet result = new TileSet(new ItemConfiguration(), 0);
+            result.read(reader);
+            in.close();
 
-        InputStream in = zipFile.getInputStream(catalog);
+            final long catalogDone = System.nanoTime();
 
-        BufferedReader reader = new BufferedReader(new InputStreamReader(in));
-        TileSet result = new TileSet(new ItemConfiguration(), 0);
-        result.read(reader);
-        in.close();
+            // tiles with equal images share one entry
+            final int tileCount = result.size();
+            final int [] slots = new int [tileCount];
+            final ZipEntry imageIndex = zipFile.getEntry(IMAGE_INDEX);
+            final ZipEntry [] pngEntries = (imageIndex != null)
+                    ? listUniqueEntries(zipFile, imageIndex, slots)
+                    : listImageEntries(zipFile, slots);
 
-        Enumeration entries = zipFile.entries();
-        
-        String pattern = ".*\\.png";
+            if(tileCount >= LAZY_THRESHOLD)
+            {
+                // big set, decode images only when needed
+                final ZipTileArchive archive = new ZipTileArchive(new File(filename), zipFile);
+                keepOpen = true;
+
+                final ZipTileArchive.Entry [] sources = new ZipTileArchive.Entry [pngEntries.length];
+                for(int n=0; n<pngEntries.length; n++)
+                {
+                    sources[n] = archive.entry(pngEntries[n].getName());
+                }
+
+                for(int i=0; i<tileCount; i++)
+                {
+                    final TileDescriptor tld = result.get(i);
+                    if(slots[i] >= 0)
+                    {
+                        tld.setImageSource(sources[slots[i]]);
+                    }
+                    else
+                    {
+                        tld.img = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+                        result.setEmptyIfBlank(i);
+                    }
+                }
+
+                System.err.println("Indexed " + tileCount + " tiles (" + pngEntries.length +
+                                   " images) from " + filename +
+                                   " for loading on demand: catalog " +
+                                   WorkerPool.millis(start, catalogDone) + " ms, index " +
+                                   WorkerPool.millis(catalogDone, System.nanoTime()) + " ms");
+
+                return result;
+            }
+
+            final BufferedImage [] images = decodeImages(zipFile, pngEntries);
+
+            final long decodeDone = System.nanoTime();
+
+            // assign in index order, so that the result does not
+            // depend on the order in which the workers finished.
+            for(int i=0; i<tileCount; i++)
+            {
+                if(slots[i] >= 0)
+                {
+                    result.get(i).img = images[slots[i]];
+                }
+                else
+                {
+                    result.get(i).img = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+                    result.setEmptyIfBlank(i);
+                }
+            }
+
+            final long assemblyDone = System.nanoTime();
+
+            System.err.println("Read " + tileCount + " tiles (" + pngEntries.length +
+                               " images) from " + filename +
+                               " using " + WorkerPool.getThreadCount() + " workers: catalog " +
+                               WorkerPool.millis(start, catalogDone) + " ms, decode " +
+                               WorkerPool.millis(catalogDone, decodeDone) + " ms, assembly " +
+                               WorkerPool.millis(decodeDone, assemblyDone) + " ms");
+
+            return result;
+        }
+        finally
+        {
+            if(!keepOpen)
+            {
+                zipFile.close();
+            }
+        }
+    }
+
+    /**
+     * Finds the PNG entry for each tile of the set, in archives
+     * with one entry per tile. If there are several entries for
+     * one tile, the last one wins.
+     *
+     * @param zipFile The zipfile to scan.
+     * @param slots Receives the index of the entry for each tile, -1
+     *              for tiles without image.
+     * @return The PNG entries.
+     * @throws IOException If an entry index is out of range.
+     */
+    private ZipEntry [] listImageEntries(ZipFile zipFile, int [] slots) throws IOException
+    {
+        final int tileCount = slots.length;
+        final ZipEntry [] pngEntries = new ZipEntry [tileCount];
+        final Enumeration <? extends ZipEntry> entries = zipFile.entries();
 
         while(entries.hasMoreElements())
         {
-            ZipEntry entry = (ZipEntry)entries.nextElement();
-            if(entry.getName().matches(pattern))
-            {
-                InputStream pngIn = zipFile.getInputStream(entry);
-                BufferedImage img = ImageIO.read(pngIn);
-                pngIn.close();
-                
-                String [] parts = entry.getName().split(",");
-                String indexString = parts[0];
-                int dotPos = indexString.indexOf('.');
-                if(dotPos >= 0)
+            ZipEntry entry = entries.nextElement();
+            if(entry.getName().endsWith(".png"))
+            {
+                final int index = indexFromName(entry.getName());
+                if(index < 0 || index >= tileCount)
                 {
-                    indexString = indexString.substring(0, dotPos);
+                    throw new IOException("Tile index out of range: " + entry.getName());
                 }
+                pngEntries[index] = entry;
+            }
+        }
 
-                int index = Integer.parseInt(indexString);
-                result.get(index).img = img;
+        // keep only the tiles which have an image
+        int count = 0;
+        for(int i=0; i<tileCount; i++)
+        {
+            if(pngEntries[i] != null)
+            {
+                pngEntries[count] = pngEntries[i];
+                slots[i] = count++;
+            }
+            else
+            {
+                slots[i] = -1;
             }
         }
 
-        zipFile.close();
+        final ZipEntry [] result = new ZipEntry [count];
+        System.arraycopy(pngEntries, 0, result, 0, count);
         return result;
     }
 
+    /**
+     * Finds the PNG entry for each tile of the set, in archives
+     * which store each unique image once.
+     *
+     * @param zipFile The zipfile to read from.
+     * @param imageIndex The image index entry.
+     * @param slots Receives the index of the entry for each tile.
+     * @return The unique PNG entries.
+     * @throws IOException In case of IO errors or missing entries.
+     */
+    private ZipEntry [] listUniqueEntries(ZipFile zipFile, ZipEntry imageIndex,
+                                          int [] slots) throws IOException
+    {
+        final BufferedReader reader =
+                new BufferedReader(new InputStreamReader(zipFile.getInputStream(imageIndex), "UTF-8"));
+
+        try
+        {
+            String line = reader.readLine();
+            if(!"Image Index".equals(line))
+            {
+                throw new IOException("Wrong image index header: " + line);
+            }
+
+            line = reader.readLine();
+            if(!"v.1".equals(line) && !"v.2".equals(line))
+            {
+                throw new IOException("Unsupported image index version: " + line);
+            }
+
+            final int count = Integer.parseInt(reader.readLine());
+            if(count != slots.length)
+            {
+                throw new IOException("Image index has " + count + " tiles, catalog has " + slots.length);
+            }
+
+            final Map <String, Integer> known = new HashMap<String, Integer>();
+            final List <ZipEntry> pngEntries = new ArrayList<ZipEntry>();
+
+            for(int i=0; i<count; i++)
+            {
+                final String hash = reader.readLine();
+                if(hash == null)
+                {
+                    throw new IOException("Image index is truncated.");
+                }
+
+                if(hash.length() == 0)
+                {
+                    // v.2, tile without image
+                    slots[i] = -1;
+                    continue;
+                }
+
+                Integer slot = known.get(hash);
+                if(slot == null)
+                {
+                    final String name = IMAGE_DIR + hash + ".png";
+                    final ZipEntry entry = zipFile.getEntry(name);
+                    if(entry == null)
+                    {
+                        throw new IOException("Missing image entry: " + name);
+                    }
+
+                    slot = pngEntries.size();
+                    pngEntries.add(entry);
+                    known.put(hash, slot);
+                }
+
+                slots[i] = slot;
+            }
+
+            return pngEntries.toArray(new ZipEntry [pngEntries.size()]);
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    /**
+     * Decodes the given PNG entries concurrently on a bounded
+     * worker pool.
+     *
+     * @param zipFile The zipfile to read from.
+     * @param pngEntries The entries to decode.
+     * @return The decoded images, in the same order as the entries.
+     * @throws IOException In case of IO errors.
+     */
+    private BufferedImage [] decodeImages(final ZipFile zipFile,
+                                          final ZipEntry [] pngEntries) throws IOException
+    {
+        final ExecutorService executor = WorkerPool.create("TicaZipIo-decoder");
+        final List <Future<BufferedImage>> futures =
+                new ArrayList<Future<BufferedImage>>(pngEntries.length);
+
+        try
+        {
+            for(final ZipEntry entry : pngEntries)
+            {
+                futures.add(executor.submit(new Callable<BufferedImage>()
+                {
+                    @Override
+                    public BufferedImage call() throws IOException
+                    {
+                        InputStream pngIn = zipFile.getInputStream(entry);
+                        try
+                        {
+                            return ImageIO.read(pngIn);
+                        }
+                        finally
+                        {
+                            pngIn.close();
+                        }
+                    }
+                }));
+            }
+
+            final BufferedImage [] images = new BufferedImage [futures.size()];
+
+            for(int i=0; i<images.length; i++)
+            {
+                images[i] = futures.get(i).get();
+            }
+
+            return images;
+        }
+        catch(InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while decoding tiles.");
+        }
+        catch(ExecutionException ex)
+        {
+            throw new IOException("Can't decode tile image.", ex.getCause());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Extracts the tile index from a zip entry name.
+     *
+     * @param name The entry name, "index,id,name.png" or "index.png"
+     * @return The tile index.
+     */
+    private static int indexFromName(String name)
+    {
+        String [] parts = name.split(",");
+        String indexString = parts[0];
+        int dotPos = indexString.indexOf('.');
+        if(dotPos >= 0)
+        {
+            indexString = indexString.substring(0, dotPos);
+        }
+
+        return Integer.parseInt(indexString);
+    }
+
 
     /**
      * Writes images to a tile set zipfile.
@@ -96,14 +411,20 @@ public class TicaZipIo implements FileTypeIO
     @Override
     public void write(String filename, TileSet tileSet) throws IOException
     {
-        File file = new File(filename);
+        final long start = System.nanoTime();
+        final File file = new File(filename).getAbsoluteFile();
+
+        // tiles might still be loaded on demand from the
+        // target file, so write to a temporary file first.
+        final File tmpFile = new File(file.getPath() + ".tmp");
 
-        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        ZipOutputStream out =
+                new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
 
         ZipEntry catalog = new ZipEntry(CATALOG_FILE);
         out.putNextEntry(catalog);
         OutputStreamWriter writer = new OutputStreamWriter(out);
-        tileSet.write(writer);
+        tileSet.write(writer, CATALOG_VERSION);
         writer.flush();
         out.closeEntry();
 
@@ -114,22 +435,341 @@ public class TicaZipIo implements FileTypeIO
         xmlWriter.flush();
         out.closeEntry();
 
-        final String format = "PNG";
+        final long catalogDone = System.nanoTime();
+
+        final int tileCount = tileSet.size();
+        final ExecutorService executor = WorkerPool.create("TicaZipIo-encoder");
+
+        // only a limited number of encoded tiles may wait for
+        // output, this bounds the memory use of the pipeline.
+        final int window = WorkerPool.getThreadCount() * 4;
+        final ArrayDeque <Future<EncodedImage>> pending =
+                new ArrayDeque<Future<EncodedImage>>(window);
 
-        for(int i=0; i<tileSet.size(); i++)
+        // the first worker which sees a hash encodes the image
+        final ConcurrentHashMap <String, Boolean> claimed =
+                new ConcurrentHashMap<String, Boolean>();
+        final String [] hashes = new String [tileCount];
+
+        // on demand tiles from the target file, with their new entry names
+        final Map <ZipTileArchive.Entry, String> rebind =
+                new HashMap<ZipTileArchive.Entry, String>();
+
+        long bytes = 0;
+        int unique = 0;
+        boolean ok = false;
+
+        try
         {
-            final TileDescriptor tld = tileSet.get(i);
-            final String name = tld.getString(0) != null ? tld.getString(0) : "";
-            final String pngfile =
-                    "" + i + "," + tld.tileId + "," + name + ".png";
+            int submitted = 0;
 
-            ZipEntry pngzip = new ZipEntry(pngfile);
-            out.putNextEntry(pngzip);
-            ImageIO.write(tld.img, format, out);
+            for(int i=0; i<tileCount; i++)
+            {
+                while(submitted < tileCount && submitted < i + window)
+                {
+                    pending.add(executor.submit(encoder(tileSet.get(submitted), claimed)));
+                    submitted ++;
+                }
+
+                final TileDescriptor tld = tileSet.get(i);
+                final EncodedImage png = pending.remove().get();
+                final String pngfile = IMAGE_DIR + png.hash + ".png";
+
+                hashes[i] = png.hash;
+
+                if(png.data != null)
+                {
+                    // PNG data is compressed already, don't deflate it again
+                    ZipEntry pngzip = new ZipEntry(pngfile);
+                    pngzip.setMethod(ZipEntry.STORED);
+                    pngzip.setSize(png.data.length);
+                    pngzip.setCompressedSize(png.data.length);
+                    pngzip.setCrc(png.crc);
+
+                    out.putNextEntry(pngzip);
+                    out.write(png.data);
+                    out.closeEntry();
+
+                    bytes += png.data.length;
+                    unique ++;
+                }
+
+                if(tld.img == null && tld.getImageSource() instanceof ZipTileArchive.Entry)
+                {
+                    final ZipTileArchive.Entry entry = (ZipTileArchive.Entry)tld.getImageSource();
+                    if(file.equals(entry.getArchive().getFile()))
+                    {
+                        rebind.put(entry, pngfile);
+                    }
+                }
+            }
+
+            out.putNextEntry(new ZipEntry(IMAGE_INDEX));
+            final Writer indexWriter = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+            indexWriter.write("Image Index\n");
+            indexWriter.write("v.2\n");
+            indexWriter.write("" + tileCount + "\n");
+            for(int i=0; i<tileCount; i++)
+            {
+                indexWriter.write(hashes[i]);
+                indexWriter.write('\n');
+            }
+            indexWriter.flush();
             out.closeEntry();
+
+            out.close();
+            ok = true;
+        }
+        catch(InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while encoding tiles.");
+        }
+        catch(ExecutionException ex)
+        {
+            throw new IOException("Can't encode tile image.", ex.getCause());
+        }
+        finally
+        {
+            executor.shutdownNow();
+
+            if(!ok)
+            {
+                out.close();
+                tmpFile.delete();
+            }
+        }
+
+        replaceFile(tmpFile, file, rebind);
+
+        final long encodeDone = System.nanoTime();
+
+        System.err.println("Wrote " + tileCount + " tiles as " + unique + " unique images (" +
+                           (unique > 0 ? String.format("%.2f", (double)tileCount / unique) : "0") +
+                           ":1 dedup, " + bytes + " bytes) to " + filename +
+                           " using " + WorkerPool.getThreadCount() + " workers: catalog " +
+                           WorkerPool.millis(start, catalogDone) + " ms, encode " +
+                           WorkerPool.millis(catalogDone, encodeDone) + " ms");
+    }
+
+    /**
+     * Moves the newly written file in place of the target file, and
+     * lets the on demand tiles of the target file read from the new file.
+     * All archives open on the target file are closed meanwhile, some
+     * systems can't replace open files.
+     *
+     * @param tmpFile The newly written file.
+     * @param file The target file.
+     * @param rebind The on demand tiles of the target file and their new entry names.
+     * @throws IOException In case of IO errors.
+     */
+    private void replaceFile(File tmpFile, File file, 
+                             Map <ZipTileArchive.Entry, String> rebind) throws IOException
+    {
+        final Set <ZipTileArchive> archives = ZipTileArchive.openOn(file);
+
+        for(ZipTileArchive.Entry entry : rebind.keySet())
+        {
+            archives.add(entry.getArchive());
+        }
+
+        for(ZipTileArchive archive : archives)
+        {
+            archive.close();
+        }
+
+        try
+        {
+            if(file.exists() && !file.delete())
+            {
+                throw new IOException("Can't replace " + file + ", new data is in " + tmpFile);
+            }
+
+            if(!tmpFile.renameTo(file))
+            {
+                throw new IOException("Can't rename " + tmpFile + " to " + file);
+            }
+
+            // reads wait until reopen(), then they find the new names
+            for(Map.Entry <ZipTileArchive.Entry, String> entry : rebind.entrySet())
+            {
+                entry.getKey().setName(entry.getValue());
+            }
+        }
+        finally
+        {
+            for(ZipTileArchive archive : archives)
+            {
+                archive.reopen();
+            }
+        }
+    }
+
+    /**
+     * Creates a task which hashes a tile image and encodes it to PNG
+     * data in memory, if no other task claimed the same hash before.
+     * Images which were not loaded yet are copied without decoding.
+     *
+     * @param tld The tile to encode.
+     * @param claimed The hashes of the images which are encoded already.
+     * @return The encoding task.
+     */
+    private static Callable<EncodedImage> encoder(final TileDescriptor tld,
+                                                  final ConcurrentHashMap <String, Boolean> claimed)
+    {
+        final BufferedImage img = tld.img;
+        final TileImageSource source = tld.getImageSource();
+        final boolean empty = tld.isEmpty();
+
+        return new Callable<EncodedImage>()
+        {
+            @Override
+            public EncodedImage call() throws IOException
+            {
+                final ZipTileArchive.Entry entry =
+                        (img == null && source instanceof ZipTileArchive.Entry)
+                        ? (ZipTileArchive.Entry)source : null;
+
+                if(entry != null)
+                {
+                    String hash = hashFromName(entry.getName());
+                    byte [] data = null;
+
+                    if(hash == null)
+                    {
+                        // entry from an archive without image index. Hashing
+                        // the PNG data avoids decoding, but only finds equal files.
+                        data = entry.readRaw();
+                        hash = FILE_HASH_PREFIX + hex(sha1().digest(data));
+                    }
+
+                    if(claimed.putIfAbsent(hash, Boolean.TRUE) != null)
+                    {
+                        return new EncodedImage(hash, null);
+                    }
+
+                    return new EncodedImage(hash, data != null ? data : entry.readRaw());
+                }
+
+                if(empty)
+                {
+                    // empty slots have no image, see TileSet.isEmpty()
+                    return new EncodedImage("", null);
+                }
+
+                final BufferedImage image = (img != null) ? img : tld.getImage();
+                final String hash = pixelHash(image);
+
+                if(claimed.putIfAbsent(hash, Boolean.TRUE) != null)
+                {
+                    return new EncodedImage(hash, null);
+                }
+
+                final ByteArrayOutputStream buffer = new ByteArrayOutputStream(4096);
+                ImageIO.write(image, "PNG", buffer);
+                return new EncodedImage(hash, buffer.toByteArray());
+            }
+        };
+    }
+
+    /**
+     * Computes the content hash of an image, from its size and
+     * ARGB pixels. Images with equal hashes are stored once.
+     *
+     * @param img The image to hash.
+     * @return The hash as hex string.
+     */
+    private static String pixelHash(BufferedImage img)
+    {
+        final MessageDigest digest = sha1();
+
+        final int width = img.getWidth();
+        final int height = img.getHeight();
+        final int [] row = new int [width];
+        final ByteBuffer bytes = ByteBuffer.allocate(Math.max(width * 4, 8));
+
+        bytes.putInt(width).putInt(height);
+        digest.update(bytes.array(), 0, 8);
+
+        for(int y=0; y<height; y++)
+        {
+            img.getRGB(0, y, width, 1, row, 0, width);
+            bytes.clear();
+            bytes.asIntBuffer().put(row);
+            digest.update(bytes.array(), 0, width * 4);
+        }
+
+        return hex(digest.digest());
+    }
+
+    private static MessageDigest sha1()
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-1");
+        }
+        catch(NoSuchAlgorithmException ex)
+        {
+            // every Java platform must support SHA-1
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static String hex(byte [] data)
+    {
+        final StringBuilder hex = new StringBuilder(data.length * 2);
+        for(byte b : data)
+        {
+            hex.append(Character.forDigit((b >> 4) & 15, 16));
+            hex.append(Character.forDigit(b & 15, 16));
+        }
+
+        return hex.toString();
+    }
+
+    /**
+     * Extracts the content hash from an image entry name.
+     *
+     * @param name The entry name.
+     * @return The hash, or null if the entry is not named by hash.
+     */
+    private static String hashFromName(String name)
+    {
+        if(name.startsWith(IMAGE_DIR) && name.endsWith(".png"))
+        {
+            return name.substring(IMAGE_DIR.length(), name.length() - 4);
         }
 
-        out.close();
+        return null;
+    }
+
+    /**
+     * PNG data of one tile, ready to be stored in the archive.
+     */
+    private static class EncodedImage
+    {
+        final String hash;
+
+        /** PNG data, null if the image is stored for another tile */
+        final byte [] data;
+        final long crc;
+
+        EncodedImage(String hash, byte [] data)
+        {
+            this.hash = hash;
+            this.data = data;
+
+            if(data != null)
+            {
+                final CRC32 crc32 = new CRC32();
+                crc32.update(data, 0, data.length);
+                this.crc = crc32.getValue();
+            }
+            else
+            {
+                this.crc = 0;
+            }
+        }
     }
 
 
@@ -0,0 +1,351 @@
+/*
+ * File: TilePack.java
+ * Creation: 2026_10_17
+ * Author: agent <agent@local>
+ * License: See license.txt
+ */
+
+package tilemaster.io;
+
+import itemizer.item.ItemConfiguration;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import tilemaster.tile.TileDescriptor;
+import tilemaster.tile.TileImageSource;
+
+/**
+ * Read access to a tile pack file. A tile pack is a single binary
+ * file with a fixed width tile index and compressed pixel blobs.
+ * The file is memory mapped, looking up a tile is a constant time
+ * index access and reading the pixels of a tile decompresses one
+ * slice of the mapped file.
+ * <p>
+ * Layout, all numbers big endian:
+ * <pre>
+ * header      magic, version, tile count, raster, configuration and index location
+ * config      item configuration in catalog text format, UTF-8
+ * index       one fixed width record per tile, see RECORD_SIZE
+ * metadata    per tile, ints and UTF strings in configuration order
+ * pixels      per tile, deflated ARGB ints
+ * </pre>
+ *
+ * @author agent
+ */
+public class TilePack
+{
+    private static final Logger LOGGER = Logger.getLogger(TilePack.class.getName());
+
+    static final int MAGIC = 0x544D504B;   // "TMPK"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 48;
+
+    // index record layout
+    static final int RECORD_SIZE = 56;
+    static final int REC_ID = 0;
+    static final int REC_WIDTH = 4;
+    static final int REC_HEIGHT = 8;
+    static final int REC_OFFX = 12;
+    static final int REC_OFFY = 16;
+    static final int REC_FOOTX = 20;
+    static final int REC_FOOTY = 24;
+    static final int REC_PIXEL_LENGTH = 28;
+    static final int REC_PIXEL_OFFSET = 32;
+    static final int REC_META_OFFSET = 40;
+    static final int REC_META_LENGTH = 48;
+
+    private final File file;
+    private final MappedByteBuffer buffer;
+    private final int tileCount;
+    private final int rasterX;
+    private final int rasterY;
+    private final int indexOffset;
+    private final ItemConfiguration configuration;
+
+    private final ImageCache cache = new ImageCache(ImageCache.DEFAULT_PIXELS);
+
+    /**
+     * Opens a tile pack file. Only the header and the configuration
+     * are read, tiles are read on request.
+     *
+     * @param file The file to open.
+     * @throws IOException In case of IO errors or if the file is no tile pack.
+     */
+    public TilePack(File file) throws IOException
+    {
+        this.file = file.getAbsoluteFile();
+
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+        try
+        {
+            final FileChannel channel = raf.getChannel();
+            if(channel.size() > Integer.MAX_VALUE)
+            {
+                throw new IOException("Tile pack too large: " + file);
+            }
+
+            // the mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.BIG_ENDIAN);
+        }
+        finally
+        {
+            raf.close();
+        }
+
+        if(buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+        {
+            throw new IOException("Not a tile pack: " + file);
+        }
+        if(buffer.getInt(4) != VERSION)
+        {
+            throw new IOException("Unsupported tile pack version: " + buffer.getInt(4));
+        }
+
+        tileCount = buffer.getInt(8);
+        rasterX = buffer.getInt(12);
+        rasterY = buffer.getInt(16);
+
+        final int configLength = buffer.getInt(20);
+        final int configOffset = (int)buffer.getLong(24);
+        indexOffset = (int)buffer.getLong(32);
+
+        if(indexOffset + (long)tileCount * RECORD_SIZE > buffer.capacity())
+        {
+            throw new IOException("Truncated tile pack: " + file);
+        }
+
+        configuration = new ItemConfiguration();
+        final BufferedReader reader =
+                new BufferedReader(new InputStreamReader(
+                        new ByteArrayInputStream(bytes(configOffset, configLength)), "UTF-8"));
+        configuration.read(reader);
+        reader.close();
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    public int getTileCount()
+    {
+        return tileCount;
+    }
+
+    public int getRasterX()
+    {
+        return rasterX;
+    }
+
+    public int getRasterY()
+    {
+        return rasterY;
+    }
+
+    public ItemConfiguration getConfiguration()
+    {
+        return configuration;
+    }
+
+    /**
+     * @param n The tile index.
+     * @return The id of the tile.
+     */
+    public int getTileId(int n)
+    {
+        return buffer.getInt(record(n) + REC_ID);
+    }
+
+    /**
+     * @param n The tile index.
+     * @return true if the slot was empty, it has no image then.
+     */
+    public boolean isEmpty(int n)
+    {
+        return buffer.getInt(record(n) + REC_WIDTH) == 0;
+    }
+
+    /**
+     * Reads the metadata of a tile. The image of the returned
+     * descriptor is loaded from this pack on demand.
+     *
+     * @param n The tile index.
+     * @return The tile descriptor.
+     * @throws IOException In case of IO errors.
+     */
+    public TileDescriptor readDescriptor(int n) throws IOException
+    {
+        final int rec = record(n);
+        final String [] strings = new String [configuration.stringLabels.length];
+        final int [] ints = new int [configuration.intLabels.length];
+
+        final DataInputStream in =
+                new DataInputStream(new ByteArrayInputStream(
+                        bytes((int)buffer.getLong(rec + REC_META_OFFSET),
+                              buffer.getInt(rec + REC_META_LENGTH))));
+
+        for(int i=0; i<ints.length; i++)
+        {
+            ints[i] = in.readInt();
+        }
+        for(int i=0; i<strings.length; i++)
+        {
+            strings[i] = in.readUTF();
+        }
+
+        final TileDescriptor tld = new TileDescriptor(configuration, strings, ints);
+        tld.tileId = buffer.getInt(rec + REC_ID);
+        tld.offX = buffer.getInt(rec + REC_OFFX);
+        tld.offY = buffer.getInt(rec + REC_OFFY);
+        tld.footX = buffer.getInt(rec + REC_FOOTX);
+        tld.footY = buffer.getInt(rec + REC_FOOTY);
+        tld.setImageSource(new Slice(n),
+                           buffer.getInt(rec + REC_WIDTH),
+                           buffer.getInt(rec + REC_HEIGHT));
+
+        return tld;
+    }
+
+    /**
+     * Decodes the image of a tile.
+     *
+     * @param n The tile index.
+     * @return The tile image.
+     * @throws IOException In case of IO errors.
+     */
+    public BufferedImage readImage(int n) throws IOException
+    {
+        final int rec = record(n);
+        final int width = buffer.getInt(rec + REC_WIDTH);
+        final int height = buffer.getInt(rec + REC_HEIGHT);
+
+        final BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        final int [] pixels = ((DataBufferInt)img.getRaster().getDataBuffer()).getData();
+        final byte [] raw = new byte [pixels.length * 4];
+
+        final Inflater inflater = new Inflater();
+
+        try
+        {
+            inflater.setInput(readRaw(n));
+            int done = 0;
+            while(done < raw.length && !inflater.finished())
+            {
+                final int count = inflater.inflate(raw, done, raw.length - done);
+                if(count == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                {
+                    break;
+                }
+                done += count;
+            }
+
+            if(done != raw.length)
+            {
+                throw new IOException("Truncated pixel data for tile " + n + " in " + file);
+            }
+        }
+        catch(DataFormatException ex)
+        {
+            throw new IOException("Corrupt pixel data for tile " + n + " in " + file, ex);
+        }
+        finally
+        {
+            inflater.end();
+        }
+
+        ByteBuffer.wrap(raw).asIntBuffer().get(pixels);
+        return img;
+    }
+
+    /**
+     * @param n The tile index.
+     * @return The compressed pixel data of a tile.
+     */
+    byte [] readRaw(int n)
+    {
+        final int rec = record(n);
+        return bytes((int)buffer.getLong(rec + REC_PIXEL_OFFSET),
+                     buffer.getInt(rec + REC_PIXEL_LENGTH));
+    }
+
+    private int record(int n)
+    {
+        if(n < 0 || n >= tileCount)
+        {
+            throw new IndexOutOfBoundsException("Tile " + n + " of " + tileCount);
+        }
+        return indexOffset + n * RECORD_SIZE;
+    }
+
+    private byte [] bytes(int offset, int length)
+    {
+        final ByteBuffer slice = buffer.duplicate();
+        slice.position(offset);
+
+        final byte [] result = new byte [length];
+        slice.get(result);
+        return result;
+    }
+
+    /**
+     * Image source for one tile of the pack.
+     */
+    class Slice implements TileImageSource
+    {
+        private final int n;
+
+        private Slice(int n)
+        {
+            this.n = n;
+        }
+
+        TilePack getPack()
+        {
+            return TilePack.this;
+        }
+
+        byte [] readRaw()
+        {
+            return TilePack.this.readRaw(n);
+        }
+
+        @Override
+        public BufferedImage loadImage()
+        {
+            BufferedImage img = cache.get(this);
+
+            if(img == null)
+            {
+                try
+                {
+                    img = readImage(n);
+                }
+                catch(IOException ex)
+                {
+                    LOGGER.log(Level.SEVERE, "Can't load tile image " + n, ex);
+                    img = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+                }
+
+                cache.put(this, img);
+            }
+
+            return img;
+        }
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * File: TilePackIO.java
+ * Creation: 2026_10_17
+ * Author: agent <agent@local>
+ * License: See license.txt
+ */
+
+package tilemaster.io;
+
+import itemizer.item.ItemConfiguration;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import tilemaster.tile.TileDescriptor;
+import tilemaster.tile.TileImageSource;
+import tilemaster.tile.TileSet;
+
+
+/**
+ * Tile pack IO. Can read and write tile sets as single binary
+ * files with a fixed width tile index, see TilePack for the layout.
+ * Tile images are decoded on demand from the memory mapped file.
+ *
+ * @author agent
+ */
+public class TilePackIO implements FileTypeIO
+{
+    static
+    {
+        IOPluginBroker.registerHandler(".tipack", new TilePackIO());
+    }
+
+    /**
+     * Reads a tile set from a tile pack file. Only the index and
+     * the metadata are read, images are decoded on demand.
+     *
+     * @param filename The name of the file to read.
+     * @return The created tile set.
+     * @throws IOException In case of IO errors.
+     */
+    @Override
+    public TileSet read(String filename) throws IOException
+    {
+        final long start = System.nanoTime();
+        final TilePack pack = new TilePack(new File(filename));
+
+        final TileSet result = new TileSet(pack.getConfiguration(), 0);
+        result.rasterX = pack.getRasterX();
+        result.rasterY = pack.getRasterY();
+
+        for(int i=0; i<pack.getTileCount(); i++)
+        {
+            if(pack.isEmpty(i))
+            {
+                result.addEmpty();
+            }
+            else
+            {
+                result.add(pack.readDescriptor(i));
+            }
+        }
+
+        System.err.println("Indexed " + pack.getTileCount() + " tiles from " + filename +
+                           " in " + WorkerPool.millis(start, System.nanoTime()) + " ms");
+
+        return result;
+    }
+
+    /**
+     * Writes a tile set to a tile pack file.
+     *
+     * @param filename The name of the file to write.
+     * @param tileSet The tiles to write.
+     * @throws IOException In case of IO errors.
+     */
+    @Override
+    public void write(String filename, TileSet tileSet) throws IOException
+    {
+        final long start = System.nanoTime();
+        final File file = new File(filename).getAbsoluteFile();
+
+        // tiles might still be mapped from the target file,
+        // so write to a temporary file first.
+        final File tmpFile = new File(file.getPath() + ".tmp");
+
+        final ItemConfiguration config = tileSet.getTileConfiguration();
+        final StringWriter configWriter = new StringWriter();
+        config.write(configWriter);
+        final byte [] configData = configWriter.toString().getBytes("UTF-8");
+
+        final int tileCount = tileSet.size();
+        final long configOffset = TilePack.HEADER_SIZE;
+        final long indexOffset = configOffset + configData.length;
+        final ByteBuffer index = ByteBuffer.allocate(tileCount * TilePack.RECORD_SIZE);
+
+        final RandomAccessFile raf = new RandomAccessFile(tmpFile, "rw");
+        boolean ok = false;
+
+        final ExecutorService executor = WorkerPool.create("TilePackIO-encoder");
+
+        // only a limited number of compressed tiles may wait
+        // for output, this bounds the memory use.
+        final int window = WorkerPool.getThreadCount() * 4;
+        final ArrayDeque <Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>(window);
+
+        try
+        {
+            raf.setLength(0);
+            final FileChannel channel = raf.getChannel();
+
+            long pos = indexOffset + index.capacity();
+            channel.position(pos);
+            final OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16);
+
+            int submitted = 0;
+
+            for(int i=0; i<tileCount; i++)
+            {
+                while(submitted < tileCount && submitted < i + window)
+                {
+                    pending.add(executor.submit(compressor(tileSet.get(submitted))));
+                    submitted ++;
+                }
+
+                final TileDescriptor tld = tileSet.get(i);
+                final byte [] meta = encodeMetadata(config, tld);
+                final byte [] pixels = pending.remove().get();
+
+                // empty slots are stored with size 0 and no pixels
+                final boolean empty = tileSet.isEmpty(i);
+
+                index.putInt(tld.tileId);
+                index.putInt(empty ? 0 : tld.getWidth());
+                index.putInt(empty ? 0 : tld.getHeight());
+                index.putInt(tld.offX);
+                index.putInt(tld.offY);
+                index.putInt(tld.footX);
+                index.putInt(tld.footY);
+                index.putInt(pixels.length);
+                index.putLong(pos + meta.length);
+                index.putLong(pos);
+                index.putInt(meta.length);
+                index.putInt(0);
+
+                out.write(meta);
+                out.write(pixels);
+                pos += meta.length + pixels.length;
+            }
+
+            out.flush();
+
+            if(pos > Integer.MAX_VALUE)
+            {
+                throw new IOException("Tile set too large for a tile pack.");
+            }
+
+            final ByteBuffer header = ByteBuffer.allocate(TilePack.HEADER_SIZE);
+            header.putInt(TilePack.MAGIC);
+            header.putInt(TilePack.VERSION);
+            header.putInt(tileCount);
+            header.putInt(tileSet.rasterX);
+            header.putInt(tileSet.rasterY);
+            header.putInt(configData.length);
+            header.putLong(configOffset);
+            header.putLong(indexOffset);
+            header.flip();
+            index.flip();
+
+            writeFully(channel, header, 0);
+            writeFully(channel, ByteBuffer.wrap(configData), configOffset);
+            writeFully(channel, index, indexOffset);
+
+            raf.close();
+            ok = true;
+        }
+        catch(InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing tiles.");
+        }
+        catch(ExecutionException ex)
+        {
+            throw new IOException("Can't compress tile image.", ex.getCause());
+        }
+        finally
+        {
+            executor.shutdownNow();
+
+            if(!ok)
+            {
+                raf.close();
+                tmpFile.delete();
+            }
+        }
+
+        if(file.exists() && !file.delete())
+        {
+            throw new IOException("Can't replace " + file + ", new data is in " + tmpFile);
+        }
+        if(!tmpFile.renameTo(file))
+        {
+            throw new IOException("Can't rename " + tmpFile + " to " + file);
+        }
+
+        System.err.println("Wrote " + tileCount + " tiles to " + filename + " using " +
+                           WorkerPool.getThreadCount() + " workers in " +
+                           WorkerPool.millis(start, System.nanoTime()) + " ms");
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer data, long pos) throws IOException
+    {
+        while(data.hasRemaining())
+        {
+            pos += channel.write(data, pos);
+        }
+    }
+
+    /**
+     * Encodes the metadata of a tile, ints first, then strings.
+     */
+    private static byte [] encodeMetadata(ItemConfiguration config, TileDescriptor tld) throws IOException
+    {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream(64);
+        final DataOutputStream out = new DataOutputStream(buffer);
+
+        for(int n=0; n<config.intLabels.length; n++)
+        {
+            out.writeInt(tld.getInt(n));
+        }
+        for(int n=0; n<config.stringLabels.length; n++)
+        {
+            final String value = tld.getString(n);
+            out.writeUTF(value != null ? value : "");
+        }
+
+        out.close();
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Creates a task which compresses the pixels of a tile. Images
+     * which were not loaded from a tile pack yet are copied without
+     * decoding.
+     *
+     * @param tld The tile to compress.
+     * @return The compression task.
+     */
+    private static Callable<byte[]> compressor(final TileDescriptor tld)
+    {
+        final BufferedImage img = tld.img;
+        final TileImageSource source = tld.getImageSource();
+        final boolean empty = tld.isEmpty();
+
+        return new Callable<byte[]>()
+        {
+            @Override
+            public byte[] call()
+            {
+                if(empty)
+                {
+                    return new byte [0];
+                }
+
+                if(img == null && source instanceof TilePack.Slice)
+                {
+                    return ((TilePack.Slice)source).readRaw();
+                }
+
+                final BufferedImage image = img != null ? img : tld.getImage();
+                final int width = image.getWidth();
+                final int height = image.getHeight();
+                final int [] argb = image.getRGB(0, 0, width, height, null, 0, width);
+
+                final ByteBuffer raw = ByteBuffer.allocate(argb.length * 4);
+                raw.asIntBuffer().put(argb);
+
+                final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+                final ByteArrayOutputStream out = new ByteArrayOutputStream(raw.capacity() / 4 + 64);
+                final byte [] buffer = new byte [8192];
+
+                try
+                {
+                    deflater.setInput(raw.array());
+                    deflater.finish();
+
+                    while(!deflater.finished())
+                    {
+                        final int n = deflater.deflate(buffer);
+                        out.write(buffer, 0, n);
+                    }
+                }
+                finally
+                {
+                    deflater.end();
+                }
+
+                return out.toByteArray();
+            }
+        };
+    }
+
+    /** Creates a new instance of TilePackIO */
+    private TilePackIO()
+    {
+    }
+}
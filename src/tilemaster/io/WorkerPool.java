@@ -0,0 +1,87 @@
+/*
+ * File: WorkerPool.java
+ * Creation: 2026_10_17
+ * Author: agent <agent@local>
+ * License: See license.txt
+ */
+
+package tilemaster.io;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Helper class to create bounded worker pools for the IO plugins.
+ * The number of workers can be configured with the system property
+ * "tilemaster.io.threads" or with setThreadCount(), but is always
+ * capped at the number of available cores.
+ *
+ * @author agent
+ */
+public class WorkerPool
+{
+    private static volatile int threadCount = Integer.getInteger("tilemaster.io.threads", 0);
+
+    /**
+     * Set the number of workers to use.
+     *
+     * @param count The number of workers, 0 or less to use all cores.
+     */
+    public static void setThreadCount(int count)
+    {
+        threadCount = count;
+    }
+
+    /**
+     * @return The number of workers to use, between 1 and the
+     * number of available cores.
+     */
+    public static int getThreadCount()
+    {
+        final int cores = Runtime.getRuntime().availableProcessors();
+
+        if(threadCount <= 0)
+        {
+            return cores;
+        }
+
+        return Math.min(threadCount, cores);
+    }
+
+    /**
+     * Creates a new fixed size pool of daemon workers. The caller
+     * must shut down the pool once done.
+     *
+     * @param name The name prefix for the worker threads.
+     * @return The new pool.
+     */
+    public static ExecutorService create(final String name)
+    {
+        return Executors.newFixedThreadPool(getThreadCount(), new ThreadFactory()
+        {
+            private final AtomicInteger number = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread thread = new Thread(r, name + "-" + number.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Milliseconds between two System.nanoTime() values.
+     */
+    static long millis(long start, long end)
+    {
+        return (end - start) / 1000000L;
+    }
+
+    private WorkerPool()
+    {
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * File: ZipTileArchive.java
+ * Creation: 2026_10_17
+ * Author: agent <agent@local>
+ * License: See license.txt
+ */
+
+package tilemaster.io;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import javax.imageio.ImageIO;
+import tilemaster.tile.TileDescriptor;
+import tilemaster.tile.TileImageSource;
+import tilemaster.tile.TileSet;
+
+/**
+ * An open tile set zipfile, which decodes tile images on demand.
+ * The zip central directory serves as index from entry name to
+ * entry offset, so each image can be read without scanning the
+ * archive. Decoded images are kept in a LRU cache.
+ *
+ * @author agent
+ */
+class ZipTileArchive
+{
+    private static final Logger LOGGER = Logger.getLogger(ZipTileArchive.class.getName());
+
+    /**
+     * Archives which were not released yet. Writers must close all
+     * archives of a file before they replace it, see openOn().
+     */
+    private static final Set <ZipTileArchive> OPEN =
+        Collections.newSetFromMap(new WeakHashMap<ZipTileArchive, Boolean>());
+
+    private final File file;
+
+    /** The open zipfile, null if closed */
+    private ZipFile zipFile;
+
+    /** True between close() and reopen(), while the file is rewritten */
+    private boolean rewriting;
+
+    private final ImageCache cache = new ImageCache(ImageCache.DEFAULT_PIXELS);
+
+    /**
+     * Takes over an open tile set zipfile.
+     *
+     * @param file The zipfile location.
+     * @param zipFile The open zipfile.
+     */
+    ZipTileArchive(File file, ZipFile zipFile)
+    {
+        this.file = file.getAbsoluteFile();
+        this.zipFile = zipFile;
+
+        synchronized(OPEN)
+        {
+            OPEN.add(this);
+        }
+    }
+
+    /**
+     * @param file A tile set zipfile.
+     * @return The archives which have the file open, and were not
+     * released yet.
+     */
+    static Set <ZipTileArchive> openOn(File file)
+    {
+        final File location = file.getAbsoluteFile();
+        final Set <ZipTileArchive> archives = new HashSet<ZipTileArchive>();
+
+        synchronized(OPEN)
+        {
+            for(ZipTileArchive archive : OPEN)
+            {
+                if(archive.file.equals(location))
+                {
+                    archives.add(archive);
+                }
+            }
+        }
+
+        return archives;
+    }
+
+    File getFile()
+    {
+        return file;
+    }
+
+    /**
+     * Creates an image source for one entry of the archive.
+     *
+     * @param name The entry name.
+     * @return The image source.
+     */
+    Entry entry(String name)
+    {
+        return new Entry(name);
+    }
+
+    /**
+     * Closes the archive, so the file can be rewritten. Reads wait
+     * until reopen() is called.
+     *
+     * @throws IOException In case of IO errors.
+     */
+    synchronized void close() throws IOException
+    {
+        rewriting = true;
+
+        if(zipFile != null)
+        {
+            zipFile.close();
+            zipFile = null;
+        }
+    }
+
+    /**
+     * Opens the archive file again, after it has been rewritten.
+     *
+     * @throws IOException In case of IO errors.
+     */
+    synchronized void reopen() throws IOException
+    {
+        try
+        {
+            zipFile = new ZipFile(file);
+        }
+        finally
+        {
+            rewriting = false;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Closes the archive for good. Reads fail afterwards.
+     */
+    synchronized void release()
+    {
+        synchronized(OPEN)
+        {
+            OPEN.remove(this);
+        }
+
+        if(zipFile != null)
+        {
+            try
+            {
+                zipFile.close();
+            }
+            catch(IOException ex)
+            {
+                LOGGER.log(Level.SEVERE, null, ex);
+            }
+
+            zipFile = null;
+        }
+    }
+
+    /**
+     * Closes the archives which a tile set loads its images from.
+     *
+     * @param tileSet The tile set, which is not used anymore.
+     */
+    static void release(TileSet tileSet)
+    {
+        final Set <ZipTileArchive> archives = new HashSet<ZipTileArchive>();
+
+        for(int i=0; i<tileSet.size(); i++)
+        {
+            final TileDescriptor tld = tileSet.get(i);
+
+            if(tld != null && tld.getImageSource() instanceof Entry)
+            {
+                archives.add(((Entry)tld.getImageSource()).getArchive());
+            }
+        }
+
+        for(ZipTileArchive archive : archives)
+        {
+            archive.release();
+        }
+    }
+
+    /**
+     * Reads the raw data of an entry. Reads are done one at a
+     * time, so the archive isn't closed while a read is running.
+     */
+    private synchronized byte [] readRaw(String name) throws IOException
+    {
+        // a save is writing the file, the entries will be back
+        while(rewriting)
+        {
+            try
+            {
+                wait();
+            }
+            catch(InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for " + file);
+            }
+        }
+
+        if(zipFile == null)
+        {
+            throw new IOException("Archive " + file + " is closed");
+        }
+
+        final ZipEntry entry = zipFile.getEntry(name);
+
+        if(entry == null)
+        {
+            throw new IOException("Missing entry " + name + " in " + file);
+        }
+
+        final InputStream in = zipFile.getInputStream(entry);
+
+        try
+        {
+            final ByteArrayOutputStream out =
+                    new ByteArrayOutputStream(entry.getSize() > 0 ? (int)entry.getSize() : 4096);
+            final byte [] buffer = new byte [8192];
+            int n;
+
+            while((n = in.read(buffer)) > 0)
+            {
+                out.write(buffer, 0, n);
+            }
+
+            return out.toByteArray();
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Image source for one zip entry.
+     */
+    class Entry implements TileImageSource
+    {
+        private volatile String name;
+
+        private Entry(String name)
+        {
+            this.name = name;
+        }
+
+        ZipTileArchive getArchive()
+        {
+            return ZipTileArchive.this;
+        }
+
+        String getName()
+        {
+            return name;
+        }
+
+        void setName(String name)
+        {
+            this.name = name;
+        }
+
+        /**
+         * @return The PNG data of this entry.
+         */
+        byte [] readRaw() throws IOException
+        {
+            return ZipTileArchive.this.readRaw(name);
+        }
+
+        @Override
+        public BufferedImage loadImage()
+        {
+            BufferedImage img = cache.get(this);
+
+            if(img == null)
+            {
+                try
+                {
+                    img = ImageIO.read(new ByteArrayInputStream(readRaw()));
+                }
+                catch(IOException ex)
+                {
+                    LOGGER.log(Level.SEVERE, "Can't load tile image " + name, ex);
+                }
+
+                if(img == null)
+                {
+                    // not cached, the next call tries again
+                    return new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+                }
+
+                cache.put(this, img);
+            }
+
+            return img;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * File: IdIndex.java
+ * Creation: 2026_10_17
+ * Author: agent <agent@local>
+ * License: See license.txt
+ */
+
+package tilemaster.tile;
+
+import java.util.Arrays;
+
+/**
+ * Hash index from tile ids to tile numbers, with primitive int keys.
+ * For each id the index keeps the lowest tile number which uses the
+ * id, and the number of tiles using it, so duplicate ids can be
+ * handled. Open addressing with linear probing, removal shifts
+ * entries back instead of leaving tombstones.
+ *
+ * @author agent
+ */
+class IdIndex
+{
+    private int [] keys;
+    private int [] first;
+    private int [] count;
+    private boolean [] used;
+    private int mask;
+    private int size;
+
+    IdIndex(int capacity)
+    {
+        allocate(tableSize(capacity));
+    }
+
+    /**
+     * @return The lowest tile number using the id, -1 if the id is unused.
+     */
+    int first(int id)
+    {
+        final int slot = find(id);
+        return slot < 0 ? -1 : first[slot];
+    }
+
+    /**
+     * @return The number of tiles using the id.
+     */
+    int count(int id)
+    {
+        final int slot = find(id);
+        return slot < 0 ? 0 : count[slot];
+    }
+
+    /**
+     * Records one more tile with the given id.
+     *
+     * @param id The tile id.
+     * @param number The tile number.
+     */
+    void add(int id, int number)
+    {
+        int slot = find(id);
+
+        if(slot < 0)
+        {
+            if((size + 1) * 2 > keys.length)
+            {
+                rehash(keys.length * 2);
+            }
+
+            slot = mix(id) & mask;
+            while(used[slot])
+            {
+                slot = (slot + 1) & mask;
+            }
+
+            used[slot] = true;
+            keys[slot] = id;
+            first[slot] = number;
+            count[slot] = 1;
+            size ++;
+        }
+        else
+        {
+            count[slot] ++;
+            if(number < first[slot])
+            {
+                first[slot] = number;
+            }
+        }
+    }
+
+    /**
+     * Moves the lowest tile number of an id, if it currently is
+     * the given number.
+     *
+     * @return true if the number was moved.
+     */
+    boolean move(int id, int from, int to)
+    {
+        final int slot = find(id);
+
+        if(slot >= 0 && first[slot] == from)
+        {
+            first[slot] = to;
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Sets the lowest tile number of an id which is in use.
+     */
+    void setFirst(int id, int number)
+    {
+        first[find(id)] = number;
+    }
+
+    /**
+     * Records one tile less with the given id.
+     *
+     * @return The number of tiles still using the id.
+     */
+    int remove(int id)
+    {
+        final int slot = find(id);
+        if(slot < 0)
+        {
+            return 0;
+        }
+
+        if(count[slot] > 1)
+        {
+            return --count[slot];
+        }
+
+        // shift back the following entries of the probe sequence
+        int gap = slot;
+        int next = (gap + 1) & mask;
+
+        while(used[next])
+        {
+            final int home = mix(keys[next]) & mask;
+
+            // an entry may fill the gap if its home slot isn't
+            // cyclically between the gap and its current slot
+            if(((next - home) & mask) >= ((next - gap) & mask))
+            {
+                keys[gap] = keys[next];
+                first[gap] = first[next];
+                count[gap] = count[next];
+                gap = next;
+            }
+
+            next = (next + 1) & mask;
+        }
+
+        used[gap] = false;
+        size --;
+
+        return 0;
+    }
+
+    void clear()
+    {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    private int find(int id)
+    {
+        int slot = mix(id) & mask;
+
+        while(used[slot])
+        {
+            if(keys[slot] == id)
+            {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    private void rehash(int length)
+    {
+        final int [] oldKeys = keys;
+        final int [] oldFirst = first;
+        final int [] oldCount = count;
+        final boolean [] oldUsed = used;
+
+        allocate(length);
+
+        for(int i=0; i<oldKeys.length; i++)
+        {
+            if(oldUsed[i])
+            {
+                int slot = mix(oldKeys[i]) & mask;
+                while(used[slot])
+                {
+                    slot = (slot + 1) & mask;
+                }
+
+                used[slot] = true;
+                keys[slot] = oldKeys[i];
+                first[slot] = oldFirst[i];
+                count[slot] = oldCount[i];
+            }
+        }
+    }
+
+    private void allocate(int length)
+    {
+        keys = new int [length];
+        first = new int [length];
+        count = new int [length];
+        used = new boolean [length];
+        mask = length - 1;
+    }
+
+    private static int tableSize(int capacity)
+    {
+        int length = 16;
+        while(length < capacity * 2)
+        {
+            length <<= 1;
+        }
+        return length;
+    }
+
+    /**
+     * Tile ids are mostly consecutive, spread them over the table.
+     */
+    private static int mix(int id)
+    {
+        final int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
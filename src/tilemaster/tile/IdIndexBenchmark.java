@@ -0,0 +1,143 @@
+/*
+ * File: IdIndexBenchmark.java
+ * Creation: 2026_10_17
+ * Author: agent <agent@local>
+ * License: See license.txt
+ */
+
+package tilemaster.tile;
+
+import itemizer.item.ItemConfiguration;
+import java.util.Random;
+
+/**
+ * Compares the id lookup of TileSet, which uses the IdIndex, with
+ * a linear scan over the tiles, like numberFromId() did before.
+ * <pre>
+ * IdIndexBenchmark [tiles [lookups]]
+ * </pre>
+ * Defaults are 100000 tiles and 100000 lookups. The linear scan is
+ * timed with fewer lookups, it would take very long otherwise.
+ *
+ * @author agent
+ */
+public class IdIndexBenchmark
+{
+    private static final int ROUNDS = 5;
+
+    public static void main(String [] args)
+    {
+        final int tiles = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        final int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+        final int scans = Math.max(1, Math.min(lookups, 1000));
+
+        final ItemConfiguration configuration = new ItemConfiguration();
+        configuration.stringLabels = new String [] {"Name"};
+        configuration.intLabels = new String [0];
+        configuration.tripletLabels = new String [0];
+
+        final Random random = new Random(1);
+
+        // unique ids in random order
+        final int [] ids = new int [tiles];
+        for(int i=0; i<tiles; i++)
+        {
+            ids[i] = i + 1;
+        }
+        for(int i=tiles-1; i>0; i--)
+        {
+            final int n = random.nextInt(i + 1);
+            final int t = ids[i];
+            ids[i] = ids[n];
+            ids[n] = t;
+        }
+
+        final int [] queries = new int [lookups];
+        for(int i=0; i<lookups; i++)
+        {
+            // about one in ten ids is not in the set
+            queries[i] = 1 + random.nextInt(tiles + tiles / 10);
+        }
+
+        System.out.println("Id lookups in a set of " + tiles + " tiles");
+
+        for(int round=0; round<ROUNDS; round++)
+        {
+            long start = System.nanoTime();
+
+            final TileSet tileSet = new TileSet(configuration, 0);
+            for(int i=0; i<tiles; i++)
+            {
+                final TileDescriptor tld =
+                    new TileDescriptor(configuration, new String [] {"t" + i}, new int [0]);
+                tld.tileId = ids[i];
+                tileSet.add(tld);
+            }
+
+            final long build = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            long sum = 0;
+            for(int i=0; i<lookups; i++)
+            {
+                sum += tileSet.numberFromId(queries[i]);
+            }
+            final long indexed = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            sum += tileSet.numbersFromIds(queries)[lookups - 1];
+            final long bulk = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for(int i=0; i<scans; i++)
+            {
+                sum += linearScan(tileSet, queries[i]);
+            }
+            final long linear = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            final int middle = tiles / 2;
+            tileSet.insertEmpty(middle);
+            tileSet.remove(middle);
+            final long shift = System.nanoTime() - start;
+
+            System.out.println("Round " + (round + 1) +
+                               ": add " + millis(build) + " ms" +
+                               ", index " + nanosEach(indexed, lookups) + " ns/lookup" +
+                               ", bulk " + nanosEach(bulk, lookups) + " ns/lookup" +
+                               ", linear scan " + nanosEach(linear, scans) + " ns/lookup" +
+                               " (" + millis(linear / scans * lookups) + " ms for " + lookups + ")" +
+                               ", insert+remove in the middle " + millis(shift) + " ms" +
+                               " [" + sum + "]");
+        }
+    }
+
+    /**
+     * The lookup as it was before the id index.
+     */
+    private static int linearScan(TileSet tileSet, int id)
+    {
+        final int size = tileSet.size();
+
+        for(int i=0; i<size; i++)
+        {
+            final TileDescriptor tld = tileSet.get(i);
+            if(tld != null && tld.tileId == id)
+            {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private static String millis(long nanos)
+    {
+        return String.valueOf(nanos / 1000000L);
+    }
+
+    private static String nanosEach(long nanos, int count)
+    {
+        return String.valueOf(nanos / count);
+    }
+}
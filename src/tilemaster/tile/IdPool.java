@@ -7,34 +7,301 @@
 
 package tilemaster.tile;
 
-import java.util.TreeSet;
-
 /**
  * Helper class to allocate tile IDs
- * 
+ * <p>
+ * The used ids are kept in a bitset, which is split into pages of
+ * 4096 ids. Pages are only allocated when an id in their range is
+ * used, so single huge ids don't need huge amounts of memory.
+ * <p>
+ * New ids are allocated above the highest id ever used, unless gap
+ * reuse is enabled. Then the lowest free id is allocated. Without gap
+ * reuse, removed ids are never handed out again. Id 0 is never
+ * allocated, it marks tiles without an id. Ids must not be negative.
+ *
  * @author Hj. Malthaner
  */
 public class IdPool
 {
+    private static final int PAGE_SHIFT = 12;
+    private static final int PAGE_BITS = 1 << PAGE_SHIFT;
+    private static final int PAGE_WORDS = PAGE_BITS / 64;
+
+    private long [][] pages = new long [16][];
+    private final boolean reuseGaps;
+
+    /** The highest id ever used, it is not lowered by remove() */
+    private int highest;
+    private int size;
+
+    // no id below this one is free
+    private int freeHint = 1;
+
+    /**
+     * Creates a pool which allocates new ids above the highest id
+     * ever used.
+     */
+    public IdPool()
+    {
+        this(false);
+    }
+
+    /**
+     * Creates a pool.
+     *
+     * @param reuseGaps true to allocate the lowest free id, false
+     *                  to allocate above the highest id ever used.
+     */
+    public IdPool(boolean reuseGaps)
+    {
+        this.reuseGaps = reuseGaps;
+    }
+
+    /**
+     * Marks an id as used.
+     *
+     * @param id The id.
+     * @return true if the id was free before.
+     */
+    public boolean add(int id)
+    {
+        checkId(id);
+
+        final int page = id >>> PAGE_SHIFT;
+        if(page >= pages.length)
+        {
+            final long [][] grown = new long [Math.max(page + 1, pages.length * 2)][];
+            System.arraycopy(pages, 0, grown, 0, pages.length);
+            pages = grown;
+        }
+
+        long [] words = pages[page];
+        if(words == null)
+        {
+            words = new long [PAGE_WORDS];
+            pages[page] = words;
+        }
+
+        final int word = (id >>> 6) & (PAGE_WORDS - 1);
+        final long bit = 1L << id;
+
+        if((words[word] & bit) != 0)
+        {
+            return false;
+        }
 
-    private TreeSet <Integer> pool = new TreeSet();
+        words[word] |= bit;
+        size ++;
 
-    public void add(int id)
+        if(id > highest)
+        {
+            highest = id;
+        }
+
+        return true;
+    }
+
+    /**
+     * Marks an id as free again.
+     *
+     * @param id The id.
+     */
+    public void remove(int id)
+    {
+        if(!contains(id))
+        {
+            return;
+        }
+
+        pages[id >>> PAGE_SHIFT][(id >>> 6) & (PAGE_WORDS - 1)] &= ~(1L << id);
+        size --;
+
+        if(id < freeHint)
+        {
+            freeHint = Math.max(id, 1);
+        }
+    }
+
+    public boolean contains(int id)
+    {
+        if(id < 0)
+        {
+            return false;
+        }
+
+        final int page = id >>> PAGE_SHIFT;
+        if(page >= pages.length || pages[page] == null)
+        {
+            return false;
+        }
+
+        return (pages[page][(id >>> 6) & (PAGE_WORDS - 1)] & (1L << id)) != 0;
+    }
+
+    /**
+     * @return The number of used ids.
+     */
+    public int size()
     {
-        pool.add(id);
+        return size;
     }
 
     public int allocateNextId()
     {
-        int high = pool.last();
-        int next = high + 1;
+        int next;
+
+        if(reuseGaps)
+        {
+            next = nextFree(freeHint);
+            freeHint = next + 1;
+        }
+        else
+        {
+            if(highest == Integer.MAX_VALUE)
+            {
+                throw new IllegalStateException("Tile ids exhausted.");
+            }
+            next = highest + 1;
+        }
+
         add(next);
 
         return next;
     }
 
-    public boolean contains(int id)
+    /**
+     * Allocates several ids at once.
+     *
+     * @param n The number of ids to allocate.
+     * @return The new ids, ascending.
+     */
+    public int [] allocate(int n)
+    {
+        final int [] result = new int [n];
+
+        for(int i=0; i<n; i++)
+        {
+            result[i] = allocateNextId();
+        }
+
+        return result;
+    }
+
+    /**
+     * Adds the ids of all tiles of a set to the pool, and finds the
+     * tiles which need a new id. These are tiles with an id which was
+     * used by a tile before, tiles with negative ids and, if requested,
+     * tiles with id 0. Empty slots don't need an id.
+     *
+     * @param tileSet The tiles.
+     * @param zeroIsUnset true if id 0 marks tiles without an id.
+     * @return The indices of the tiles which need a new id.
+     */
+    public int [] collectDuplicates(TileSet tileSet, boolean zeroIsUnset)
+    {
+        int [] result = new int [16];
+        int count = 0;
+
+        for(int i=0; i<tileSet.size(); i++)
+        {
+            if(tileSet.isEmpty(i))
+            {
+                continue;
+            }
+
+            final int id = tileSet.get(i).tileId;
+
+            final boolean valid = id > 0 || (id == 0 && !zeroIsUnset);
+
+            if(!valid || !add(id))
+            {
+                if(count == result.length)
+                {
+                    final int [] grown = new int [count * 2];
+                    System.arraycopy(result, 0, grown, 0, count);
+                    result = grown;
+                }
+                result[count++] = i;
+            }
+        }
+
+        final int [] trimmed = new int [count];
+        System.arraycopy(result, 0, trimmed, 0, count);
+
+        return trimmed;
+    }
+
+    /**
+     * Gives new ids from this pool to some tiles of a set.
+     *
+     * @param tileSet The tiles.
+     * @param indices The indices of the tiles which need a new id.
+     */
+    public void assignNewIds(TileSet tileSet, int [] indices)
+    {
+        final int [] ids = allocate(indices.length);
+
+        for(int i=0; i<indices.length; i++)
+        {
+            tileSet.setTileId(indices[i], ids[i]);
+        }
+    }
+
+    /**
+     * Makes the ids of all tiles of a set unique. Tiles with duplicate
+     * ids get new ids, the first tile with an id keeps it.
+     *
+     * @param tileSet The tiles.
+     * @param zeroIsUnset true if tiles with id 0 should get a new id too.
+     * @return The number of tiles which got a new id.
+     */
+    public int repairDuplicates(TileSet tileSet, boolean zeroIsUnset)
+    {
+        final int [] indices = collectDuplicates(tileSet, zeroIsUnset);
+        assignNewIds(tileSet, indices);
+        return indices.length;
+    }
+
+    /**
+     * Finds the lowest free id, starting at the given id.
+     */
+    private int nextFree(int id)
+    {
+        while(id >= 0)
+        {
+            final int page = id >>> PAGE_SHIFT;
+            if(page >= pages.length || pages[page] == null)
+            {
+                return id;
+            }
+
+            final long [] words = pages[page];
+            int word = (id >>> 6) & (PAGE_WORDS - 1);
+
+            // ignore the used bits below id in the first word
+            long free = ~words[word] & (-1L << id);
+
+            while(free == 0 && ++word < PAGE_WORDS)
+            {
+                free = ~words[word];
+            }
+
+            if(free != 0)
+            {
+                return (page << PAGE_SHIFT) + (word << 6) + Long.numberOfTrailingZeros(free);
+            }
+
+            id = (page + 1) << PAGE_SHIFT;
+        }
+
+        throw new IllegalStateException("Tile ids exhausted.");
+    }
+
+    private static void checkId(int id)
     {
-        return pool.contains(id);
+        if(id < 0)
+        {
+            throw new IllegalArgumentException("Tile ids must not be negative: " + id);
+        }
     }
 }
@@ -0,0 +1,711 @@
+/*
+ * File: IndexedPixelStore.java
+ * Creation: 2026_10_17
+ * Author: agent <agent@local>
+ * License: See license.txt
+ */
+
+package tilemaster.tile;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.WritableRaster;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps tile pixels as one byte per pixel, as indices into a palette
+ * of up to 256 colors which is shared by all tiles of the store.
+ * Color 0 is transparent, like in the editor palette.
+ * <p>
+ * Tiles get their image through an image source, which hands out
+ * TYPE_BYTE_INDEXED copies of the stored bytes with the current
+ * palette. Changing the palette changes the colors of all tiles
+ * without touching any pixel. Written as PNG, the images become
+ * 8 bit palette images.
+ * <p>
+ * Equal pixels are stored once. Each stored image has one image
+ * source, once no tile uses the source anymore the pixels are freed,
+ * and the slabs are compacted if most of their pixels are freed.
+ *
+ * @author agent
+ */
+public class IndexedPixelStore
+{
+    private static final int SLAB_BYTES = Integer.getInteger("tilemaster.tile.slabBytes", 1 << 22);
+    private static final int MIN_SLAB_BYTES = 1 << 14;
+
+    /**
+     * Pixel budget of the kept image copies.
+     */
+    private static final long CACHE_PIXELS = Long.getLong("tilemaster.tile.cachePixels", 1L << 21);
+
+    private volatile IndexColorModel colorModel;
+
+    // nearest color cache, argb -> palette index
+    private int [] cacheKeys = new int [4096];
+    private byte [] cacheValues = new byte [4096];
+
+    private final List <byte []> slabs = new ArrayList<byte []>();
+    private int slabUsed;
+
+    // per stored image: slab, offset, width, height
+    private int [] slab = new int [256];
+    private int [] offset = new int [256];
+    private int [] width = new int [256];
+    private int [] height = new int [256];
+    private int [] hash = new int [256];
+    private SourceReference [] sources = new SourceReference [256];
+    private int count;
+    private int live;
+
+    // stored images by pixel hash, the next image
+    // with the same hash, -1 at the end of the chain
+    private final Map <Integer, Integer> byHash = new HashMap<Integer, Integer>();
+    private int [] nextSameHash = new int [256];
+
+    // sources which no tile uses anymore
+    private final ReferenceQueue <Source> released = new ReferenceQueue<Source>();
+
+    private long pixels;
+    private long freedPixels;
+    private long expectedPixels;
+
+    private final LinkedHashMap <Integer, BufferedImage> cache =
+            new LinkedHashMap<Integer, BufferedImage>(256, 0.75f, true);
+    private long cachedPixels;
+
+    /**
+     * Creates a store.
+     *
+     * @param palette The colors, color 0 is used for transparent pixels.
+     */
+    public IndexedPixelStore(Color [] palette)
+    {
+        setPalette(palette);
+    }
+
+    /**
+     * Moves the loaded images of all tiles of a set into a new store.
+     * Images with equal pixels are stored once. Colors are mapped to
+     * the nearest palette color.
+     *
+     * @param tileSet The tiles.
+     * @param palette The colors, color 0 is used for transparent pixels.
+     * @return The new store.
+     */
+    public static IndexedPixelStore pack(TileSet tileSet, Color [] palette)
+    {
+        final IndexedPixelStore store = new IndexedPixelStore(palette);
+
+        long total = 0;
+        for(int i=0; i<tileSet.size(); i++)
+        {
+            final TileDescriptor tld = tileSet.get(i);
+
+            if(isPackable(tld))
+            {
+                total += (long)tld.getWidth() * tld.getHeight();
+            }
+        }
+
+        store.reserve(total);
+
+        for(int i=0; i<tileSet.size(); i++)
+        {
+            final TileDescriptor tld = tileSet.get(i);
+
+            if(isPackable(tld))
+            {
+                final BufferedImage img = tld.getImage();
+                final TileImageSource source = store.add(img);
+
+                if(store.hasSamePalette(img))
+                {
+                    tileSet.edit(i).moveImageTo(source);
+                }
+                else
+                {
+                    // colors might have changed
+                    tileSet.edit(i).replaceImage(source, img.getWidth(), img.getHeight());
+                }
+            }
+        }
+
+        return store;
+    }
+
+    /**
+     * Gives a tile a new image. In indexed mode the pixels go into
+     * the store, else the tile keeps the image itself.
+     *
+     * @param tld The tile.
+     * @param img The new image.
+     * @param store The store of the tile set, null if the set is
+     *              not in indexed mode.
+     */
+    public static void setImage(TileDescriptor tld, BufferedImage img, IndexedPixelStore store)
+    {
+        if(store != null)
+        {
+            tld.replaceImage(store.add(img), img.getWidth(), img.getHeight());
+        }
+        else
+        {
+            tld.setImage(img);
+        }
+    }
+
+    private static boolean isPackable(TileDescriptor tld)
+    {
+        // empty slots stay empty
+        return tld != null && !tld.isEmpty() &&
+               (tld.img != null || tld.getImageSource() != null);
+    }
+
+    /**
+     * Moves all tiles of a set which use this store back
+     * into a store with ARGB pixels.
+     *
+     * @param tileSet The tiles.
+     * @return The new store.
+     */
+    public TilePixelStore unpack(TileSet tileSet)
+    {
+        final TilePixelStore store = new TilePixelStore();
+
+        for(int i=0; i<tileSet.size(); i++)
+        {
+            final TileDescriptor tld = tileSet.get(i);
+
+            if(tld != null && tld.img == null && tld.getImageSource() instanceof Source &&
+               ((Source)tld.getImageSource()).store == this)
+            {
+                tileSet.edit(i).moveImageTo(store.add(tld.getImage()));
+            }
+        }
+
+        return store;
+    }
+
+    /**
+     * Replaces the palette. Images handed out before keep
+     * the old colors.
+     *
+     * @param palette The colors, color 0 is used for transparent pixels.
+     */
+    public final synchronized void setPalette(Color [] palette)
+    {
+        final byte [] r = new byte [256];
+        final byte [] g = new byte [256];
+        final byte [] b = new byte [256];
+        final byte [] a = new byte [256];
+
+        for(int i=0; i<256; i++)
+        {
+            // transparent is 0, like in TYPE_INT_ARGB tiles
+            if(i > 0)
+            {
+                final Color color = i < palette.length ? palette[i] : Color.BLACK;
+                r[i] = (byte)color.getRed();
+                g[i] = (byte)color.getGreen();
+                b[i] = (byte)color.getBlue();
+                a[i] = (byte)255;
+            }
+        }
+
+        colorModel = new IndexColorModel(8, 256, r, g, b, a);
+
+        // 0 can't be a cached color, transparent pixels don't use the cache
+        Arrays.fill(cacheKeys, 0);
+
+        // kept images have the old colors
+        cache.clear();
+        cachedPixels = 0;
+    }
+
+    public IndexColorModel getColorModel()
+    {
+        return colorModel;
+    }
+
+    /**
+     * Tells the store how many pixels will be added, so the
+     * slabs can be sized to fit.
+     *
+     * @param pixels The number of pixels which will be added.
+     */
+    public synchronized void reserve(long pixels)
+    {
+        expectedPixels = this.pixels + pixels;
+    }
+
+    /**
+     * Stores the pixels of an image. Indexed images with the same
+     * palette are copied, other images are mapped to the nearest
+     * palette colors. Pixels which are more than half transparent
+     * become color 0. If the store has the same pixels already,
+     * they are not stored again.
+     *
+     * @param img The image.
+     * @return The image source for the stored pixels. The pixels
+     * are kept as long as the source is used.
+     */
+    public synchronized TileImageSource add(BufferedImage img)
+    {
+        expunge();
+
+        final int w = img.getWidth();
+        final int h = img.getHeight();
+        final int size = w * h;
+
+        if(count == slab.length)
+        {
+            slab = grow(slab);
+            offset = grow(offset);
+            width = grow(width);
+            height = grow(height);
+            hash = grow(hash);
+            nextSameHash = grow(nextSameHash);
+
+            final SourceReference [] bigger = new SourceReference [count * 2];
+            System.arraycopy(sources, 0, bigger, 0, count);
+            sources = bigger;
+        }
+
+        final int s = allocate(size);
+        final byte [] data = slabs.get(s);
+
+        if(hasSamePalette(img))
+        {
+            final WritableRaster raster = img.getRaster();
+            final ComponentSampleModel model = (ComponentSampleModel)raster.getSampleModel();
+            final byte [] src = ((DataBufferByte)raster.getDataBuffer()).getData();
+            final int stride = model.getScanlineStride();
+            final int base = raster.getDataBuffer().getOffset() +
+                    model.getOffset(-raster.getSampleModelTranslateX(),
+                                    -raster.getSampleModelTranslateY());
+
+            for(int y=0; y<h; y++)
+            {
+                System.arraycopy(src, base + y * stride, data, slabUsed + y * w, w);
+            }
+        }
+        else
+        {
+            final int [] row = new int [w];
+
+            for(int y=0; y<h; y++)
+            {
+                img.getRGB(0, y, w, 1, row, 0, w);
+
+                final int base = slabUsed + y * w;
+                for(int x=0; x<w; x++)
+                {
+                    data[base + x] = (byte)match(row[x]);
+                }
+            }
+        }
+
+        int pixelHash = 31 * w + h;
+        for(int i=slabUsed; i<slabUsed+size; i++)
+        {
+            pixelHash = 31 * pixelHash + data[i];
+        }
+
+        // equal pixels stored already? Then the slab space is
+        // used by the next image.
+        final Source stored = findEqual(pixelHash, data, slabUsed, w, h);
+        if(stored != null)
+        {
+            pixels -= size;
+            return stored;
+        }
+
+        final Source source = new Source(this, count);
+
+        slab[count] = s;
+        offset[count] = slabUsed;
+        width[count] = w;
+        height[count] = h;
+        hash[count] = pixelHash;
+        sources[count] = new SourceReference(source, released);
+
+        final Integer first = byHash.put(pixelHash, count);
+        nextSameHash[count] = first != null ? first : -1;
+
+        slabUsed += size;
+        count++;
+        live++;
+
+        return source;
+    }
+
+    /**
+     * Finds stored pixels which equal the given pixels.
+     *
+     * @return The source of the stored pixels, or null if there are none.
+     */
+    private Source findEqual(int pixelHash, byte [] data, int start, int w, int h)
+    {
+        final Integer first = byHash.get(pixelHash);
+
+        for(int handle = first != null ? first : -1; handle >= 0; handle = nextSameHash[handle])
+        {
+            if(width[handle] == w && height[handle] == h)
+            {
+                final byte [] other = slabs.get(slab[handle]);
+                final int otherStart = offset[handle];
+                int i = 0;
+
+                while(i < w * h && data[start + i] == other[otherStart + i])
+                {
+                    i++;
+                }
+
+                // the source might be just released
+                final Source source = sources[handle].get();
+                if(i == w * h && source != null)
+                {
+                    return source;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Finds room for pixels in the last slab, or adds a new slab.
+     * The pixels go to slabUsed in the returned slab.
+     *
+     * @param size The number of pixels.
+     * @return The slab index.
+     */
+    private int allocate(int size)
+    {
+        if(slabs.isEmpty() || slabUsed + size > slabs.get(slabs.size() - 1).length)
+        {
+            // without reservation, slabs grow with the stored pixels.
+            // Images larger than a slab get a slab of their own.
+            final long wanted = expectedPixels > pixels ? expectedPixels - pixels
+                                                        : Math.max(pixels, MIN_SLAB_BYTES);
+            slabs.add(new byte [(int)Math.max(size, Math.min(wanted, SLAB_BYTES))]);
+            slabUsed = 0;
+        }
+
+        pixels += size;
+
+        return slabs.size() - 1;
+    }
+
+    /**
+     * Gets the image of stored pixels with the current palette. The
+     * image is a copy, and the same copy is handed out again while
+     * it is kept, so callers must not change it.
+     *
+     * @param handle The handle of the pixels.
+     * @return The image, in TYPE_BYTE_INDEXED.
+     */
+    public synchronized BufferedImage getImage(int handle)
+    {
+        BufferedImage img = cache.get(handle);
+
+        if(img == null)
+        {
+            final int w = width[handle];
+            final int h = height[handle];
+
+            img = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_INDEXED, colorModel);
+            final byte [] bytes = ((DataBufferByte)img.getRaster().getDataBuffer()).getData();
+            System.arraycopy(slabs.get(slab[handle]), offset[handle], bytes, 0, w * h);
+
+            cache.put(handle, img);
+            cachedPixels += w * h;
+
+            // release least recently used copies, keep the newest
+            final Iterator <BufferedImage> iterator = cache.values().iterator();
+            while(cachedPixels > CACHE_PIXELS && cache.size() > 1)
+            {
+                final BufferedImage eldest = iterator.next();
+                iterator.remove();
+                cachedPixels -= eldest.getWidth() * eldest.getHeight();
+            }
+        }
+
+        expunge();
+
+        return img;
+    }
+
+    /**
+     * Frees the pixels of the sources which are not used anymore.
+     */
+    private void expunge()
+    {
+        SourceReference reference;
+
+        while((reference = (SourceReference)released.poll()) != null)
+        {
+            final int handle = reference.handle;
+            final int size = width[handle] * height[handle];
+
+            final BufferedImage img = cache.remove(handle);
+            if(img != null)
+            {
+                cachedPixels -= size;
+            }
+
+            unlinkHash(handle);
+
+            sources[handle] = null;
+            pixels -= size;
+            freedPixels += size;
+            live--;
+        }
+
+        // copying all pixels is only worth it if
+        // more than half of the slab memory is free
+        if(freedPixels > MIN_SLAB_BYTES && freedPixels > pixels)
+        {
+            compact();
+        }
+    }
+
+    private void unlinkHash(int handle)
+    {
+        final int first = byHash.get(hash[handle]);
+
+        if(first == handle)
+        {
+            if(nextSameHash[handle] >= 0)
+            {
+                byHash.put(hash[handle], nextSameHash[handle]);
+            }
+            else
+            {
+                byHash.remove(hash[handle]);
+            }
+        }
+        else
+        {
+            int previous = first;
+            while(nextSameHash[previous] != handle)
+            {
+                previous = nextSameHash[previous];
+            }
+            nextSameHash[previous] = nextSameHash[handle];
+        }
+    }
+
+    /**
+     * Copies the pixels in use into new slabs and drops the old ones.
+     * Handles and sources stay the same.
+     */
+    private void compact()
+    {
+        final List <byte []> oldSlabs = new ArrayList<byte []>(slabs);
+
+        slabs.clear();
+        expectedPixels = pixels;
+        pixels = 0;
+
+        for(int handle=0; handle<count; handle++)
+        {
+            if(sources[handle] != null)
+            {
+                final int size = width[handle] * height[handle];
+                final int s = allocate(size);
+
+                System.arraycopy(oldSlabs.get(slab[handle]), offset[handle],
+                                 slabs.get(s), slabUsed, size);
+
+                slab[handle] = s;
+                offset[handle] = slabUsed;
+                slabUsed += size;
+            }
+        }
+
+        freedPixels = 0;
+    }
+
+    /**
+     * @return The number of stored images which are in use.
+     */
+    public synchronized int size()
+    {
+        expunge();
+        return live;
+    }
+
+    /**
+     * @return The number of stored pixels which are in use.
+     */
+    public synchronized long getPixelCount()
+    {
+        expunge();
+        return pixels;
+    }
+
+    /**
+     * @return The number of bytes allocated for pixels.
+     */
+    public synchronized long getAllocatedBytes()
+    {
+        long bytes = 0;
+
+        for(byte [] s : slabs)
+        {
+            bytes += s.length;
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Finds the palette color nearest to a color.
+     *
+     * @param argb The color.
+     * @return The palette index, 0 for transparent colors.
+     */
+    public synchronized int match(int argb)
+    {
+        if((argb >>> 24) < 128)
+        {
+            return 0;
+        }
+
+        argb |= 0xFF000000;
+
+        final int hash = argb * 0x9E3779B9;
+        final int slot = (hash ^ (hash >>> 16)) & (cacheKeys.length - 1);
+        if(cacheKeys[slot] == argb)
+        {
+            return cacheValues[slot] & 255;
+        }
+
+        final IndexColorModel cm = colorModel;
+        final int r = (argb >>> 16) & 255;
+        final int g = (argb >>> 8) & 255;
+        final int b = argb & 255;
+
+        int best = 1;
+        int bestDistance = Integer.MAX_VALUE;
+
+        for(int i=1; i<cm.getMapSize(); i++)
+        {
+            final int dr = cm.getRed(i) - r;
+            final int dg = cm.getGreen(i) - g;
+            final int db = cm.getBlue(i) - b;
+
+            // rough perceptual weights, green matters most
+            final int distance = 2*dr*dr + 4*dg*dg + 3*db*db;
+
+            if(distance < bestDistance)
+            {
+                best = i;
+                bestDistance = distance;
+                if(distance == 0)
+                {
+                    break;
+                }
+            }
+        }
+
+        cacheKeys[slot] = argb;
+        cacheValues[slot] = (byte)best;
+
+        return best;
+    }
+
+    /**
+     * Checks if an image is an 8 bit palette image with the
+     * colors of this store.
+     */
+    private boolean hasSamePalette(BufferedImage img)
+    {
+        if(img.getType() != BufferedImage.TYPE_BYTE_INDEXED)
+        {
+            return false;
+        }
+
+        final IndexColorModel cm = (IndexColorModel)img.getColorModel();
+        final IndexColorModel own = colorModel;
+
+        if(cm == own)
+        {
+            return true;
+        }
+
+        if(cm.getMapSize() > own.getMapSize())
+        {
+            return false;
+        }
+
+        for(int i=0; i<cm.getMapSize(); i++)
+        {
+            // all transparent colors look the same
+            final int argb = cm.getRGB(i);
+            final int ownArgb = own.getRGB(i);
+
+            if(argb != ownArgb && ((argb >>> 24) != 0 || (ownArgb >>> 24) != 0))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static int [] grow(int [] array)
+    {
+        final int [] result = new int [array.length * 2];
+        System.arraycopy(array, 0, result, 0, array.length);
+        return result;
+    }
+
+    /**
+     * Image source for pixels in a store.
+     */
+    private static class Source implements TileImageSource
+    {
+        private final IndexedPixelStore store;
+        private final int handle;
+
+        Source(IndexedPixelStore store, int handle)
+        {
+            this.store = store;
+            this.handle = handle;
+        }
+
+        @Override
+        public BufferedImage loadImage()
+        {
+            return store.getImage(handle);
+        }
+    }
+
+    /**
+     * Tells the store when no tile uses a source anymore.
+     */
+    private static class SourceReference extends WeakReference <Source>
+    {
+        final int handle;
+
+        SourceReference(Source source, ReferenceQueue <Source> queue)
+        {
+            super(source, queue);
+            this.handle = source.handle;
+        }
+    }
+}
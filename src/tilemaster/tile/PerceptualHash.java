@@ -0,0 +1,130 @@
+/*
+ * File: PerceptualHash.java
+ * Creation: 2026_10_17
+ * Author: agent <agent@local>
+ * License: See license.txt
+ */
+
+package tilemaster.tile;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Perceptual hashes of tile images. Images which look alike get
+ * hashes which differ in few bits, so the number of differing bits
+ * is a measure how alike two images look.
+ * <p>
+ * The hash is a difference hash (dHash): the image is shrunk to 9x8
+ * cells of average brightness, each bit tells if a cell is darker
+ * than its right neighbour. It doesn't change much if a few pixels
+ * change, if colors are shifted in hue, or if the image is scaled.
+ * Flat images, i.e. a tile filled with one color, all hash to 0
+ * no matter which color they have.
+ *
+ * @author agent
+ */
+public class PerceptualHash
+{
+    /** Number of bits in a hash */
+    public static final int BITS = 64;
+
+    private static final int COLUMNS = 9;
+    private static final int ROWS = 8;
+
+    /**
+     * Calculates the difference hash of an image. Transparent pixels
+     * count as black, so the outline of a sprite is part of the hash.
+     *
+     * @param img The image, any size.
+     * @return The hash.
+     */
+    public static long dHash(BufferedImage img)
+    {
+        final int width = img.getWidth();
+        final int height = img.getHeight();
+
+        // cell borders, images smaller than the grid
+        // use pixels in more than one cell
+        final int [] x0 = new int [COLUMNS];
+        final int [] x1 = new int [COLUMNS];
+        for(int c=0; c<COLUMNS; c++)
+        {
+            x0[c] = Math.min(c * width / COLUMNS, width - 1);
+            x1[c] = Math.max(x0[c] + 1, (c + 1) * width / COLUMNS);
+        }
+
+        final long [] sums = new long [COLUMNS * ROWS];
+        final long [] prefix = new long [width + 1];
+        final int [] row = new int [width];
+
+        int cellRow = 0;
+        for(int y=0; y<height; y++)
+        {
+            img.getRGB(0, y, width, 1, row, 0, width);
+
+            for(int x=0; x<width; x++)
+            {
+                final int argb = row[x];
+                final int r = (argb >>> 16) & 255;
+                final int g = (argb >>> 8) & 255;
+                final int b = argb & 255;
+                final int a = argb >>> 24;
+
+                prefix[x + 1] = prefix[x] + ((r * 77 + g * 150 + b * 29) >> 8) * a;
+            }
+
+            // add this row to all cell rows which cover it
+            while(cellRow < ROWS - 1 && rowStart(cellRow + 1, height) <= y)
+            {
+                cellRow++;
+            }
+
+            for(int r=cellRow; r>=0 && rowEnd(r, height) > y; r--)
+            {
+                final int base = r * COLUMNS;
+                for(int c=0; c<COLUMNS; c++)
+                {
+                    sums[base + c] += prefix[x1[c]] - prefix[x0[c]];
+                }
+            }
+        }
+
+        long hash = 0;
+        for(int r=0; r<ROWS; r++)
+        {
+            final int base = r * COLUMNS;
+            for(int c=0; c<COLUMNS-1; c++)
+            {
+                // compare averages, cells can differ in size
+                final long left = sums[base + c] * (x1[c + 1] - x0[c + 1]);
+                final long right = sums[base + c + 1] * (x1[c] - x0[c]);
+
+                hash = (hash << 1) | (left < right ? 1 : 0);
+            }
+        }
+
+        return hash;
+    }
+
+    /**
+     * @return The number of bits in which two hashes differ, 0 to 64.
+     */
+    public static int distance(long hash1, long hash2)
+    {
+        return Long.bitCount(hash1 ^ hash2);
+    }
+
+    private static int rowStart(int r, int height)
+    {
+        return Math.min(r * height / ROWS, height - 1);
+    }
+
+    private static int rowEnd(int r, int height)
+    {
+        return Math.max(rowStart(r, height) + 1, (r + 1) * height / ROWS);
+    }
+
+    private PerceptualHash()
+    {
+    }
+}
@@ -14,6 +14,10 @@ import java.awt.image.BufferedImage;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Writer;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 
 /**
  * Tile metadata container.
@@ -24,6 +28,10 @@ public class TileDescriptor
 {
     private AbstractItem ait;
     
+    /**
+     * The tile image. Might be null if the image is provided
+     * by an image source, use getImage() to read it.
+     */
     public BufferedImage img;
     public int offX, offY;
     public int footX, footY;
@@ -34,6 +42,47 @@ public class TileDescriptor
      */
     public int tileId;
 
+    /**
+     * Image, name and id as they were last loaded or saved.
+     * Used to find the tiles which must be written again.
+     */
+    private BufferedImage savedImg;
+    private TileImageSource savedSource;
+    private String savedName;
+    private int savedId;
+    private boolean saved;
+
+    /**
+     * Loads the image on demand, if img is not set.
+     */
+    private TileImageSource imageSource;
+
+    /**
+     * Image size from the catalog, -1 if unknown.
+     */
+    private int width = -1;
+    private int height = -1;
+
+    /**
+     * Version of the tile set which owns this tile, 0 if no set
+     * owns it yet. See TileSet.edit().
+     */
+    long version;
+
+    /**
+     * Marks the shared tile of a set which fills empty slots.
+     */
+    boolean empty;
+
+    /**
+     * Perceptual hash of the image and the image and source it
+     * was calculated from. See getImageHash().
+     */
+    private long imageHash;
+    private BufferedImage hashedImg;
+    private TileImageSource hashedSource;
+    private boolean hashed;
+
     public String getString(int index)
     {
         return ait.getString(index);
@@ -44,6 +93,246 @@ public class TileDescriptor
         return ait.getInt(index);
     }
 
+    /**
+     * @return The image of this tile, loaded on demand if needed.
+     */
+    public BufferedImage getImage()
+    {
+        if(img == null && imageSource != null)
+        {
+            return imageSource.loadImage();
+        }
+
+        return img;
+    }
+
+    /**
+     * Sets a source to load the image from on demand. The
+     * image will be loaded from the source as long as img
+     * is not set.
+     */
+    public void setImageSource(TileImageSource imageSource)
+    {
+        this.imageSource = imageSource;
+    }
+
+    /**
+     * Sets a source to load the image from on demand, together
+     * with the image size, so the size is known without loading
+     * the image.
+     */
+    public void setImageSource(TileImageSource imageSource, int width, int height)
+    {
+        this.imageSource = imageSource;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Hands the image over to an image source which provides the
+     * same pixels, i.e. a pixel store. The tile stays unmodified
+     * if it was unmodified before.
+     */
+    public void moveImageTo(TileImageSource imageSource)
+    {
+        final BufferedImage current = getImage();
+        final boolean clean = !isImageDirty();
+
+        setImageSource(imageSource, current.getWidth(), current.getHeight());
+        img = null;
+
+        if(clean)
+        {
+            savedImg = null;
+            savedSource = imageSource;
+        }
+    }
+
+    /**
+     * Replaces the image by an image source with new pixels.
+     * The tile image is modified afterwards.
+     */
+    public void replaceImage(TileImageSource imageSource, int width, int height)
+    {
+        setImageSource(imageSource, width, height);
+        img = null;
+    }
+
+    /**
+     * Replaces the image by an image in memory. The image source is
+     * dropped, so a pixel store can free the old pixels once no
+     * other tile and no saved state needs them anymore.
+     */
+    public synchronized void setImage(BufferedImage img)
+    {
+        this.img = img;
+        imageSource = null;
+        width = -1;
+        height = -1;
+
+        // the hash would keep the old source alive
+        hashedSource = null;
+        hashed = false;
+    }
+
+    public TileImageSource getImageSource()
+    {
+        return imageSource;
+    }
+
+    /**
+     * Gets the perceptual hash of the image, see PerceptualHash.
+     * The hash is calculated once and kept until the image is
+     * replaced.
+     *
+     * @return The hash, 0 if the tile has no image.
+     */
+    public synchronized long getImageHash()
+    {
+        if(!hashed || img != hashedImg || imageSource != hashedSource)
+        {
+            final BufferedImage image = getImage();
+
+            imageHash = image == null ? 0 : PerceptualHash.dHash(image);
+            hashedImg = img;
+            hashedSource = imageSource;
+            hashed = true;
+        }
+
+        return imageHash;
+    }
+
+    /**
+     * @return true if this is the placeholder of an empty slot.
+     */
+    public boolean isEmpty()
+    {
+        return empty;
+    }
+
+    /**
+     * @return The image width, without loading the image
+     * if the size is known from the catalog.
+     */
+    public int getWidth()
+    {
+        if(img == null && width >= 0)
+        {
+            return width;
+        }
+        
+        return getImage().getWidth();
+    }
+
+    /**
+     * @return The image height, without loading the image
+     * if the size is known from the catalog.
+     */
+    public int getHeight()
+    {
+        if(img == null && height >= 0)
+        {
+            return height;
+        }
+        
+        return getImage().getHeight();
+    }
+
+    /**
+     * @return true if the metadata of this tile equals the given values.
+     */
+    public boolean hasData(String [] strings, int [] ints)
+    {
+        for(int i=0; i<strings.length; i++)
+        {
+            final String s = getString(i);
+            if(s == null ? strings[i] != null : !s.equals(strings[i]))
+            {
+                return false;
+            }
+        }
+
+        for(int i=0; i<ints.length; i++)
+        {
+            if(getInt(i) != ints[i])
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Replaces the metadata of this tile.
+     */
+    public void setData(ItemConfiguration config, String [] strings, int [] ints)
+    {
+        ait = new AbstractItem(config, "data", strings, ints, new Triplet[0]);
+    }
+
+    /**
+     * Remembers the current image, name and id as saved state.
+     */
+    public synchronized void markClean()
+    {
+        savedImg = img;
+        savedSource = imageSource;
+        savedName = getString(0);
+        savedId = tileId;
+        saved = true;
+    }
+
+    /**
+     * Forgets the saved state, so the tile will be written on
+     * next save.
+     */
+    public synchronized void markDirty()
+    {
+        savedImg = null;
+        savedSource = null;
+        savedName = null;
+        saved = false;
+    }
+
+    /**
+     * @return true if the image was replaced since the last load or save.
+     */
+    public boolean isImageDirty()
+    {
+        return !saved || img != savedImg || imageSource != savedSource;
+    }
+
+    /**
+     * @return true if image, name or id changed since the last load or save.
+     */
+    public boolean isDirty()
+    {
+        if(isImageDirty() || tileId != savedId)
+        {
+            return true;
+        }
+
+        final String name = getString(0);
+        return name == null ? savedName != null : !name.equals(savedName);
+    }
+
+    /**
+     * @return The name at the last load or save, or null if unknown.
+     */
+    public String getSavedName()
+    {
+        return saved ? savedName : null;
+    }
+
+    /**
+     * @return The id at the last load or save.
+     */
+    public int getSavedId()
+    {
+        return savedId;
+    }
+
     public TileDescriptor()
     {
         ait = new AbstractItem(null, "nothing");
@@ -54,6 +343,132 @@ public class TileDescriptor
         ait = new AbstractItem(config, "data", strings, ints, new Triplet[0]);
     }
 
+    /**
+     * Creates a copy of a tile, which shares image and metadata
+     * with the tile. Both are replaced, not changed, on edits.
+     */
+    TileDescriptor(TileDescriptor other)
+    {
+        synchronized(other)
+        {
+            ait = other.ait;
+            img = other.img;
+            offX = other.offX;
+            offY = other.offY;
+            footX = other.footX;
+            footY = other.footY;
+            tileId = other.tileId;
+            savedImg = other.savedImg;
+            savedSource = other.savedSource;
+            savedName = other.savedName;
+            savedId = other.savedId;
+            saved = other.saved;
+            imageSource = other.imageSource;
+            width = other.width;
+            height = other.height;
+            imageHash = other.imageHash;
+            hashedImg = other.hashedImg;
+            hashedSource = other.hashedSource;
+            hashed = other.hashed;
+        }
+    }
+
+    /**
+     * Reads a tile from XML, as written by writeXML(). The reader
+     * must be positioned at the start of the Tile element and will
+     * be positioned at its end afterwards.
+     *
+     * @param config The tile configuration of the set.
+     * @param xml The XML stream to read from.
+     * @throws IOException In case of malformed data.
+     * @throws XMLStreamException In case of IO errors or malformed XML.
+     */
+    public TileDescriptor(ItemConfiguration config, XMLStreamReader xml) throws IOException, XMLStreamException
+    {
+        final String [] strings = new String [config.stringLabels.length];
+        final int [] ints = new int [config.intLabels.length];
+        int intCount = 0;
+        int stringCount = 0;
+
+        while(xml.nextTag() == XMLStreamConstants.START_ELEMENT)
+        {
+            final String name = xml.getLocalName();
+
+            if("Description".equals(name))
+            {
+                while(xml.nextTag() == XMLStreamConstants.START_ELEMENT)
+                {
+                    final String field = xml.getLocalName();
+
+                    if("id".equals(field))
+                    {
+                        tileId = XmlSupport.readInt(xml);
+                    }
+                    else if("width".equals(field))
+                    {
+                        width = XmlSupport.readInt(xml);
+                    }
+                    else if("height".equals(field))
+                    {
+                        height = XmlSupport.readInt(xml);
+                    }
+                    else if("offsetX".equals(field))
+                    {
+                        offX = XmlSupport.readInt(xml);
+                    }
+                    else if("offsetY".equals(field))
+                    {
+                        offY = XmlSupport.readInt(xml);
+                    }
+                    else if("footX".equals(field))
+                    {
+                        footX = XmlSupport.readInt(xml);
+                    }
+                    else if("footY".equals(field))
+                    {
+                        footY = XmlSupport.readInt(xml);
+                    }
+                    else
+                    {
+                        // version is not needed yet
+                        XmlSupport.skipElement(xml);
+                    }
+                }
+            }
+            else if("Metadata".equals(name))
+            {
+                while(xml.nextTag() == XMLStreamConstants.START_ELEMENT)
+                {
+                    final String field = xml.getLocalName();
+
+                    if("int".equals(field) && intCount < ints.length)
+                    {
+                        ints[intCount++] = XmlSupport.readInt(xml);
+                    }
+                    else if("string".equals(field) && stringCount < strings.length)
+                    {
+                        strings[stringCount++] = xml.getElementText();
+                    }
+                    else
+                    {
+                        XmlSupport.skipElement(xml);
+                    }
+                }
+            }
+            else
+            {
+                XmlSupport.skipElement(xml);
+            }
+        }
+
+        for(int i=stringCount; i<strings.length; i++)
+        {
+            strings[i] = "";
+        }
+
+        ait = new AbstractItem(config, "data", strings, ints, new Triplet[0]);
+    }
+
     public TileDescriptor(ItemConfiguration config, BufferedReader reader) throws IOException
     {
         String line;
@@ -90,8 +505,11 @@ public class TileDescriptor
         {
             if("v.5".equals(version)) 
             {
-                // skip size info
-                reader.readLine();
+                line = reader.readLine();
+                String [] parts = line.split(" ");
+
+                width = Integer.parseInt(parts[0]);
+                height = Integer.parseInt(parts[1]);
             }
             
             line = reader.readLine();
@@ -139,7 +557,7 @@ public class TileDescriptor
         writer.write("Tile Description\n");
         writer.write("v.5\n");
         writer.write("" + tileId + "\n");
-        writer.write("" + img.getWidth() + " " + img.getHeight() + "\n");
+        writer.write("" + getWidth() + " " + getHeight() + "\n");
         writer.write("" + offX + " " + offY + "\n");
         writer.write("" + footX + " " + footY + "\n");
         writer.write("End Of Header\n");
@@ -147,27 +565,47 @@ public class TileDescriptor
         ait.write(writer);
     }
 
-    public void writeXML(ItemConfiguration tileConfiguration, Writer writer) throws IOException
+    /**
+     * Writes this tile as XML element.
+     *
+     * @param tileConfiguration The tile configuration of the set.
+     * @param xml The XML stream to write to.
+     * @throws XMLStreamException In case of IO errors.
+     */
+    public void writeXML(ItemConfiguration tileConfiguration, XMLStreamWriter xml) throws XMLStreamException
     {
-        writer.write("    <Tile>\n      <Description>\n");
-        writer.write("        <version>4</version>\n");
-        writer.write("        <id>" + tileId + "</id>\n");
-        writer.write("        <width>" + img.getWidth() + "</width>\n        <height>" + img.getHeight() + "</height>\n");
-        writer.write("        <offsetX>" + offX + "</offsetX>\n        <offsetY>" + offY + "</offsetY>\n");
-        writer.write("        <footX>" + footX + "</footX>\n        <footY>" + footY + "</footY>\n");
-        writer.write("      </Description>\n");
-        
-        writer.write("      <Metadata>\n");
+        xml.writeCharacters("    ");
+        xml.writeStartElement("Tile");
+        xml.writeCharacters("\n      ");
+        xml.writeStartElement("Description");
+        xml.writeCharacters("\n");
+        XmlSupport.writeElement(xml, "        ", "version", "4");
+        XmlSupport.writeElement(xml, "        ", "id", "" + tileId);
+        XmlSupport.writeElement(xml, "        ", "width", "" + getWidth());
+        XmlSupport.writeElement(xml, "        ", "height", "" + getHeight());
+        XmlSupport.writeElement(xml, "        ", "offsetX", "" + offX);
+        XmlSupport.writeElement(xml, "        ", "offsetY", "" + offY);
+        XmlSupport.writeElement(xml, "        ", "footX", "" + footX);
+        XmlSupport.writeElement(xml, "        ", "footY", "" + footY);
+        xml.writeCharacters("      ");
+        xml.writeEndElement();
+        xml.writeCharacters("\n      ");
+        xml.writeStartElement("Metadata");
+        xml.writeCharacters("\n");
 
         for(int n=0; n<tileConfiguration.intLabels.length; n++)
         {
-            writer.write("        <int>" + ait.getInt(n) + "</int>\n");
+            XmlSupport.writeElement(xml, "        ", "int", "" + ait.getInt(n));
         }
         for(int n=0; n<tileConfiguration.stringLabels.length; n++)
         {
-            writer.write("        <string>" + ait.getString(n) + "</string>\n");
+            XmlSupport.writeElement(xml, "        ", "string", ait.getString(n));
         }
 
-        writer.write("      </Metadata>\n    </Tile>\n");
+        xml.writeCharacters("      ");
+        xml.writeEndElement();
+        xml.writeCharacters("\n    ");
+        xml.writeEndElement();
+        xml.writeCharacters("\n");
     }
 }
@@ -0,0 +1,512 @@
+/*
+ * File: TileHashIndex.java
+ * Creation: 2026_10_17
+ * Author: agent <agent@local>
+ * License: See license.txt
+ */
+
+package tilemaster.tile;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Index of the perceptual hashes of the tiles of one or more tile
+ * sets, to find tiles which look alike.
+ * <p>
+ * The index cuts each hash into four keys of 16 bits. If two hashes
+ * differ in at most d bits, at least one of their keys differs in at
+ * most d/4 bits, so a query only needs to look at the hashes which
+ * share a key that is this close. For small distances these are few.
+ * <p>
+ * Each tile in the index is an entry, numbered in the order the
+ * tiles were added. Empty slots are not indexed. The index doesn't
+ * follow later changes of the sets. Queries must not run concurrently.
+ *
+ * @author agent
+ */
+public class TileHashIndex
+{
+    /** Tiles hashed by one task, see add() */
+    private static final int CHUNK = 1024;
+
+    private static final int KEYS = 4;
+    private static final int KEY_BITS = 16;
+
+    /** Keys further apart are not looked up, the whole index is scanned */
+    private static final int MAX_KEY_RADIUS = 2;
+
+    private final List <TileSet> tileSets = new ArrayList<TileSet>();
+
+    private int [] entrySet = new int [64];
+    private int [] entryTile = new int [64];
+    private long [] entryHash = new long [64];
+    private int entryCount;
+
+    // the tables below are built on demand, see prepare().
+    // Tiles with equal hashes share a node.
+    private boolean prepared;
+    private long [] nodeHash;
+    private int nodeCount;
+    private int [] entryNode;
+    private int [] nodeFirstEntry;
+    private int [] entryNext;
+
+    // for each key, the nodes sorted by key value and
+    // the start of each key value in the sorted nodes
+    private final int [][] keyStart = new int [KEYS][];
+    private final int [][] keyNodes = new int [KEYS][];
+
+    // marks the nodes already seen by the current query
+    private int [] seen;
+    private int query;
+
+    /**
+     * Adds the tiles of a tile set to the index. The hashes are
+     * calculated with the given executor, tiles which already know
+     * their hash are not hashed again.
+     *
+     * @param tileSet The tile set.
+     * @param executor The workers to hash the tiles, null to hash
+     * on the calling thread.
+     * @return The number of the set in this index.
+     * @throws IOException If a tile image can't be hashed.
+     */
+    public int add(final TileSet tileSet, ExecutorService executor) throws IOException
+    {
+        final int size = tileSet.size();
+        final long [] hashes = new long [size];
+        final boolean [] skip = new boolean [size];
+
+        if(executor == null)
+        {
+            hashRange(tileSet, 0, size, hashes, skip);
+        }
+        else
+        {
+            final List <Future<Object>> results = new ArrayList<Future<Object>>();
+
+            for(int start=0; start<size; start += CHUNK)
+            {
+                final int from = start;
+                final int to = Math.min(size, start + CHUNK);
+
+                results.add(executor.submit(new Callable<Object>()
+                {
+                    @Override
+                    public Object call()
+                    {
+                        hashRange(tileSet, from, to, hashes, skip);
+                        return null;
+                    }
+                }));
+            }
+
+            waitFor(results);
+        }
+
+        final int setNumber = tileSets.size();
+        tileSets.add(tileSet);
+
+        for(int i=0; i<size; i++)
+        {
+            if(!skip[i])
+            {
+                if(entryCount == entrySet.length)
+                {
+                    final int capacity = entryCount * 2;
+                    entrySet = Arrays.copyOf(entrySet, capacity);
+                    entryTile = Arrays.copyOf(entryTile, capacity);
+                    entryHash = Arrays.copyOf(entryHash, capacity);
+                }
+
+                entrySet[entryCount] = setNumber;
+                entryTile[entryCount] = i;
+                entryHash[entryCount] = hashes[i];
+                entryCount++;
+            }
+        }
+
+        prepared = false;
+
+        return setNumber;
+    }
+
+    private static void hashRange(TileSet tileSet, int from, int to,
+                                  long [] hashes, boolean [] skip)
+    {
+        for(int i=from; i<to; i++)
+        {
+            final TileDescriptor tld = tileSet.get(i);
+
+            if(tileSet.isEmpty(i) || tld == null || tld.getImage() == null)
+            {
+                skip[i] = true;
+            }
+            else
+            {
+                hashes[i] = tld.getImageHash();
+            }
+        }
+    }
+
+    private static void waitFor(List <Future<Object>> results) throws IOException
+    {
+        try
+        {
+            for(Future<Object> result : results)
+            {
+                result.get();
+            }
+        }
+        catch(ExecutionException ex)
+        {
+            throw new IOException("Can't hash tiles: " + ex.getCause(), ex.getCause());
+        }
+        catch(InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while hashing tiles", ex);
+        }
+    }
+
+    /**
+     * Extracts a key from a hash. Key k takes every fourth bit,
+     * starting at bit k, so each key sees all rows of the image.
+     */
+    private static int key(long hash, int k)
+    {
+        int key = 0;
+        hash >>>= k;
+
+        for(int i=0; i<KEY_BITS; i++)
+        {
+            key |= (int)(hash & 1) << i;
+            hash >>>= KEYS;
+        }
+
+        return key;
+    }
+
+    /**
+     * Builds the nodes and key tables after tiles were added.
+     */
+    private void prepare()
+    {
+        if(prepared)
+        {
+            return;
+        }
+
+        // one node per distinct hash
+        final long [] sorted = Arrays.copyOf(entryHash, entryCount);
+        Arrays.sort(sorted);
+
+        nodeCount = 0;
+        for(int i=0; i<sorted.length; i++)
+        {
+            if(i == 0 || sorted[i] != sorted[i - 1])
+            {
+                sorted[nodeCount++] = sorted[i];
+            }
+        }
+        nodeHash = Arrays.copyOf(sorted, nodeCount);
+
+        entryNode = new int [entryCount];
+        entryNext = new int [entryCount];
+        nodeFirstEntry = new int [nodeCount];
+        Arrays.fill(nodeFirstEntry, -1);
+
+        // link backwards, so each node lists its entries in order
+        for(int e=entryCount-1; e>=0; e--)
+        {
+            final int node = Arrays.binarySearch(nodeHash, entryHash[e]);
+            entryNode[e] = node;
+            entryNext[e] = nodeFirstEntry[node];
+            nodeFirstEntry[node] = e;
+        }
+
+        // counting sort of the nodes by each key
+        for(int k=0; k<KEYS; k++)
+        {
+            final int [] start = new int [(1 << KEY_BITS) + 1];
+            final int [] nodes = new int [nodeCount];
+
+            for(int n=0; n<nodeCount; n++)
+            {
+                start[key(nodeHash[n], k) + 1]++;
+            }
+            for(int i=0; i<(1 << KEY_BITS); i++)
+            {
+                start[i + 1] += start[i];
+            }
+
+            final int [] fill = Arrays.copyOf(start, 1 << KEY_BITS);
+            for(int n=0; n<nodeCount; n++)
+            {
+                nodes[fill[key(nodeHash[n], k)]++] = n;
+            }
+
+            keyStart[k] = start;
+            keyNodes[k] = nodes;
+        }
+
+        seen = new int [nodeCount];
+        query = 0;
+        prepared = true;
+    }
+
+    /**
+     * @return The number of indexed tiles.
+     */
+    public int size()
+    {
+        return entryCount;
+    }
+
+    /**
+     * @return The number of tile sets in this index.
+     */
+    public int getTileSetCount()
+    {
+        return tileSets.size();
+    }
+
+    public TileSet getTileSet(int setNumber)
+    {
+        return tileSets.get(setNumber);
+    }
+
+    /**
+     * @return The number of the tile set of an entry.
+     */
+    public int getSetNumber(int entry)
+    {
+        return entrySet[entry];
+    }
+
+    /**
+     * @return The index of the tile of an entry in its tile set.
+     */
+    public int getTileIndex(int entry)
+    {
+        return entryTile[entry];
+    }
+
+    /**
+     * @return The perceptual hash of the tile of an entry.
+     */
+    public long getHash(int entry)
+    {
+        return entryHash[entry];
+    }
+
+    /**
+     * Finds all tiles whose hash differs from the given hash in
+     * at most maxDistance bits.
+     *
+     * @param hash The hash to look for.
+     * @param maxDistance The maximum number of differing bits.
+     * @return The matching entries in ascending order.
+     */
+    public int [] query(long hash, int maxDistance)
+    {
+        prepare();
+
+        final int [] nodes = queryNodes(hash, maxDistance, new int [16]);
+
+        int count = 0;
+        for(int i=1; i<=nodes[0]; i++)
+        {
+            for(int e=nodeFirstEntry[nodes[i]]; e>=0; e=entryNext[e])
+            {
+                count++;
+            }
+        }
+
+        final int [] result = new int [count];
+        count = 0;
+        for(int i=1; i<=nodes[0]; i++)
+        {
+            for(int e=nodeFirstEntry[nodes[i]]; e>=0; e=entryNext[e])
+            {
+                result[count++] = e;
+            }
+        }
+
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Finds the nodes within a distance of a hash.
+     *
+     * @param found Buffer for the result, may be replaced by a bigger one.
+     * @return The nodes, found[0] is the number of nodes.
+     */
+    private int [] queryNodes(long hash, int maxDistance, int [] found)
+    {
+        found[0] = 0;
+
+        final int radius = maxDistance / KEYS;
+
+        if(radius > MAX_KEY_RADIUS)
+        {
+            for(int n=0; n<nodeCount; n++)
+            {
+                if(PerceptualHash.distance(hash, nodeHash[n]) <= maxDistance)
+                {
+                    found = addFound(found, n);
+                }
+            }
+
+            return found;
+        }
+
+        if(++query == 0)
+        {
+            // counter wrapped, old marks could match again
+            Arrays.fill(seen, 0);
+            query = 1;
+        }
+
+        for(int k=0; k<KEYS; k++)
+        {
+            found = queryKey(hash, maxDistance, k, key(hash, k), 0, radius, found);
+        }
+
+        return found;
+    }
+
+    /**
+     * Checks the nodes with the given key value and, recursively,
+     * those whose key differs in up to radius more bits, flipping
+     * only bits from firstBit on so no key is visited twice.
+     */
+    private int [] queryKey(long hash, int maxDistance, int k, int keyValue,
+                            int firstBit, int radius, int [] found)
+    {
+        final int [] start = keyStart[k];
+        final int [] nodes = keyNodes[k];
+
+        for(int i=start[keyValue]; i<start[keyValue + 1]; i++)
+        {
+            final int node = nodes[i];
+
+            if(seen[node] != query)
+            {
+                seen[node] = query;
+
+                if(PerceptualHash.distance(hash, nodeHash[node]) <= maxDistance)
+                {
+                    found = addFound(found, node);
+                }
+            }
+        }
+
+        if(radius > 0)
+        {
+            for(int bit=firstBit; bit<KEY_BITS; bit++)
+            {
+                found = queryKey(hash, maxDistance, k, keyValue ^ (1 << bit),
+                                 bit + 1, radius - 1, found);
+            }
+        }
+
+        return found;
+    }
+
+    private static int [] addFound(int [] found, int node)
+    {
+        if(found[0] + 1 == found.length)
+        {
+            found = Arrays.copyOf(found, found.length * 2);
+        }
+        found[++found[0]] = node;
+
+        return found;
+    }
+
+    /**
+     * Groups the tiles into clusters of look-alikes. Two tiles are
+     * in the same cluster if their hashes differ in at most maxDistance
+     * bits, or if they are linked through other tiles of the cluster.
+     *
+     * @param maxDistance The maximum number of differing bits.
+     * @return The clusters with at least two tiles, each as array
+     * of entries in ascending order. Clusters are sorted by their
+     * first entry.
+     */
+    public List <int []> findClusters(int maxDistance)
+    {
+        prepare();
+
+        // union-find over the nodes, tiles with
+        // equal hashes share a node and thus a cluster
+        final int [] parent = new int [nodeCount];
+        for(int i=0; i<nodeCount; i++)
+        {
+            parent[i] = i;
+        }
+
+        int [] found = new int [16];
+        for(int node=0; node<nodeCount; node++)
+        {
+            found = queryNodes(nodeHash[node], maxDistance, found);
+
+            for(int i=1; i<=found[0]; i++)
+            {
+                final int a = findRoot(parent, node);
+                final int b = findRoot(parent, found[i]);
+                if(a != b)
+                {
+                    parent[Math.max(a, b)] = Math.min(a, b);
+                }
+            }
+        }
+
+        final int [] clusterSize = new int [nodeCount];
+        for(int e=0; e<entryCount; e++)
+        {
+            clusterSize[findRoot(parent, entryNode[e])]++;
+        }
+
+        final int [][] clusters = new int [nodeCount][];
+        final int [] filled = new int [nodeCount];
+        final List <int []> result = new ArrayList<int []>();
+
+        for(int e=0; e<entryCount; e++)
+        {
+            final int root = findRoot(parent, entryNode[e]);
+
+            if(clusterSize[root] > 1)
+            {
+                if(clusters[root] == null)
+                {
+                    clusters[root] = new int [clusterSize[root]];
+                    result.add(clusters[root]);
+                }
+                clusters[root][filled[root]++] = e;
+            }
+        }
+
+        return result;
+    }
+
+    private static int findRoot(int [] parent, int node)
+    {
+        while(parent[node] != node)
+        {
+            parent[node] = parent[parent[node]];
+            node = parent[node];
+        }
+
+        return node;
+    }
+}
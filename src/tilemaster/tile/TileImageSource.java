@@ -0,0 +1,27 @@
+/*
+ * File: TileImageSource.java
+ * Creation: 2026_10_17
+ * Author: agent <agent@local>
+ * License: See license.txt
+ */
+
+package tilemaster.tile;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Provides the image of a tile on demand, for tile sets whose
+ * images are not all loaded up front.
+ *
+ * @author agent
+ */
+public interface TileImageSource
+{
+    /**
+     * Loads the image of the tile. Implementations may cache
+     * the image, but must always return the same pixels.
+     *
+     * @return The tile image, never null.
+     */
+    public BufferedImage loadImage();
+}
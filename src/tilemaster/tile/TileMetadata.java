@@ -0,0 +1,457 @@
+/*
+ * File: TileMetadata.java
+ * Creation: 2026_10_17
+ * Author: agent <agent@local>
+ * License: See license.txt
+ */
+
+package tilemaster.tile;
+
+import itemizer.item.ItemConfiguration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Column store for the metadata of the tiles of a set, to filter,
+ * sort and change the metadata of many tiles quickly. There is one
+ * int column per int label, and one string column per string label
+ * of the set configuration. String columns keep a code per tile,
+ * which refers to a dictionary of the distinct values, so string
+ * conditions are tested once per distinct value.
+ * <p>
+ * Queries take and return arrays of tile indices, ascending unless
+ * sorted. A null tile array stands for all tiles of the set.
+ * <p>
+ * Get the store from TileSet.getMetadata(), the set keeps it up
+ * to date.
+ *
+ * @author agent
+ */
+public class TileMetadata
+{
+    /**
+     * Condition for string values.
+     */
+    public interface StringTest
+    {
+        boolean accept(String value);
+    }
+
+    private final TileSet tileSet;
+    private final int [][] intColumns;
+    private final int [][] stringColumns;
+    private final List <List <String>> dictionaries;
+    private final List <Map <String, Integer>> codes;
+    private int size;
+
+    // tiles which might have been changed since they were read
+    private int [] stale = new int [16];
+    private boolean [] staleFlags;
+    private int staleCount;
+
+    /**
+     * Reads the metadata of all tiles of a set.
+     */
+    TileMetadata(TileSet tileSet)
+    {
+        final ItemConfiguration config = tileSet.getTileConfiguration();
+
+        this.tileSet = tileSet;
+        size = tileSet.size();
+
+        intColumns = new int [config.intLabels.length][size];
+        stringColumns = new int [config.stringLabels.length][size];
+        dictionaries = new ArrayList<List <String>>();
+        codes = new ArrayList<Map <String, Integer>>();
+        staleFlags = new boolean [size];
+
+        for(int label=0; label<stringColumns.length; label++)
+        {
+            dictionaries.add(new ArrayList<String>());
+            codes.add(new HashMap<String, Integer>());
+        }
+
+        for(int i=0; i<size; i++)
+        {
+            read(i);
+        }
+    }
+
+    /**
+     * @return The number of tiles.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    public int getInt(int label, int tile)
+    {
+        refresh();
+        return intColumns[label][tile];
+    }
+
+    public String getString(int label, int tile)
+    {
+        refresh();
+        return dictionaries.get(label).get(stringColumns[label][tile]);
+    }
+
+    /**
+     * @return The distinct values of a string label, in no particular
+     * order. Values which were replaced in all tiles might be included.
+     */
+    public List <String> getStringValues(int label)
+    {
+        refresh();
+        return new ArrayList<String>(dictionaries.get(label));
+    }
+
+    /**
+     * Finds the tiles whose int value is in a range.
+     *
+     * @param tiles The tiles to test, null for all.
+     * @param label The int label.
+     * @param min The lowest accepted value.
+     * @param max The highest accepted value.
+     * @return The accepted tiles.
+     */
+    public int [] filterInt(int [] tiles, int label, int min, int max)
+    {
+        refresh();
+
+        final int [] column = intColumns[label];
+        final int n = tiles == null ? size : tiles.length;
+        final int [] result = new int [n];
+        int count = 0;
+
+        for(int k=0; k<n; k++)
+        {
+            final int i = tiles == null ? k : tiles[k];
+            final int value = column[i];
+
+            if(value >= min && value <= max)
+            {
+                result[count++] = i;
+            }
+        }
+
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Finds the tiles whose string value passes a test. The test is
+     * called once per distinct value.
+     *
+     * @param tiles The tiles to test, null for all.
+     * @param label The string label.
+     * @param test The condition.
+     * @return The accepted tiles.
+     */
+    public int [] filterString(int [] tiles, int label, StringTest test)
+    {
+        refresh();
+
+        final List <String> dictionary = dictionaries.get(label);
+        final boolean [] accepted = new boolean [dictionary.size()];
+
+        for(int code=0; code<accepted.length; code++)
+        {
+            accepted[code] = test.accept(dictionary.get(code));
+        }
+
+        final int [] column = stringColumns[label];
+        final int n = tiles == null ? size : tiles.length;
+        final int [] result = new int [n];
+        int count = 0;
+
+        for(int k=0; k<n; k++)
+        {
+            final int i = tiles == null ? k : tiles[k];
+
+            if(accepted[column[i]])
+            {
+                result[count++] = i;
+            }
+        }
+
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Finds the tiles whose string value contains a text, ignoring case.
+     *
+     * @param tiles The tiles to test, null for all.
+     * @param label The string label.
+     * @param text The text to look for.
+     * @return The accepted tiles.
+     */
+    public int [] filterContains(int [] tiles, int label, String text)
+    {
+        final String part = text.toLowerCase(Locale.ROOT);
+
+        return filterString(tiles, label, new StringTest()
+        {
+            @Override
+            public boolean accept(String value)
+            {
+                return value != null && value.toLowerCase(Locale.ROOT).contains(part);
+            }
+        });
+    }
+
+    /**
+     * Sorts tiles by an int value. Tiles with equal values keep
+     * their order.
+     *
+     * @param tiles The tiles to sort, null for all.
+     * @param label The int label.
+     * @return The sorted tiles.
+     */
+    public int [] sortByInt(int [] tiles, int label)
+    {
+        refresh();
+
+        final int [] column = intColumns[label];
+        final int n = tiles == null ? size : tiles.length;
+        final long [] keys = new long [n];
+
+        for(int k=0; k<n; k++)
+        {
+            final int i = tiles == null ? k : tiles[k];
+
+            // the value decides, the position breaks ties
+            keys[k] = ((long)column[i] << 32) | k;
+        }
+
+        return sorted(tiles, keys);
+    }
+
+    /**
+     * Sorts tiles by a string value. Tiles with equal values keep
+     * their order, null values come first.
+     *
+     * @param tiles The tiles to sort, null for all.
+     * @param label The string label.
+     * @return The sorted tiles.
+     */
+    public int [] sortByString(int [] tiles, int label)
+    {
+        refresh();
+
+        // sort the distinct values once, then sort the tiles by rank
+        final List <String> dictionary = dictionaries.get(label);
+        final Integer [] order = new Integer [dictionary.size()];
+
+        for(int code=0; code<order.length; code++)
+        {
+            order[code] = code;
+        }
+
+        Arrays.sort(order, new Comparator<Integer>()
+        {
+            @Override
+            public int compare(Integer a, Integer b)
+            {
+                final String s = dictionary.get(a);
+                final String t = dictionary.get(b);
+
+                if(s == null || t == null)
+                {
+                    return s == null ? (t == null ? 0 : -1) : 1;
+                }
+
+                return s.compareTo(t);
+            }
+        });
+
+        final int [] rank = new int [order.length];
+        for(int r=0; r<order.length; r++)
+        {
+            rank[order[r]] = r;
+        }
+
+        final int [] column = stringColumns[label];
+        final int n = tiles == null ? size : tiles.length;
+        final long [] keys = new long [n];
+
+        for(int k=0; k<n; k++)
+        {
+            final int i = tiles == null ? k : tiles[k];
+            keys[k] = ((long)rank[column[i]] << 32) | k;
+        }
+
+        return sorted(tiles, keys);
+    }
+
+    /**
+     * Sets an int value of many tiles.
+     *
+     * @param tiles The tiles to change, null for all.
+     * @param label The int label.
+     * @param value The new value.
+     */
+    public void setInt(int [] tiles, int label, int value)
+    {
+        refresh();
+
+        final int n = tiles == null ? size : tiles.length;
+
+        for(int k=0; k<n; k++)
+        {
+            final int i = tiles == null ? k : tiles[k];
+
+            intColumns[label][i] = value;
+            write(i);
+        }
+    }
+
+    /**
+     * Sets a string value of many tiles.
+     *
+     * @param tiles The tiles to change, null for all.
+     * @param label The string label.
+     * @param value The new value.
+     */
+    public void setString(int [] tiles, int label, String value)
+    {
+        refresh();
+
+        final int code = encode(label, value);
+        final int n = tiles == null ? size : tiles.length;
+
+        for(int k=0; k<n; k++)
+        {
+            final int i = tiles == null ? k : tiles[k];
+
+            stringColumns[label][i] = code;
+            write(i);
+        }
+    }
+
+    /**
+     * Marks a tile as possibly changed. It is read again before
+     * the next query.
+     */
+    void invalidate(int tile)
+    {
+        if(staleFlags[tile])
+        {
+            return;
+        }
+
+        staleFlags[tile] = true;
+
+        if(staleCount == stale.length)
+        {
+            stale = Arrays.copyOf(stale, staleCount * 2);
+        }
+
+        stale[staleCount++] = tile;
+    }
+
+    /**
+     * Reads the tiles which might have been changed.
+     */
+    private void refresh()
+    {
+        for(int k=0; k<staleCount; k++)
+        {
+            read(stale[k]);
+            staleFlags[stale[k]] = false;
+        }
+
+        staleCount = 0;
+    }
+
+    private void read(int i)
+    {
+        final TileDescriptor tld = tileSet.get(i);
+
+        for(int label=0; label<intColumns.length; label++)
+        {
+            intColumns[label][i] = tld == null ? 0 : tld.getInt(label);
+        }
+
+        for(int label=0; label<stringColumns.length; label++)
+        {
+            stringColumns[label][i] = encode(label, tld == null ? "" : tld.getString(label));
+        }
+    }
+
+    /**
+     * Writes the column values of a tile back to the tile.
+     */
+    private void write(int i)
+    {
+        final String [] strings = new String [stringColumns.length];
+        final int [] ints = new int [intColumns.length];
+
+        for(int label=0; label<strings.length; label++)
+        {
+            strings[label] = dictionaries.get(label).get(stringColumns[label][i]);
+        }
+
+        for(int label=0; label<ints.length; label++)
+        {
+            ints[label] = intColumns[label][i];
+        }
+
+        TileDescriptor tld = tileSet.edit(i);
+
+        if(tld == null)
+        {
+            tld = tileSet.createTileDescriptor();
+            tld.setData(tileSet.getTileConfiguration(), strings, ints);
+            tileSet.set(i, tld);
+        }
+        else
+        {
+            tld.setData(tileSet.getTileConfiguration(), strings, ints);
+        }
+
+        // the tile set marked the tile, but it has the column values
+        for(int k=0; k<staleCount; k++)
+        {
+            staleFlags[stale[k]] = false;
+        }
+
+        staleCount = 0;
+    }
+
+    private int encode(int label, String value)
+    {
+        final Map <String, Integer> map = codes.get(label);
+        final Integer code = map.get(value);
+
+        if(code != null)
+        {
+            return code;
+        }
+
+        final List <String> dictionary = dictionaries.get(label);
+        map.put(value, dictionary.size());
+        dictionary.add(value);
+
+        return dictionary.size() - 1;
+    }
+
+    private static int [] sorted(int [] tiles, long [] keys)
+    {
+        Arrays.sort(keys);
+
+        final int [] result = new int [keys.length];
+        for(int k=0; k<keys.length; k++)
+        {
+            final int position = (int)keys[k];
+            result[k] = tiles == null ? position : tiles[position];
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,481 @@
+/*
+ * File: TilePixelStore.java
+ * Creation: 2026_10_17
+ * Author: agent <agent@local>
+ * License: See license.txt
+ */
+
+package tilemaster.tile;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the ARGB pixels of many tiles in a few large slabs, instead
+ * of one BufferedImage with raster, sample model and data buffer per
+ * tile. For small tiles these objects need more memory than the
+ * pixels.
+ * <p>
+ * Tiles get their image from the store through an image source. The
+ * store hands out copies of the pixels, so nothing can change the
+ * stored pixels. The copies of recently used images are kept, so
+ * painting the tile list doesn't copy the pixels again and again.
+ * <p>
+ * Each stored image has one image source. Once no tile uses the
+ * source anymore, the pixels are freed, and the slabs are compacted
+ * if most of their pixels are freed.
+ *
+ * @author agent
+ */
+public class TilePixelStore
+{
+    private static final int SLAB_INTS = Integer.getInteger("tilemaster.tile.slabInts", 1 << 20);
+    private static final int MIN_SLAB_INTS = 1 << 12;
+
+    /**
+     * Pixel budget of the kept image copies.
+     */
+    private static final long CACHE_PIXELS = Long.getLong("tilemaster.tile.cachePixels", 1L << 21);
+
+    private final boolean offHeap;
+
+    private final List <int []> heapSlabs = new ArrayList<int []>();
+    private final List <IntBuffer> directSlabs = new ArrayList<IntBuffer>();
+    private int slabUsed;
+
+    // per stored image: slab, offset, width, height
+    private int [] slab = new int [256];
+    private int [] offset = new int [256];
+    private int [] width = new int [256];
+    private int [] height = new int [256];
+    private SourceReference [] sources = new SourceReference [256];
+    private int count;
+    private int live;
+
+    // sources which no tile uses anymore
+    private final ReferenceQueue <Source> released = new ReferenceQueue<Source>();
+
+    private long pixels;
+    private long freedPixels;
+    private long expectedPixels;
+
+    private final LinkedHashMap <Integer, BufferedImage> cache =
+            new LinkedHashMap<Integer, BufferedImage>(256, 0.75f, true);
+    private long cachedPixels;
+
+    /**
+     * Creates a store which keeps the pixels on the Java heap.
+     */
+    public TilePixelStore()
+    {
+        this(false);
+    }
+
+    /**
+     * Creates a store.
+     *
+     * @param offHeap true to keep the pixels in direct byte buffers
+     *                outside of the Java heap.
+     */
+    public TilePixelStore(boolean offHeap)
+    {
+        this.offHeap = offHeap;
+    }
+
+    /**
+     * Moves the loaded images of all tiles of a set into a new store.
+     * Images which are shared by several tiles are stored once. Tiles
+     * whose images are not loaded, and images with less than 24 bits
+     * per pixel, which would grow in the store, are left alone.
+     *
+     * @param tileSet The tiles.
+     * @param offHeap true to keep the pixels outside of the Java heap.
+     * @return The new store.
+     */
+    public static TilePixelStore pack(TileSet tileSet, boolean offHeap)
+    {
+        final TilePixelStore store = new TilePixelStore(offHeap);
+        final Map <BufferedImage, TileImageSource> stored =
+                new IdentityHashMap<BufferedImage, TileImageSource>();
+
+        // size the slabs to fit, small sets shouldn't pay for a full slab
+        long total = 0;
+        for(int i=0; i<tileSet.size(); i++)
+        {
+            final TileDescriptor tld = tileSet.get(i);
+
+            if(isPackable(tld) && !stored.containsKey(tld.img))
+            {
+                stored.put(tld.img, null);
+                total += (long)tld.img.getWidth() * tld.img.getHeight();
+            }
+        }
+
+        store.reserve(total);
+
+        for(int i=0; i<tileSet.size(); i++)
+        {
+            final TileDescriptor tld = tileSet.get(i);
+
+            if(isPackable(tld))
+            {
+                TileImageSource source = stored.get(tld.img);
+                if(source == null)
+                {
+                    source = store.add(tld.img);
+                    stored.put(tld.img, source);
+                }
+
+                tileSet.edit(i).moveImageTo(source);
+            }
+        }
+
+        return store;
+    }
+
+    private static boolean isPackable(TileDescriptor tld)
+    {
+        return tld != null && tld.img != null &&
+               tld.img.getColorModel().getPixelSize() >= 24;
+    }
+
+    /**
+     * Tells the store how many pixels will be added, so the
+     * slabs can be sized to fit.
+     *
+     * @param pixels The number of pixels which will be added.
+     */
+    public synchronized void reserve(long pixels)
+    {
+        expectedPixels = this.pixels + pixels;
+    }
+
+    /**
+     * Copies the pixels of an image into the store.
+     *
+     * @param img The image.
+     * @return The image source for the stored pixels. The pixels
+     * are kept as long as the source is used.
+     */
+    public synchronized TileImageSource add(BufferedImage img)
+    {
+        expunge();
+
+        final int w = img.getWidth();
+        final int h = img.getHeight();
+
+        if(count == slab.length)
+        {
+            slab = grow(slab);
+            offset = grow(offset);
+            width = grow(width);
+            height = grow(height);
+
+            final SourceReference [] bigger = new SourceReference [count * 2];
+            System.arraycopy(sources, 0, bigger, 0, count);
+            sources = bigger;
+        }
+
+        final int s = allocate(w * h);
+
+        if(offHeap)
+        {
+            final int [] argb = img.getRGB(0, 0, w, h, null, 0, w);
+            final IntBuffer buffer = directSlabs.get(s).duplicate();
+            buffer.position(slabUsed);
+            buffer.put(argb);
+        }
+        else
+        {
+            img.getRGB(0, 0, w, h, heapSlabs.get(s), slabUsed, w);
+        }
+
+        final Source source = new Source(this, count);
+
+        slab[count] = s;
+        offset[count] = slabUsed;
+        width[count] = w;
+        height[count] = h;
+        sources[count] = new SourceReference(source, released);
+
+        slabUsed += w * h;
+        count++;
+        live++;
+
+        return source;
+    }
+
+    /**
+     * Finds room for pixels in the last slab, or adds a new slab.
+     * The pixels go to slabUsed in the returned slab.
+     *
+     * @param size The number of pixels.
+     * @return The slab index.
+     */
+    private int allocate(int size)
+    {
+        if(slabCount() == 0 || slabUsed + size > slabLength(slabCount() - 1))
+        {
+            // without reservation, slabs grow with the stored pixels.
+            // Images larger than a slab get a slab of their own.
+            final long wanted = expectedPixels > pixels ? expectedPixels - pixels
+                                                        : Math.max(pixels, MIN_SLAB_INTS);
+            newSlab((int)Math.max(size, Math.min(wanted, SLAB_INTS)));
+        }
+
+        pixels += size;
+
+        return slabCount() - 1;
+    }
+
+    /**
+     * Gets the image of stored pixels. The image is a copy, and
+     * the same copy is handed out again while it is kept, so callers
+     * must not change it.
+     *
+     * @param handle The handle of the pixels.
+     * @return The image, in TYPE_INT_ARGB.
+     */
+    public synchronized BufferedImage getImage(int handle)
+    {
+        BufferedImage img = cache.get(handle);
+
+        if(img == null)
+        {
+            final int w = width[handle];
+            final int h = height[handle];
+
+            img = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+            final int [] argb = ((DataBufferInt)img.getRaster().getDataBuffer()).getData();
+
+            if(offHeap)
+            {
+                final IntBuffer buffer = directSlabs.get(slab[handle]).duplicate();
+                buffer.position(offset[handle]);
+                buffer.get(argb);
+            }
+            else
+            {
+                System.arraycopy(heapSlabs.get(slab[handle]), offset[handle], argb, 0, w * h);
+            }
+
+            cache.put(handle, img);
+            cachedPixels += w * h;
+
+            // release least recently used copies, keep the newest
+            final Iterator <BufferedImage> iterator = cache.values().iterator();
+            while(cachedPixels > CACHE_PIXELS && cache.size() > 1)
+            {
+                final BufferedImage eldest = iterator.next();
+                iterator.remove();
+                cachedPixels -= eldest.getWidth() * eldest.getHeight();
+            }
+        }
+
+        expunge();
+
+        return img;
+    }
+
+    /**
+     * Frees the pixels of the sources which are not used anymore.
+     */
+    private void expunge()
+    {
+        SourceReference reference;
+
+        while((reference = (SourceReference)released.poll()) != null)
+        {
+            final int handle = reference.handle;
+            final int size = width[handle] * height[handle];
+
+            final BufferedImage img = cache.remove(handle);
+            if(img != null)
+            {
+                cachedPixels -= size;
+            }
+
+            sources[handle] = null;
+            pixels -= size;
+            freedPixels += size;
+            live--;
+        }
+
+        // copying all pixels is only worth it if
+        // more than half of the slab memory is free
+        if(freedPixels > MIN_SLAB_INTS && freedPixels > pixels)
+        {
+            compact();
+        }
+    }
+
+    /**
+     * Copies the pixels in use into new slabs and drops the old ones.
+     * Handles and sources stay the same.
+     */
+    private void compact()
+    {
+        final List <int []> oldHeapSlabs = new ArrayList<int []>(heapSlabs);
+        final List <IntBuffer> oldDirectSlabs = new ArrayList<IntBuffer>(directSlabs);
+
+        heapSlabs.clear();
+        directSlabs.clear();
+        expectedPixels = pixels;
+        pixels = 0;
+
+        for(int handle=0; handle<count; handle++)
+        {
+            if(sources[handle] != null)
+            {
+                final int size = width[handle] * height[handle];
+                final int s = allocate(size);
+
+                if(offHeap)
+                {
+                    final IntBuffer from = oldDirectSlabs.get(slab[handle]).duplicate();
+                    from.position(offset[handle]);
+                    from.limit(offset[handle] + size);
+
+                    final IntBuffer to = directSlabs.get(s).duplicate();
+                    to.position(slabUsed);
+                    to.put(from);
+                }
+                else
+                {
+                    System.arraycopy(oldHeapSlabs.get(slab[handle]), offset[handle],
+                                     heapSlabs.get(s), slabUsed, size);
+                }
+
+                slab[handle] = s;
+                offset[handle] = slabUsed;
+                slabUsed += size;
+            }
+        }
+
+        freedPixels = 0;
+    }
+
+    public synchronized int getWidth(int handle)
+    {
+        return width[handle];
+    }
+
+    public synchronized int getHeight(int handle)
+    {
+        return height[handle];
+    }
+
+    /**
+     * @return The number of stored images which are in use.
+     */
+    public synchronized int size()
+    {
+        expunge();
+        return live;
+    }
+
+    /**
+     * @return The number of stored pixels which are in use.
+     */
+    public synchronized long getPixelCount()
+    {
+        expunge();
+        return pixels;
+    }
+
+    /**
+     * @return The number of bytes allocated for pixels.
+     */
+    public synchronized long getAllocatedBytes()
+    {
+        long ints = 0;
+
+        for(int [] s : heapSlabs)
+        {
+            ints += s.length;
+        }
+        for(IntBuffer s : directSlabs)
+        {
+            ints += s.capacity();
+        }
+
+        return ints * 4;
+    }
+
+    private int slabLength(int s)
+    {
+        return offHeap ? directSlabs.get(s).capacity() : heapSlabs.get(s).length;
+    }
+
+    private int slabCount()
+    {
+        return offHeap ? directSlabs.size() : heapSlabs.size();
+    }
+
+    private void newSlab(int ints)
+    {
+        if(offHeap)
+        {
+            directSlabs.add(ByteBuffer.allocateDirect(ints * 4).order(ByteOrder.nativeOrder()).asIntBuffer());
+        }
+        else
+        {
+            heapSlabs.add(new int [ints]);
+        }
+
+        slabUsed = 0;
+    }
+
+    private static int [] grow(int [] array)
+    {
+        final int [] result = new int [array.length * 2];
+        System.arraycopy(array, 0, result, 0, array.length);
+        return result;
+    }
+
+    /**
+     * Image source for pixels in a store.
+     */
+    private static class Source implements TileImageSource
+    {
+        private final TilePixelStore store;
+        private final int handle;
+
+        Source(TilePixelStore store, int handle)
+        {
+            this.store = store;
+            this.handle = handle;
+        }
+
+        @Override
+        public BufferedImage loadImage()
+        {
+            return store.getImage(handle);
+        }
+    }
+
+    /**
+     * Tells the store when no tile uses a source anymore.
+     */
+    private static class SourceReference extends WeakReference <Source>
+    {
+        final int handle;
+
+        SourceReference(Source source, ReferenceQueue <Source> queue)
+        {
+            super(source, queue);
+            this.handle = source.handle;
+        }
+    }
+}
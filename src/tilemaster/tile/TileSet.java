@@ -9,20 +9,85 @@
 package tilemaster.tile;
 
 import itemizer.item.ItemConfiguration;
+import java.awt.image.BufferedImage;
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 
 /**
+ * A list of tiles.
+ * <p>
+ * The tiles are kept in chunks of 64, so snapshot() can hand out an
+ * unmodifiable copy of the set in constant time, which shares chunks
+ * and tiles with the set. Chunks and tiles are copied when they are
+ * changed in the set for the first time after a snapshot. Snapshots
+ * stay unchanged, so they can be saved or exported by other threads
+ * while the set is edited.
+ * <p>
+ * Tiles must be fetched with edit() to be changed.
  *
  * @author Hj. Malthaner
  */
 public class TileSet
 {
-    private final ArrayList <TileDescriptor> tiles;
+    private static final int CHUNK_SHIFT = 6;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+    /**
+     * Source of set versions. A set gets a new version with each
+     * snapshot, chunks and tiles stamped with an older version
+     * might be shared with a snapshot.
+     */
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    private TileDescriptor [][] chunks;
+    private long [] chunkVersions;
+    private long directoryVersion;
+    private long version;
+    private int size;
+
+    private IdIndex idIndex;
+
+    /**
+     * True if tiles were handed out by edit() since the id index was
+     * last built. Their ids might have been changed without setTileId().
+     */
+    private boolean uncheckedEdits;
     private final ItemConfiguration tileConfiguration;
 
+    /**
+     * Column store of the metadata, built when it is needed first
+     * and dropped when tiles are added or removed.
+     */
+    private TileMetadata metadata;
+
+    /**
+     * The set a snapshot was taken from, null if this set is no snapshot.
+     */
+    private final TileSet origin;
+
+    /**
+     * Placeholder shared by all empty slots, see isEmpty().
+     */
+    private TileDescriptor emptyTile;
+
+    private static final TileImageSource EMPTY_IMAGE = new TileImageSource()
+    {
+        @Override
+        public BufferedImage loadImage()
+        {
+            // callers may draw on it, don't share it
+            return new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        }
+    };
+
     public int rasterX;
     public int rasterY;
 
@@ -31,29 +96,311 @@ public class TileSet
         return tileConfiguration;
     }
 
+    /**
+     * Tiles returned by this method must not be changed, use
+     * edit() to get tiles for changing.
+     */
     public TileDescriptor get(int i)
     {
-        return tiles.get(i);
+        if(i < 0 || i >= size)
+        {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+        }
+
+        return chunks[i >> CHUNK_SHIFT][i & (CHUNK_SIZE - 1)];
+    }
+
+    /**
+     * Gets a tile for changing it. If the tile is shared with a
+     * snapshot, it is replaced by a copy in this set first. Empty
+     * slots get a tile of their own.
+     *
+     * @param i Index of the tile.
+     * @return The tile, null if there is no tile at the index.
+     */
+    public TileDescriptor edit(int i)
+    {
+        checkWritable();
+
+        final TileDescriptor tld = get(i);
+        uncheckedEdits = true;
+
+        if(metadata != null)
+        {
+            metadata.invalidate(i);
+        }
+
+        if(tld == null || tld.version == version)
+        {
+            return tld;
+        }
+
+        final TileDescriptor copy = new TileDescriptor(tld);
+        copy.version = version;
+        put(i, copy);
+
+        return copy;
+    }
+
+    /**
+     * @return The metadata of the tiles as columns, for fast queries
+     * and bulk changes. The store is kept up to date with the set.
+     */
+    public TileMetadata getMetadata()
+    {
+        if(metadata == null)
+        {
+            metadata = new TileMetadata(this);
+        }
+
+        return metadata;
+    }
+
+    /**
+     * Empty slots share one placeholder tile with a 1x1 transparent
+     * image and no metadata, so sets with many empty slots need
+     * little memory. The placeholder becomes a tile of its own when
+     * the slot is edited. Writers don't store images of empty tiles.
+     *
+     * @return true if the slot has no tile or the placeholder.
+     */
+    public boolean isEmpty(int i)
+    {
+        final TileDescriptor tld = get(i);
+        return tld == null || tld.empty;
+    }
+
+    /**
+     * Makes a slot empty.
+     */
+    public void setEmpty(int i)
+    {
+        set(i, emptyTile());
+    }
+
+    /**
+     * Inserts an empty slot, shifting the following tiles.
+     */
+    public void insertEmpty(int i)
+    {
+        insert(i, emptyTile());
+    }
+
+    /**
+     * Adds an empty slot at the end.
+     */
+    public void addEmpty()
+    {
+        add(emptyTile());
+    }
+
+    /**
+     * Makes the slot of a tile without image empty, if the tile
+     * also has no id, offsets or metadata. Empty tiles are written
+     * without image, readers use this to restore them.
+     *
+     * @param i Index of the tile, which was read without image.
+     */
+    public void setEmptyIfBlank(int i)
+    {
+        final TileDescriptor tld = get(i);
+
+        if(tld == null || tld.empty || tld.tileId != 0 ||
+           tld.offX != 0 || tld.offY != 0 || tld.footX != 0 || tld.footY != 0)
+        {
+            return;
+        }
+
+        for(int n=0; n<tileConfiguration.intLabels.length; n++)
+        {
+            if(tld.getInt(n) != 0)
+            {
+                return;
+            }
+        }
+
+        for(int n=0; n<tileConfiguration.stringLabels.length; n++)
+        {
+            final String value = tld.getString(n);
+            if(value != null && value.length() > 0)
+            {
+                return;
+            }
+        }
+
+        setEmpty(i);
+    }
+
+    private TileDescriptor emptyTile()
+    {
+        if(emptyTile == null)
+        {
+            final TileDescriptor tld = createTileDescriptor();
+            tld.setImageSource(EMPTY_IMAGE, 1, 1);
+            tld.markClean();
+            tld.empty = true;
+
+            // never owned by a set, so edit() copies it
+            tld.version = -1;
+            emptyTile = tld;
+        }
+
+        return emptyTile;
+    }
+
+    /**
+     * Creates an unmodifiable copy of this set, which shares chunks
+     * and tiles with this set until they are changed here.
+     *
+     * @return The snapshot.
+     */
+    public TileSet snapshot()
+    {
+        if(origin != null)
+        {
+            return this;
+        }
+
+        final TileSet snapshot = new TileSet(this);
+
+        // everything stamped with the old version is shared now
+        version = VERSIONS.incrementAndGet();
+
+        return snapshot;
+    }
+
+    /**
+     * Remembers the current state of the changed tiles as saved, see
+     * TileDescriptor.markClean(). Writers call this after a save.
+     * Snapshots stay unchanged, so after saving a snapshot the tiles
+     * are written again with the next save of the set.
+     */
+    public void markClean()
+    {
+        if(origin != null)
+        {
+            return;
+        }
+
+        for(int i=0; i<size; i++)
+        {
+            final TileDescriptor tld = get(i);
+            if(tld != null && tld.isDirty())
+            {
+                edit(i).markClean();
+            }
+        }
+    }
+
+    /**
+     * @return true if this set is a snapshot.
+     */
+    public boolean isSnapshot()
+    {
+        return origin != null;
+    }
+
+    /**
+     * @return The set a snapshot was taken from, or this set
+     * if it is no snapshot.
+     */
+    public TileSet getOrigin()
+    {
+        return origin != null ? origin : this;
     }
 
     /**
      * Computes the tile index for the gives id.
      * @return the tile index for the given id or -1 if there is
-     * no matching id in the set.
+     * no matching id in the set. If several tiles have the id,
+     * the lowest index is returned.
      */
     public int numberFromId(int id)
     {
-        for(int i=0; i<tiles.size(); i++)
+        if(origin != null)
         {
-            if(tiles.get(i).tileId == id) return i;
+            return snapshotNumberFromId(id);
         }
-        
-        return -1;
+
+        final int i = idIndex.first(id);
+
+        if(i >= 0)
+        {
+            final TileDescriptor tld = get(i);
+            if(tld == null || tld.tileId != id)
+            {
+                // someone changed a tile id without setTileId()
+                rebuildIndex();
+                return idIndex.first(id);
+            }
+        }
+        else if(uncheckedEdits)
+        {
+            // the id might have been written into an edited tile
+            // without setTileId(), the index doesn't know it then
+            rebuildIndex();
+            return idIndex.first(id);
+        }
+
+        return i;
+    }
+
+    /**
+     * Snapshots build their id index when it is needed first.
+     */
+    private synchronized int snapshotNumberFromId(int id)
+    {
+        if(idIndex == null)
+        {
+            idIndex = new IdIndex(size);
+            rebuildIndex();
+        }
+
+        return idIndex.first(id);
+    }
+
+    /**
+     * Computes the tile indices for a list of ids.
+     * @param ids The tile ids to look up.
+     * @return The tile indices, -1 for ids which are not in the set.
+     */
+    public int [] numbersFromIds(int [] ids)
+    {
+        final int [] result = new int [ids.length];
+
+        for(int n=0; n<ids.length; n++)
+        {
+            result[n] = numberFromId(ids[n]);
+        }
+
+        return result;
+    }
+
+    /**
+     * Changes the id of a tile in this set. Tile ids of tiles in
+     * a set must be changed this way, to keep the id index intact.
+     *
+     * @param i Index of the tile.
+     * @param id The new id.
+     */
+    public void setTileId(int i, int id)
+    {
+        final TileDescriptor tld = edit(i);
+        unindex(tld, i, i + 1);
+        tld.tileId = id;
+        idIndex.add(id, i);
     }
     
     public void add(TileDescriptor tld)
     {
-        tiles.add(tld);
+        checkWritable();
+        append(tld);
+        metadata = null;
+
+        if(tld != null)
+        {
+            idIndex.add(tld.tileId, size - 1);
+        }
     }
 
     /**
@@ -66,7 +413,37 @@ public class TileSet
      */
     public void insert(int i, TileDescriptor tld)
     {
-        tiles.add(i, tld);
+        checkWritable();
+
+        if(i < 0 || i > size)
+        {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+        }
+
+        append(null);
+        metadata = null;
+
+        for(int n=size-1; n>i; n--)
+        {
+            put(n, get(n - 1));
+        }
+
+        put(i, tld);
+
+        // the lowest index of each id behind i moves up by one
+        for(int n=size-1; n>i; n--)
+        {
+            final TileDescriptor moved = get(n);
+            if(moved != null)
+            {
+                idIndex.move(moved.tileId, n - 1, n);
+            }
+        }
+
+        if(tld != null)
+        {
+            idIndex.add(tld.tileId, i);
+        }
     }
 
     /**
@@ -77,17 +454,213 @@ public class TileSet
      */
     public void remove(int i)
     {
-        tiles.remove(i);
+        checkWritable();
+
+        final TileDescriptor tld = get(i);
+
+        for(int n=i; n<size-1; n++)
+        {
+            put(n, get(n + 1));
+        }
+
+        put(size - 1, null);
+        size --;
+        metadata = null;
+
+        if(tld != null && idIndex.first(tld.tileId) == i)
+        {
+            // keep i free for the shifted tiles
+            idIndex.move(tld.tileId, i, -1);
+        }
+
+        // the lowest index of each id behind i moves down by one
+        for(int n=i; n<size; n++)
+        {
+            final TileDescriptor moved = get(n);
+            if(moved != null)
+            {
+                idIndex.move(moved.tileId, n + 1, n);
+            }
+        }
+
+        if(tld != null)
+        {
+            unindex(tld, -1, i);
+        }
     }
 
     public void set(int i, TileDescriptor tld)
     {
-        tiles.set(i, tld);
+        checkWritable();
+
+        final TileDescriptor old = get(i);
+        put(i, tld);
+
+        if(metadata != null)
+        {
+            metadata.invalidate(i);
+        }
+
+        if(old != null)
+        {
+            unindex(old, i, i + 1);
+        }
+
+        if(tld != null)
+        {
+            idIndex.add(tld.tileId, i);
+        }
+    }
+
+    /**
+     * Removes a tile from the id index. If other tiles still have
+     * the id and the tile was the lowest index, the next tile with
+     * the id is searched.
+     *
+     * @param tld The tile which is no longer in the set at its index.
+     * @param index The index the tile had in the index.
+     * @param from The index to search the next tile with the id from.
+     */
+    private void unindex(TileDescriptor tld, int index, int from)
+    {
+        final int id = tld.tileId;
+
+        if(idIndex.remove(id) > 0 && idIndex.first(id) == index)
+        {
+            for(int n=from; n<size; n++)
+            {
+                final TileDescriptor other = get(n);
+                if(other != null && other.tileId == id)
+                {
+                    idIndex.setFirst(id, n);
+                    return;
+                }
+            }
+
+            // the count was wrong, a tile id was changed without setTileId()
+            rebuildIndex();
+        }
+    }
+
+    private void rebuildIndex()
+    {
+        idIndex.clear();
+        uncheckedEdits = false;
+
+        for(int i=0; i<size; i++)
+        {
+            final TileDescriptor tld = get(i);
+            if(tld != null)
+            {
+                idIndex.add(tld.tileId, i);
+            }
+        }
+    }
+
+    private void clear()
+    {
+        checkWritable();
+
+        chunks = new TileDescriptor [0][];
+        chunkVersions = new long [0];
+        directoryVersion = version;
+        size = 0;
+        idIndex.clear();
+        metadata = null;
+
+        // the configuration might change
+        emptyTile = null;
     }
 
     public int size()
     {
-        return tiles.size();
+        return size;
+    }
+
+    /**
+     * Stores a tile at an index. Chunks which are shared with a
+     * snapshot are copied first. Tiles which were in no set before
+     * belong to this set from now on.
+     */
+    private void put(int i, TileDescriptor tld)
+    {
+        final int c = i >> CHUNK_SHIFT;
+
+        if(chunkVersions[c] != version)
+        {
+            ownDirectory();
+            chunks[c] = chunks[c].clone();
+            chunkVersions[c] = version;
+        }
+
+        if(tld != null && tld.version == 0)
+        {
+            tld.version = version;
+        }
+
+        chunks[c][i & (CHUNK_SIZE - 1)] = tld;
+    }
+
+    private void append(TileDescriptor tld)
+    {
+        final int c = size >> CHUNK_SHIFT;
+
+        if(c == chunks.length)
+        {
+            ensureCapacity(size + 1);
+        }
+
+        if(chunks[c] == null)
+        {
+            ownDirectory();
+            chunks[c] = new TileDescriptor [CHUNK_SIZE];
+            chunkVersions[c] = version;
+        }
+
+        size ++;
+        put(size - 1, tld);
+    }
+
+    /**
+     * Copies the chunk directory, if it is shared with a snapshot.
+     */
+    private void ownDirectory()
+    {
+        if(directoryVersion != version)
+        {
+            chunks = chunks.clone();
+            chunkVersions = chunkVersions.clone();
+            directoryVersion = version;
+        }
+    }
+
+    private void ensureCapacity(int capacity)
+    {
+        final int needed = (capacity + CHUNK_SIZE - 1) >> CHUNK_SHIFT;
+
+        if(needed > chunks.length)
+        {
+            final int length = Math.max(needed, chunks.length * 2);
+            final TileDescriptor [][] grown = new TileDescriptor [length][];
+            final long [] grownVersions = new long [length];
+
+            System.arraycopy(chunks, 0, grown, 0, chunks.length);
+            System.arraycopy(chunkVersions, 0, grownVersions, 0, chunks.length);
+
+            // the new directory belongs to this set, the chunks
+            // keep their versions
+            chunks = grown;
+            chunkVersions = grownVersions;
+            directoryVersion = version;
+        }
+    }
+
+    private void checkWritable()
+    {
+        if(origin != null)
+        {
+            throw new IllegalStateException("Tile set snapshots can't be changed.");
+        }
     }
 
 
@@ -108,13 +681,34 @@ public class TileSet
     public TileSet(ItemConfiguration tileConfiguration, int size)
     {
         this.tileConfiguration = tileConfiguration;
-        tiles = new ArrayList();
+        origin = null;
+        version = VERSIONS.incrementAndGet();
+        chunks = new TileDescriptor [0][];
+        chunkVersions = new long [0];
+        directoryVersion = version;
+        idIndex = new IdIndex(size);
+
+        ensureCapacity(size);
 
         for(int i=0; i<size; i++) {
-            add(null);
+            addEmpty();
         }
     }
 
+    /**
+     * Creates a snapshot of a set.
+     */
+    private TileSet(TileSet live)
+    {
+        tileConfiguration = live.tileConfiguration;
+        origin = live;
+        chunks = live.chunks;
+        emptyTile = live.emptyTile;
+        size = live.size;
+        rasterX = live.rasterX;
+        rasterY = live.rasterY;
+    }
+
     public void read(BufferedReader reader) throws IOException
     {
         // Header
@@ -127,12 +721,15 @@ public class TileSet
         // Version
         line = reader.readLine();
         if(!"v.1".equals(line) &&
-           !"v.2".equals(line)) 
+           !"v.2".equals(line) &&
+           !"v.3".equals(line)) 
         {
             throw new IOException("Wrong version: " + line);
         }
 
-        if("v.2".equals(line)) {
+        // v.3 is v.2, written by formats which older
+        // versions of Tilemaster can't read
+        if(!"v.1".equals(line)) {
             line = reader.readLine();
             rasterX = Integer.parseInt(line);
 
@@ -151,11 +748,11 @@ public class TileSet
         final int n = Integer.parseInt(line);
 
         // tiles = new ArrayList<TileDescriptor>(n);
-        tiles.clear();
+        clear();
         
         for(int i=0; i<n; i++) {
             TileDescriptor tld = new TileDescriptor(tileConfiguration, reader);
-            tiles.add(tld);
+            add(tld);
         }
 
         reader.close();
@@ -163,51 +760,206 @@ public class TileSet
 
 
     public void write(Writer writer) throws IOException
+    {
+        write(writer, "v.2");
+    }
+
+    /**
+     * Writes the catalog with a version mark. Versions after v.2
+     * have the same content, they only keep older versions of
+     * Tilemaster from reading files they don't understand.
+     *
+     * @param writer The writer to write to.
+     * @param version The version mark, "v.2" or "v.3".
+     * @throws IOException In case of IO errors.
+     */
+    public void write(Writer writer, String version) throws IOException
     {
         writer.write("Tile Catalog\n");
-        writer.write("v.2\n");
+        writer.write(version + "\n");
         writer.write("" + rasterX + "\n");
         writer.write("" + rasterY + "\n");
         writer.write("End Of Header\n");
         tileConfiguration.write(writer);
 
-        writer.write("" + tiles.size() + "\n");
+        writer.write("" + size + "\n");
 
-        for(int i=0; i<tiles.size(); i++) 
+        for(int i=0; i<size; i++) 
         {
-            tiles.get(i).write(writer);
+            get(i).write(writer);
         }
     }
 
+    /**
+     * Writes the catalog as XML. The XML is streamed to the writer,
+     * metadata is escaped as needed.
+     *
+     * @param writer The writer to write to, will not be closed.
+     * @throws IOException In case of IO errors.
+     */
     public void writeXML(Writer writer) throws IOException
     {
-        writer.write("<TileCatalog>\n");
-        writer.write("  <version>2</version>\n");
-        writer.write("  <Header>\n");
-        writer.write("    <rasterX>" + rasterX + "</rasterX>\n");
-        writer.write("    <rasterY>" + rasterY + "</rasterY>\n");
-        writer.write("    <count>" + tiles.size() + "</count>\n");
-        writer.write("  </Header>\n  <Configuration>\n");
-
-        for(int n=0; n<tileConfiguration.intLabels.length; n++)
+        try
         {
-            writer.write("    <intLabel>" + tileConfiguration.intLabels[n] + "</intLabel>\n");
+            final XMLStreamWriter xml = XmlSupport.createWriter(writer);
+
+            xml.writeStartElement("TileCatalog");
+            xml.writeCharacters("\n");
+            XmlSupport.writeElement(xml, "  ", "version", "2");
+            xml.writeCharacters("  ");
+            xml.writeStartElement("Header");
+            xml.writeCharacters("\n");
+            XmlSupport.writeElement(xml, "    ", "rasterX", "" + rasterX);
+            XmlSupport.writeElement(xml, "    ", "rasterY", "" + rasterY);
+            XmlSupport.writeElement(xml, "    ", "count", "" + size);
+            xml.writeCharacters("  ");
+            xml.writeEndElement();
+            xml.writeCharacters("\n  ");
+            xml.writeStartElement("Configuration");
+            xml.writeCharacters("\n");
+
+            for(int n=0; n<tileConfiguration.intLabels.length; n++)
+            {
+                XmlSupport.writeElement(xml, "    ", "intLabel", tileConfiguration.intLabels[n]);
+            }
+            for(int n=0; n<tileConfiguration.stringLabels.length; n++)
+            {
+                XmlSupport.writeElement(xml, "    ", "stringLabel", tileConfiguration.stringLabels[n]);
+            }
+
+            xml.writeCharacters("  ");
+            xml.writeEndElement();
+            xml.writeCharacters("\n  ");
+            xml.writeStartElement("Tiles");
+            xml.writeCharacters("\n");
+
+            for(int i=0; i<size; i++)
+            {
+                get(i).writeXML(tileConfiguration, xml);
+            }
+
+            xml.writeCharacters("  ");
+            xml.writeEndElement();
+            xml.writeCharacters("\n");
+            xml.writeEndElement();
+            xml.writeCharacters("\n");
+            xml.flush();
         }
-        for(int n=0; n<tileConfiguration.stringLabels.length; n++)
+        catch(XMLStreamException ex)
         {
-            writer.write("    <stringLabel>" + tileConfiguration.stringLabels[n] + "</stringLabel>\n");
+            throw new IOException("Can't write XML catalog.", ex);
         }
+    }
 
+    /**
+     * Reads a catalog from XML, as written by writeXML(). The
+     * XML is parsed as stream, the tile configuration and the
+     * tiles of this set are replaced. Tile images are not set.
+     *
+     * @param in The UTF-8 encoded XML. This call closes the stream.
+     * @throws IOException In case of IO errors or malformed XML.
+     */
+    public void readXML(InputStream in) throws IOException
+    {
+        try
+        {
+            final XMLStreamReader xml = XmlSupport.createReader(in);
 
-        writer.write("  </Configuration>\n  <Tiles>\n");
+            if(xml.nextTag() != XMLStreamConstants.START_ELEMENT ||
+               !"TileCatalog".equals(xml.getLocalName()))
+            {
+                throw new IOException("Wrong XML catalog root: " + xml.getLocalName());
+            }
 
-        for(int i=0; i<tiles.size(); i++) 
+            clear();
+
+            while(xml.nextTag() == XMLStreamConstants.START_ELEMENT)
+            {
+                final String name = xml.getLocalName();
+
+                if("version".equals(name))
+                {
+                    final String version = xml.getElementText().trim();
+                    if(!"2".equals(version))
+                    {
+                        throw new IOException("Wrong XML catalog version: " + version);
+                    }
+                }
+                else if("Header".equals(name))
+                {
+                    while(xml.nextTag() == XMLStreamConstants.START_ELEMENT)
+                    {
+                        final String field = xml.getLocalName();
+
+                        if("rasterX".equals(field))
+                        {
+                            rasterX = XmlSupport.readInt(xml);
+                        }
+                        else if("rasterY".equals(field))
+                        {
+                            rasterY = XmlSupport.readInt(xml);
+                        }
+                        else if("count".equals(field))
+                        {
+                            ensureCapacity(XmlSupport.readInt(xml));
+                        }
+                        else
+                        {
+                            XmlSupport.skipElement(xml);
+                        }
+                    }
+                }
+                else if("Configuration".equals(name))
+                {
+                    final ArrayList <String> intLabels = new ArrayList<String>();
+                    final ArrayList <String> stringLabels = new ArrayList<String>();
+
+                    while(xml.nextTag() == XMLStreamConstants.START_ELEMENT)
+                    {
+                        final String field = xml.getLocalName();
+
+                        if("intLabel".equals(field))
+                        {
+                            intLabels.add(xml.getElementText());
+                        }
+                        else if("stringLabel".equals(field))
+                        {
+                            stringLabels.add(xml.getElementText());
+                        }
+                        else
+                        {
+                            XmlSupport.skipElement(xml);
+                        }
+                    }
+
+                    tileConfiguration.intLabels = intLabels.toArray(new String [intLabels.size()]);
+                    tileConfiguration.stringLabels = stringLabels.toArray(new String [stringLabels.size()]);
+
+                    // tiles have no triplets, XML catalogs don't list them
+                    tileConfiguration.tripletLabels = new String [0];
+                }
+                else if("Tiles".equals(name))
+                {
+                    while(xml.nextTag() == XMLStreamConstants.START_ELEMENT)
+                    {
+                        add(new TileDescriptor(tileConfiguration, xml));
+                    }
+                }
+                else
+                {
+                    XmlSupport.skipElement(xml);
+                }
+            }
+
+            xml.close();
+        }
+        catch(XMLStreamException ex)
         {
-            tiles.get(i).writeXML(tileConfiguration, writer);
+            throw new IOException("Malformed XML catalog: " + ex.getMessage(), ex);
+        }
+        finally
+        {
+            in.close();
         }
-        
-        writer.write("  </Tiles>\n");
-        writer.write("</TileCatalog>\n");
     }
-
 }
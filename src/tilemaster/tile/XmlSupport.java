@@ -0,0 +1,144 @@
+/*
+ * File: XmlSupport.java
+ * Creation: 2026_10_17
+ * Author: agent <agent@local>
+ * License: See license.txt
+ */
+
+package tilemaster.tile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Helper methods for the streaming XML catalog reader and writer.
+ *
+ * @author agent
+ */
+class XmlSupport
+{
+    private static final XMLInputFactory INPUT_FACTORY;
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+    static
+    {
+        INPUT_FACTORY = XMLInputFactory.newInstance();
+
+        // catalogs never need DTDs or external entities
+        INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    }
+
+    static XMLStreamReader createReader(InputStream in) throws XMLStreamException
+    {
+        // decoding in the parser is faster than using a Reader
+        return INPUT_FACTORY.createXMLStreamReader(in, "UTF-8");
+    }
+
+    static XMLStreamWriter createWriter(Writer writer) throws XMLStreamException
+    {
+        return OUTPUT_FACTORY.createXMLStreamWriter(writer);
+    }
+
+    /**
+     * Writes a simple element with text content on its own line.
+     */
+    static void writeElement(XMLStreamWriter xml, String indent, String name, String text)
+            throws XMLStreamException
+    {
+        xml.writeCharacters(indent);
+        xml.writeStartElement(name);
+        xml.writeCharacters(clean(text));
+        xml.writeEndElement();
+        xml.writeCharacters("\n");
+    }
+
+    /**
+     * Reads the text of the current element as number.
+     */
+    static int readInt(XMLStreamReader xml) throws XMLStreamException, IOException
+    {
+        final String text = xml.getElementText().trim();
+
+        try
+        {
+            return Integer.parseInt(text);
+        }
+        catch(NumberFormatException ex)
+        {
+            throw new IOException("Not a number in <" + xml.getLocalName() + ">: " + text +
+                                  " at line " + xml.getLocation().getLineNumber());
+        }
+    }
+
+    /**
+     * Skips the current element and all its children.
+     */
+    static void skipElement(XMLStreamReader xml) throws XMLStreamException
+    {
+        int depth = 1;
+
+        while(depth > 0)
+        {
+            final int event = xml.next();
+
+            if(event == XMLStreamConstants.START_ELEMENT)
+            {
+                depth ++;
+            }
+            else if(event == XMLStreamConstants.END_ELEMENT)
+            {
+                depth --;
+            }
+        }
+    }
+
+    /**
+     * Removes characters which can't be represented in XML 1.0.
+     * The writer takes care of escaping markup characters.
+     *
+     * @param text The text to clean, might be null.
+     * @return The cleaned text, empty for null.
+     */
+    static String clean(String text)
+    {
+        if(text == null)
+        {
+            return "";
+        }
+
+        StringBuilder result = null;
+
+        for(int i=0; i<text.length(); i++)
+        {
+            final char c = text.charAt(i);
+            final boolean valid =
+                    c == '\t' || c == '\n' || c == '\r' ||
+                    (c >= 0x20 && c <= 0xD7FF) || (c >= 0xE000 && c <= 0xFFFD) ||
+                    Character.isSurrogate(c);
+
+            if(!valid && result == null)
+            {
+                result = new StringBuilder(text.length());
+                result.append(text, 0, i);
+            }
+            else if(valid && result != null)
+            {
+                result.append(c);
+            }
+        }
+
+        return result == null ? text : result.toString();
+    }
+
+    private XmlSupport()
+    {
+    }
+}